@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.k7t3.tcv.app.chat;
+
+import com.github.k7t3.tcv.app.channel.TwitchChannelViewModel;
+import com.github.k7t3.tcv.app.chat.filter.ChatFilters;
+import com.github.k7t3.tcv.app.emoji.ChatEmojiStore;
+import com.github.k7t3.tcv.domain.channel.TwitchChannel;
+import com.github.k7t3.tcv.domain.chat.ChatBadge;
+import com.github.k7t3.tcv.domain.chat.ChatCorpus;
+import com.github.k7t3.tcv.domain.chat.ChatData;
+import com.github.k7t3.tcv.domain.chat.ChatMessageParser;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JavaFXスレッドでチャットルームにチャットを追加するコストのベンチマーク。
+ * <p>
+ *     {@code unprepared}は従来どおりJavaFXスレッドでビューモデルを生成し、
+ *     セルが参照する色、バッジ、イメージをその場で解決する。
+ *     {@code prepared}はワーカースレッドで{@link ChatDataPreparer}が色とバッジを解決したペイロードから生成する。
+ *     ペイロードの解決はJavaFXスレッドの外で行われるため計測に含めない。
+ * </p>
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChatRoomAppendBenchmark {
+
+    private static final int BATCH_SIZE = 256;
+
+    @Param({"ASCII", "EMOTE", "EMOJI"})
+    public ChatCorpus.Kind kind;
+
+    private GlobalChatBadgeStore globalBadgeStore;
+    private ChannelChatBadgeStore badgeStore;
+    private ChatEmoteStore emoteStore;
+    private DefinedChatColors definedChatColors;
+    private ChatEmojiStore emojiStore;
+    private ChatFilters chatFilters;
+    private ChatResources resources;
+
+    private TwitchChannelViewModel channel;
+    private SingleChatRoomViewModel chatRoom;
+    private ChatDataPreparer preparer;
+    private ChatMessageParser parser;
+    private List<ChatCorpus.Message> corpus;
+
+    private List<ChatData> chats;
+    private List<ChatDataPayload> payloads;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        globalBadgeStore = Mockito.mock(GlobalChatBadgeStore.class);
+        badgeStore = Mockito.mock(ChannelChatBadgeStore.class);
+        emoteStore = Mockito.mock(ChatEmoteStore.class);
+        definedChatColors = new DefinedChatColors();
+        emojiStore = Mockito.mock(ChatEmojiStore.class);
+        chatFilters = Mockito.mock(ChatFilters.class);
+        Mockito.when(chatFilters.getSnapshot()).thenReturn(c -> false);
+        Mockito.when(globalBadgeStore.getNullable(Mockito.any())).thenReturn(Optional.empty());
+        Mockito.when(badgeStore.getNullable(Mockito.any())).thenReturn(Optional.empty());
+
+        resources = new ChatResources(globalBadgeStore, emoteStore, definedChatColors, emojiStore, chatFilters);
+
+        channel = Mockito.mock(TwitchChannelViewModel.class);
+        Mockito.when(channel.getChatBadgeStore()).thenReturn(badgeStore);
+
+        var container = Mockito.mock(ChatRoomContainerViewModel.class);
+        chatRoom = new SingleChatRoomViewModel(
+                container, globalBadgeStore, emoteStore, definedChatColors, emojiStore, channel, chatFilters
+        );
+        chatRoom.setChatCacheSize(BATCH_SIZE);
+
+        preparer = new ChatDataPreparer(
+                globalBadgeStore, definedChatColors, chatFilters, c -> Optional.of(channel), c -> true
+        );
+        parser = new ChatMessageParser();
+        corpus = ChatCorpus.generate(kind, BATCH_SIZE);
+    }
+
+    /**
+     * メッセージは最初に参照されたときに解析した結果を保持するため、呼び出しごとに生成し直す。
+     */
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        var base = Instant.parse("2024-01-01T00:00:00Z");
+        var badges = List.of(new ChatBadge("subscriber", "12"), new ChatBadge("premium", "1"));
+        var twitchChannel = Mockito.mock(TwitchChannel.class);
+
+        chats = new ArrayList<>(BATCH_SIZE);
+        payloads = new ArrayList<>(BATCH_SIZE);
+        for (var i = 0; i < BATCH_SIZE; i++) {
+            var message = corpus.get(i);
+            var chatData = new ChatData(
+                    "1", "channel", Integer.toString(i), Integer.toString(i),
+                    "User" + i, "user" + i, "#1E90FF", badges, parser.parseLazily(message.text(), message.emotes()),
+                    base.plusMillis(i)
+            );
+            chats.add(chatData);
+
+            var prepared = new ChatData(
+                    "1", "channel", Integer.toString(i), Integer.toString(i),
+                    "User" + i, "user" + i, "#1E90FF", badges, parser.parseLazily(message.text(), message.emotes()),
+                    base.plusMillis(i)
+            );
+            payloads.add(preparer.prepare(prepared, twitchChannel, i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void unprepared(Blackhole blackhole) {
+        var viewModels = new ArrayList<ChatDataViewModel>(BATCH_SIZE);
+        for (var chatData : chats) {
+            var viewModel = new ChatDataViewModel(channel, chatData, resources);
+            render(viewModel, blackhole);
+            viewModels.add(viewModel);
+        }
+        chatRoom.addChats(viewModels);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void prepared(Blackhole blackhole) {
+        var viewModels = new ArrayList<ChatDataViewModel>(BATCH_SIZE);
+        for (var payload : payloads) {
+            var viewModel = new ChatDataViewModel(channel, payload, resources);
+            render(viewModel, blackhole);
+            viewModels.add(viewModel);
+        }
+        chatRoom.addChats(viewModels);
+    }
+
+    /**
+     * セルが描画時に参照する値を参照する
+     */
+    private static void render(ChatDataViewModel viewModel, Blackhole blackhole) {
+        blackhole.consume(viewModel.getColor());
+        blackhole.consume(viewModel.getBadges());
+        blackhole.consume(viewModel.getFormattedName());
+        for (var fragment : viewModel.getMessage()) {
+            switch (fragment.type()) {
+                case EMOTE -> blackhole.consume(viewModel.getEmoteImage(fragment));
+                case EMOJI -> blackhole.consume(viewModel.getEmojiImage(fragment));
+                case TEXT -> blackhole.consume(fragment.text());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.app.chat;
+
+import com.github.k7t3.tcv.app.channel.TwitchChannelViewModel;
+import com.github.k7t3.tcv.app.chat.filter.ChatFilters;
+import com.github.k7t3.tcv.app.emoji.ChatEmojiStore;
+import com.github.k7t3.tcv.domain.chat.ChatCorpus;
+import com.github.k7t3.tcv.domain.chat.ChatData;
+import com.github.k7t3.tcv.domain.chat.ChatMessageParser;
+import javafx.collections.FXCollections;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MergedChatRoomViewModel#addChatRoom(SingleChatRoomViewModel)}によるマージのベンチマーク。
+ * <p>
+ *     チャットを保持した複数のチャットルームを一つにマージする。
+ *     各チャットルームのチャットは投稿時刻が交互になるように生成する。
+ * </p>
+ * <p>
+ *     マージしたチャットルームは各チャットルームのリストを監視するため、
+ *     呼び出しごとに分離して監視を解除する。
+ * </p>
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MergedChatRoomBenchmark {
+
+    @Param({"2", "8"})
+    public int roomCount;
+
+    @Param({"256", "1024"})
+    public int chatCount;
+
+    private GlobalChatBadgeStore globalBadgeStore;
+    private ChatEmoteStore emoteStore;
+    private DefinedChatColors definedChatColors;
+    private ChatEmojiStore emojiStore;
+    private ChatRoomContainerViewModel container;
+    private ChatFilters chatFilters;
+
+    private List<SingleChatRoomViewModel> chatRooms;
+
+    private MergedChatRoomViewModel merged;
+
+    @Setup
+    public void setUp() {
+        globalBadgeStore = Mockito.mock(GlobalChatBadgeStore.class);
+        emoteStore = Mockito.mock(ChatEmoteStore.class);
+        definedChatColors = new DefinedChatColors();
+        emojiStore = Mockito.mock(ChatEmojiStore.class);
+        container = Mockito.mock(ChatRoomContainerViewModel.class);
+        Mockito.when(container.getChatRoomList()).thenReturn(FXCollections.observableArrayList());
+        chatFilters = Mockito.mock(ChatFilters.class);
+
+        var parser = new ChatMessageParser();
+        var corpus = ChatCorpus.generate(ChatCorpus.Kind.ASCII, chatCount);
+        var resources = new ChatResources(globalBadgeStore, emoteStore, definedChatColors, emojiStore, chatFilters);
+        var base = Instant.parse("2024-01-01T00:00:00Z");
+
+        chatRooms = new ArrayList<>(roomCount);
+        for (var room = 0; room < roomCount; room++) {
+            var channel = Mockito.mock(TwitchChannelViewModel.class);
+            var chatRoom = new SingleChatRoomViewModel(
+                    container, globalBadgeStore, emoteStore, definedChatColors, emojiStore, channel, chatFilters
+            );
+            chatRoom.setChatCacheSize(chatCount);
+
+            var chats = new ArrayList<ChatDataViewModel>(chatCount);
+            for (var i = 0; i < chatCount; i++) {
+                var text = corpus.get(i).text();
+                var chatData = new ChatData(
+                        Integer.toString(room), "channel" + room, room + "-" + i, Integer.toString(i),
+                        "User" + i, "user" + i, "#1E90FF", List.of(), parser.parse(text, null),
+                        base.plusMillis((long) i * roomCount + room)
+                );
+                chats.add(new ChatDataViewModel(channel, chatData, resources));
+            }
+            chatRoom.addChats(chats);
+            chatRooms.add(chatRoom);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        if (merged != null) {
+            merged.separateAll();
+            merged = null;
+        }
+        container.getChatRoomList().clear();
+    }
+
+    @Benchmark
+    public MergedChatRoomViewModel merge() {
+        return merged = new MergedChatRoomViewModel(
+                globalBadgeStore,
+                emoteStore,
+                definedChatColors,
+                chatRooms,
+                emojiStore,
+                container,
+                chatFilters
+        );
+    }
+
+}
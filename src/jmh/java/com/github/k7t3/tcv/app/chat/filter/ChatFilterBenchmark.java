@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.app.chat.filter;
+
+import com.github.k7t3.tcv.domain.chat.ChatCorpus;
+import com.github.k7t3.tcv.domain.chat.ChatData;
+import com.github.k7t3.tcv.domain.chat.ChatMessageParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * チャットフィルタの評価のベンチマーク。
+ * <p>
+ *     {@link ChatFilters#getFilter()}による評価と、
+ *     比較のために各{@link KeywordFilterEntry}を順に評価した場合を計測する。
+ *     エントリはキーワードフィルタの各種別とユーザーフィルタを均等に含む。
+ * </p>
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChatFilterBenchmark {
+
+    private static final int CORPUS_SIZE = 256;
+
+    @Param({"10", "100", "1000"})
+    public int entryCount;
+
+    private List<ChatData> chats;
+
+    private Predicate<ChatData> filter;
+
+    private List<KeywordFilterEntry> keywordEntries;
+
+    private List<UserFilterEntry> userEntries;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(entryCount);
+
+        keywordEntries = new ArrayList<>();
+        userEntries = new ArrayList<>();
+        for (var i = 0; i < entryCount; i++) {
+            var keyword = "keyword" + Integer.toString(random.nextInt(1 << 20), 36);
+            switch (i % 5) {
+                case 0 -> keywordEntries.add(KeywordFilterEntry.containsMatch(keyword));
+                case 1 -> keywordEntries.add(KeywordFilterEntry.prefixMatch(keyword));
+                case 2 -> keywordEntries.add(KeywordFilterEntry.exactMatch(keyword));
+                case 3 -> keywordEntries.add(KeywordFilterEntry.regexMatch(Pattern.compile(keyword + "\\d+")));
+                default -> userEntries.add(new UserFilterEntry(Integer.toString(1_000_000 + i), "user" + i, ""));
+            }
+        }
+
+        var chatFilters = new ChatFilters(null, null);
+        chatFilters.getKeywordEntries().setAll(keywordEntries);
+        chatFilters.getUserEntries().setAll(userEntries);
+        filter = chatFilters.getFilter();
+
+        // フィルタにはほぼ一致しない通常のチャット
+        var parser = new ChatMessageParser();
+        chats = new ArrayList<>(CORPUS_SIZE);
+        var corpus = ChatCorpus.generate(ChatCorpus.Kind.ASCII, CORPUS_SIZE);
+        for (var i = 0; i < corpus.size(); i++) {
+            var message = parser.parse(corpus.get(i).text(), null);
+            chats.add(new ChatData(
+                    "1", "channel", "msg" + i, Integer.toString(i), "User" + i, "user" + i,
+                    "#1E90FF", List.of(), message, Instant.now()
+            ));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void compiledFilter(Blackhole blackhole) {
+        for (var chat : chats) {
+            blackhole.consume(filter.test(chat));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void entryByEntry(Blackhole blackhole) {
+        for (var chat : chats) {
+            var matched = keywordEntries.stream().anyMatch(e -> e.test(chat))
+                    || userEntries.stream().anyMatch(e -> e.test(chat));
+            blackhole.consume(matched);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.domain.chat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ベンチマークで使用するチャットメッセージのコーパス。
+ * <p>
+ *     乱数のシードを固定しているため、実行のたびに同じメッセージが生成される。
+ * </p>
+ */
+public final class ChatCorpus {
+
+    /**
+     * メッセージとIRCのemotesタグの組
+     */
+    public record Message(String text, String emotes) {
+    }
+
+    public enum Kind {
+        /** ASCII文字のみ*/
+        ASCII,
+        /** エモートを多く含む*/
+        EMOTE,
+        /** 絵文字(ZWJシーケンス・肌色・国旗を含む)を多く含む*/
+        EMOJI,
+        /** 日本語を中心としたCJK文字*/
+        CJK
+    }
+
+    private static final String[] ASCII_WORDS = {
+            "hello", "lol", "gg", "nice", "play", "what", "was", "that", "chat", "is", "this", "real",
+            "pog", "clip", "it", "no", "way", "streamer", "lets", "go", "wp", "rip", "ez", "ok"
+    };
+
+    private static final String[] EMOTE_NAMES = {
+            "Kappa", "PogChamp", "LUL", "BibleThump", "Kreygasm", "ResidentSleeper", "SeemsGood", "VoHiYo"
+    };
+
+    private static final String[] EMOJIS = {
+            "\uD83D\uDE02", // 😂
+            "\u2764\uFE0F", // ❤️
+            "\uD83D\uDC4D\uD83C\uDFFD", // 👍🏽
+            "\uD83D\uDC68\u200D\uD83D\uDC69\u200D\uD83D\uDC67\u200D\uD83D\uDC66", // 👨‍👩‍👧‍👦
+            "\uD83C\uDDEF\uD83C\uDDF5", // 🇯🇵
+            "\uD83C\uDFF4\uDB40\uDC67\uDB40\uDC62\uDB40\uDC65\uDB40\uDC6E\uDB40\uDC67\uDB40\uDC7F", // 🏴󠁧󠁢󠁥󠁮󠁧󠁿
+            "\uD83E\uDDD1\u200D\uD83D\uDCBB", // 🧑‍💻
+            "\u26A0\uFE0F", // ⚠️
+    };
+
+    private static final String[] CJK_WORDS = {
+            "こんにちは", "草", "すごい", "かわいい", "ナイス", "おつかれ", "配信", "ありがとう",
+            "笑", "がんばれ", "初見です", "今日も", "楽しい", "やばい", "わかる", "それな"
+    };
+
+    private ChatCorpus() {
+    }
+
+    public static List<Message> generate(Kind kind, int count) {
+        var random = new Random(0x7c7L + kind.ordinal());
+        var messages = new ArrayList<Message>(count);
+        for (var i = 0; i < count; i++) {
+            messages.add(switch (kind) {
+                case ASCII -> words(random, ASCII_WORDS, " ");
+                case EMOTE -> emotes(random);
+                case EMOJI -> emojis(random);
+                case CJK -> words(random, CJK_WORDS, "");
+            });
+        }
+        return messages;
+    }
+
+    private static Message words(Random random, String[] words, String separator) {
+        var length = 3 + random.nextInt(12);
+        var sb = new StringBuilder();
+        for (var i = 0; i < length; i++) {
+            if (0 < i) sb.append(separator);
+            sb.append(words[random.nextInt(words.length)]);
+        }
+        return new Message(sb.toString(), null);
+    }
+
+    private static Message emotes(Random random) {
+        var length = 2 + random.nextInt(10);
+        var text = new StringBuilder();
+        var ranges = new LinkedHashMap<String, List<String>>();
+
+        for (var i = 0; i < length; i++) {
+            if (0 < i) text.append(' ');
+
+            if (random.nextInt(3) == 0) {
+                text.append(ASCII_WORDS[random.nextInt(ASCII_WORDS.length)]);
+                continue;
+            }
+
+            var index = random.nextInt(EMOTE_NAMES.length);
+            var name = EMOTE_NAMES[index];
+            var begin = text.codePointCount(0, text.length());
+            text.append(name);
+            var end = begin + name.length() - 1;
+            ranges.computeIfAbsent("emotesv2_" + index, k -> new ArrayList<>()).add(begin + "-" + end);
+        }
+
+        var emotes = new StringBuilder();
+        ranges.forEach((id, r) -> {
+            if (!emotes.isEmpty()) emotes.append('/');
+            emotes.append(id).append(':').append(String.join(",", r));
+        });
+
+        return new Message(text.toString(), emotes.isEmpty() ? null : emotes.toString());
+    }
+
+    private static Message emojis(Random random) {
+        var length = 2 + random.nextInt(10);
+        var sb = new StringBuilder();
+        for (var i = 0; i < length; i++) {
+            if (random.nextBoolean()) {
+                sb.append(EMOJIS[random.nextInt(EMOJIS.length)]);
+            } else {
+                sb.append(ASCII_WORDS[random.nextInt(ASCII_WORDS.length)]).append(' ');
+            }
+        }
+        return new Message(sb.toString(), null);
+    }
+
+}
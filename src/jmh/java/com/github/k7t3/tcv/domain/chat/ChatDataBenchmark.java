@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.domain.chat;
+
+import com.github.k7t3.tcv.domain.Twitch;
+import com.github.k7t3.tcv.domain.event.EventPublishers;
+import com.github.twitch4j.chat.events.channel.IRCMessageEvent;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IRCのメッセージイベントから{@link ChatData}を生成するまでのベンチマーク。
+ * <p>
+ *     メッセージは部品へのアクセスまでパースされないため、
+ *     部品の数を参照してパースまでを計測に含める。
+ * </p>
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChatDataBenchmark {
+
+    private static final int CORPUS_SIZE = 256;
+
+    private static final String CHANNEL_ID = "12345678";
+
+    private static final String CHANNEL_NAME = "channel";
+
+    @Param({"ASCII", "EMOTE", "EMOJI", "CJK"})
+    public ChatCorpus.Kind kind;
+
+    private List<IRCMessageEvent> events;
+
+    private ChatRoomEventProvider provider;
+
+    @Setup
+    public void setUp() {
+        var twitch = Mockito.mock(Twitch.class);
+        var publishers = Mockito.mock(EventPublishers.class);
+        provider = new ChatRoomEventProvider(twitch, publishers);
+
+        var idToName = Map.of(CHANNEL_ID, CHANNEL_NAME);
+        var nameToId = Map.of(CHANNEL_NAME, CHANNEL_ID);
+
+        events = new ArrayList<>(CORPUS_SIZE);
+        var corpus = ChatCorpus.generate(kind, CORPUS_SIZE);
+        for (var i = 0; i < corpus.size(); i++) {
+            var message = corpus.get(i);
+            var raw = "@badge-info=subscriber/12;badges=subscriber/12,premium/1;color=#1E90FF"
+                    + ";display-name=User" + i
+                    + ";emotes=" + (message.emotes() == null ? "" : message.emotes())
+                    + ";first-msg=0;id=b34ccfc7-4977-403a-8a94-33c6bac3" + String.format("%04d", i)
+                    + ";mod=0;room-id=" + CHANNEL_ID
+                    + ";subscriber=1;tmi-sent-ts=1700000000000;turbo=0"
+                    + ";user-id=" + (10000 + i) + ";user-type="
+                    + " :user" + i + "!user" + i + "@user" + i + ".tmi.twitch.tv PRIVMSG #" + CHANNEL_NAME
+                    + " :" + message.text();
+            events.add(new IRCMessageEvent(raw, idToName, nameToId, Set.of()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        provider.clean();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void parseMessageEvent(Blackhole blackhole) {
+        for (var event : events) {
+            var chatData = provider.parseMessageEvent(event);
+            blackhole.consume(chatData);
+            blackhole.consume(chatData.message().size());
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.domain.chat;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ChatMessageParser#parse(String, String)}のベンチマーク。
+ * 1回の呼び出しでコーパスのすべてのメッセージをパースする。
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChatMessageParserBenchmark {
+
+    private static final int CORPUS_SIZE = 256;
+
+    @Param({"ASCII", "EMOTE", "EMOJI", "CJK"})
+    public ChatCorpus.Kind kind;
+
+    private List<ChatCorpus.Message> corpus;
+
+    private ChatMessageParser parser;
+
+    @Setup
+    public void setUp() {
+        corpus = ChatCorpus.generate(kind, CORPUS_SIZE);
+        parser = new ChatMessageParser();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CORPUS_SIZE)
+    public void parse(Blackhole blackhole) {
+        for (var message : corpus) {
+            blackhole.consume(parser.parse(message.text(), message.emotes()));
+        }
+    }
+
+}
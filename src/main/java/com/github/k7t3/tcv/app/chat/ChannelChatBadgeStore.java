@@ -29,7 +29,7 @@ public class ChannelChatBadgeStore extends CachedImageStore<ChatBadge> {
     private final TwitchChannel channel;
 
     public ChannelChatBadgeStore(TwitchChannel channel) {
-        super(8, Duration.ofMinutes(5));
+        super(0.2, Duration.ofMinutes(5));
         this.channel = channel;
     }
 
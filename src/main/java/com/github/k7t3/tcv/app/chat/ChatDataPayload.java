@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.k7t3.tcv.app.chat;
+
+import com.github.k7t3.tcv.app.image.LazyImage;
+import com.github.k7t3.tcv.domain.channel.TwitchChannel;
+import com.github.k7t3.tcv.domain.chat.ChatData;
+import javafx.scene.paint.Color;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * ワーカースレッドで表示に必要なリソースを解決したチャットメッセージ。
+ * <p>
+ *     JavaFXスレッドではこのペイロードから{@link ChatDataViewModel}を生成して追加するだけにする。
+ *     未解決の項目はnullで、{@link ChatDataViewModel}が最初に参照されたときに解決する。
+ * </p>
+ * @param chatData チャット
+ * @param channel チャットを受信したチャンネル
+ * @param sequence チャットを受信したイベントの順序({@link com.github.k7t3.tcv.domain.event.chat.ChatRoomEvent#getSequence()})
+ * @param filter 判定に使用したフィルタのスナップショット
+ * @param filtered フィルタに一致したか
+ * @param color ユーザーの色
+ * @param formattedName セルに表示するユーザー名
+ * @param badges バッジのイメージ
+ */
+record ChatDataPayload(
+        ChatData chatData,
+        TwitchChannel channel,
+        long sequence,
+        @Nullable Predicate<ChatData> filter,
+        boolean filtered,
+        @Nullable Color color,
+        @Nullable String formattedName,
+        @Nullable List<LazyImage> badges
+) {
+
+    /**
+     * 何も解決していないペイロード
+     */
+    static ChatDataPayload unresolved(ChatData chatData, TwitchChannel channel, long sequence) {
+        return new ChatDataPayload(chatData, channel, sequence, null, false, null, null, null);
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.k7t3.tcv.app.chat;
+
+import com.github.k7t3.tcv.app.channel.TwitchChannelViewModel;
+import com.github.k7t3.tcv.app.chat.filter.ChatFilters;
+import com.github.k7t3.tcv.app.image.LazyImage;
+import com.github.k7t3.tcv.domain.channel.TwitchChannel;
+import com.github.k7t3.tcv.domain.chat.ChatData;
+import com.github.k7t3.tcv.domain.event.chat.ChatMessageEvent;
+import javafx.scene.paint.Color;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 受信したチャットメッセージの表示に必要なリソースを解決する。
+ * <p>
+ *     メッセージを配送するワーカースレッドから呼び出される。
+ *     フィルタの判定と色の変換、バッジのイメージの検索をJavaFXスレッドの外で済ませ、
+ *     JavaFXスレッドでは解決済みの{@link ChatDataPayload}を追加するだけにする。
+ * </p>
+ * <p>
+ *     配送するスレッドはすべてのチャンネルで一つだけのため、ここではメッセージを解析しない。
+ *     エモートと絵文字のイメージはセルが最初に表示したときに解決する。
+ *     キャッシュから破棄されたり、表示されなかったりするメッセージは解析されない。
+ * </p>
+ */
+class ChatDataPreparer {
+
+    private final GlobalChatBadgeStore globalBadgeStore;
+
+    private final DefinedChatColors definedChatColors;
+
+    private final ChatFilters chatFilters;
+
+    /** どのスレッドからでも呼び出せるチャンネルの検索*/
+    private final Function<TwitchChannel, Optional<TwitchChannelViewModel>> channels;
+
+    /** どのスレッドからでも呼び出せる、チャンネルのチャットルームが表示されているかの判定*/
+    private final Predicate<TwitchChannel> shown;
+
+    ChatDataPreparer(
+            GlobalChatBadgeStore globalBadgeStore,
+            DefinedChatColors definedChatColors,
+            ChatFilters chatFilters,
+            Function<TwitchChannel, Optional<TwitchChannelViewModel>> channels,
+            Predicate<TwitchChannel> shown
+    ) {
+        this.globalBadgeStore = globalBadgeStore;
+        this.definedChatColors = definedChatColors;
+        this.chatFilters = chatFilters;
+        this.channels = channels;
+        this.shown = shown;
+    }
+
+    ChatDataPayload prepare(ChatMessageEvent event) {
+        return prepare(event.getChatData(), event.getChatRoom().getChannel(), event.getSequence());
+    }
+
+    ChatDataPayload prepare(ChatData chatData, TwitchChannel channel, long sequence) {
+        var filter = chatFilters.getSnapshot();
+        var filtered = filter.test(chatData);
+
+        var badgeStore = channels.apply(channel).map(TwitchChannelViewModel::getChatBadgeStore).orElse(null);
+        var color = resolveColor(chatData, definedChatColors);
+        var badges = resolveBadges(chatData, badgeStore, globalBadgeStore);
+
+        // 表示されていないチャットルームのイメージは表示するときに読み込む
+        if (!filtered && shown.test(channel)) {
+            prefetch(badges);
+        }
+
+        return new ChatDataPayload(
+                chatData,
+                channel,
+                sequence,
+                filter,
+                filtered,
+                color,
+                formatName(chatData),
+                List.copyOf(badges)
+        );
+    }
+
+    /**
+     * 表示されるより前にイメージの読み込みを始めておく。
+     * 表示されているイメージの読み込みが優先される。
+     */
+    private static void prefetch(List<LazyImage> images) {
+        for (var image : images) {
+            image.prefetch();
+        }
+    }
+
+    static Color resolveColor(ChatData chatData, DefinedChatColors definedChatColors) {
+        // カラーがnullのときはランダム
+        return (chatData.colorCode() == null)
+                ? definedChatColors.getRandom(chatData.userId())
+                : Color.web(chatData.colorCode());
+    }
+
+    static List<LazyImage> resolveBadges(
+            ChatData chatData,
+            @Nullable ChannelChatBadgeStore channelBadgeStore,
+            GlobalChatBadgeStore globalBadgeStore
+    ) {
+        var badges = new ArrayList<LazyImage>(chatData.badges().size());
+        for (var chatBadge : chatData.badges()) {
+            if (channelBadgeStore != null) {
+                var i = channelBadgeStore.getNullable(chatBadge);
+                if (i.isPresent()) {
+                    badges.add(i.get());
+                    continue;
+                }
+            }
+            globalBadgeStore.getNullable(chatBadge).ifPresent(badges::add);
+        }
+        return badges;
+    }
+
+    /**
+     * セルに表示するユーザー名。
+     * 表示名とユーザー名が異なるときは併記する。
+     */
+    static String formatName(ChatData chatData) {
+        var displayName = chatData.userDisplayName() != null ? chatData.userDisplayName() : "";
+        if (!displayName.equalsIgnoreCase(chatData.userName())) {
+            return "%s(%s)".formatted(displayName, chatData.userName());
+        }
+        return chatData.userName();
+    }
+
+}
@@ -17,133 +17,131 @@
 package com.github.k7t3.tcv.app.chat;
 
 import com.github.k7t3.tcv.app.channel.TwitchChannelViewModel;
-import com.github.k7t3.tcv.app.chat.filter.ChatFilters;
 import com.github.k7t3.tcv.app.chat.filter.KeywordFilterEntry;
 import com.github.k7t3.tcv.app.chat.filter.UserFilterEntry;
-import com.github.k7t3.tcv.app.emoji.ChatEmojiStore;
 import com.github.k7t3.tcv.app.event.KeywordFilteringEvent;
 import com.github.k7t3.tcv.app.event.UserFilteringEvent;
 import com.github.k7t3.tcv.app.image.LazyImage;
 import com.github.k7t3.tcv.domain.chat.ChatData;
 import com.github.k7t3.tcv.domain.chat.ChatMessage;
 import com.github.k7t3.tcv.domain.chat.ChatMessageFragment;
-import com.github.k7t3.tcv.view.chat.ChatFont;
 import de.saxsys.mvvmfx.MvvmFX;
-import de.saxsys.mvvmfx.ViewModel;
-import javafx.beans.property.*;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.DataFormat;
 import javafx.scene.paint.Color;
 
-import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * チャットメッセージのViewModel
+ * <p>
+ *     チャットルームのキャッシュの数だけ生成されるため、JavaFXのプロパティは持たない。
+ *     不変の{@link ChatData}と削除、非表示などの状態を表すビットフラグだけを保持する。
+ *     ユーザー名やバッジの表示、フォントといったチャットルーム全体の設定は
+ *     セルがチャットルームから直接参照する。
+ * </p>
+ * <p>
+ *     削除や非表示の状態は{@link ChatRoomViewModel}を通して変更する。
+ *     チャットルームはリストの要素を置き換えることでセルに再描画させる。
+ * </p>
+ * <p>
+ *     ユーザーの色とバッジのイメージはセルが最初に参照したときに一度だけ解決する。
+ *     {@link ChatDataPayload}から生成したときは、
+ *     ワーカースレッドで解決済みの色やバッジをそのまま使用する。
+ *     エモートと絵文字のイメージはセルが参照するたびにストアから取得する。
+ * </p>
  */
 public class ChatDataViewModel {
 
-    private final ReadOnlyObjectWrapper<TwitchChannelViewModel> channel;
+    private static final byte DELETED = 1;
+    private static final byte HIDDEN = 1 << 1;
+    private static final byte SYSTEM = 1 << 2;
+    private static final byte SUBS = 1 << 3;
 
-    private final ReadOnlyStringWrapper userName = new ReadOnlyStringWrapper();
+    private final TwitchChannelViewModel channel;
 
-    private final ReadOnlyStringWrapper displayName = new ReadOnlyStringWrapper();
-
-    private final ReadOnlyObjectWrapper<Color> color = new ReadOnlyObjectWrapper<>(null);
-
-    private final ReadOnlyObjectWrapper<ChatMessage> message = new ReadOnlyObjectWrapper<>();
-
-    private final ObservableList<LazyImage> badges = FXCollections.observableArrayList();
-
-    private final BooleanProperty visibleName = new SimpleBooleanProperty(true);
-
-    private final BooleanProperty visibleBadge = new SimpleBooleanProperty(true);
+    private final ChatData chatData;
 
-    private final BooleanProperty deleted = new SimpleBooleanProperty(false);
+    /** チャットルームで共有するストア*/
+    private final ChatResources resources;
 
-    private final BooleanProperty hidden = new SimpleBooleanProperty(false);
+    /** 最初に参照されたときに解決する(ワーカースレッドで解決済みのときはその値)*/
+    private Color color;
+    private List<LazyImage> badges;
+    private String formattedName;
 
-    private final ObjectProperty<ChatFont> font = new SimpleObjectProperty<>(null);
+    private byte flags;
 
-    private final ChatData chatData;
+    private int bits = Integer.MIN_VALUE;
 
-    private final GlobalChatBadgeStore globalBadgeStore;
+    ChatDataViewModel(TwitchChannelViewModel channel, ChatData chatData, ChatResources resources) {
+        this(channel, ChatDataPayload.unresolved(chatData, null, 0), resources);
+    }
 
-    private final ChannelChatBadgeStore channelBadgeStore;
+    ChatDataViewModel(TwitchChannelViewModel channel, ChatDataPayload payload, ChatResources resources) {
+        this.channel = channel;
+        this.chatData = payload.chatData();
+        this.resources = resources;
+        this.color = payload.color();
+        this.badges = payload.badges();
+        this.formattedName = payload.formattedName();
+    }
 
-    private final ChatEmoteStore emoteStore;
+    public ChatData getChatData() {
+        return chatData;
+    }
 
-    private final DefinedChatColors definedChatColors;
+    public TwitchChannelViewModel getChannel() {
+        return channel;
+    }
 
-    private final ChatEmojiStore emojiStore;
+    public String getUserName() {
+        return chatData.userName();
+    }
 
-    private final ChatFilters chatFilters;
+    public String getDisplayName() {
+        return chatData.userDisplayName() != null ? chatData.userDisplayName() : "";
+    }
 
-    private boolean system = false;
-    private boolean subs = false;
-    private int bits = Integer.MIN_VALUE;
+    public ChatMessage getMessage() {
+        return chatData.message();
+    }
 
-    ChatDataViewModel(
-            TwitchChannelViewModel channel,
-            ChatData chatData,
-            GlobalChatBadgeStore globalBadgeStore,
-            ChannelChatBadgeStore channelBadgeStore,
-            ChatEmoteStore emoteStore,
-            DefinedChatColors definedChatColors,
-            ChatEmojiStore emojiStore,
-            ChatFilters chatFilters
-    ) {
-        this.channel = new ReadOnlyObjectWrapper<>(channel);
-        this.chatData = chatData;
-        this.globalBadgeStore = globalBadgeStore;
-        this.channelBadgeStore = channelBadgeStore;
-        this.emoteStore = emoteStore;
-        this.definedChatColors = definedChatColors;
-        this.emojiStore = emojiStore;
-        this.chatFilters = chatFilters;
-        update();
+    /**
+     * セルに表示するユーザー名。
+     * 表示名とユーザー名が異なるときは併記する。
+     */
+    public String getFormattedName() {
+        if (formattedName == null) {
+            formattedName = ChatDataPreparer.formatName(chatData);
+        }
+        return formattedName;
     }
 
-    public ChatData getChatData() {
-        return chatData;
+    public Color getColor() {
+        if (color == null) {
+            color = ChatDataPreparer.resolveColor(chatData, resources.definedChatColors());
+        }
+        return color;
     }
 
-    public LazyImage getEmojiImage(ChatMessageFragment fragment) {
-        if (fragment.type() != ChatMessageFragment.Type.EMOJI) throw new IllegalArgumentException("fragment is not emoji");
-        return emojiStore.get(fragment.additional());
-    }
-
-    private void update() {
-        userName.set(chatData.userName());
-        displayName.set(chatData.userDisplayName() != null ? chatData.userDisplayName() : "");
-        message.set(chatData.message());
-
-        // カラーがnullのときはランダム
-        var color = (chatData.colorCode() == null)
-                ? definedChatColors.getRandom(chatData.userId())
-                : Color.web(chatData.colorCode());
-        this.color.set(color);
-
-        var badges = new ArrayList<LazyImage>();
-        for (var chatBadge : chatData.badges()) {
-            var i = channelBadgeStore.getNullable(chatBadge);
-            if (i.isPresent()) {
-                badges.add(i.get());
-                continue;
-            }
-            globalBadgeStore.getNullable(chatBadge).ifPresent(badges::add);
+    public List<LazyImage> getBadges() {
+        if (badges == null) {
+            var badgeStore = channel == null ? null : channel.getChatBadgeStore();
+            badges = List.copyOf(ChatDataPreparer.resolveBadges(chatData, badgeStore, resources.globalBadgeStore()));
         }
-        this.badges.setAll(badges);
+        return badges;
     }
 
-    public ChatEmoteStore getEmoteStore() {
-        return emoteStore;
+    public LazyImage getEmoteImage(ChatMessageFragment fragment) {
+        if (fragment.type() != ChatMessageFragment.Type.EMOTE) throw new IllegalArgumentException("fragment is not emote");
+        return resources.emoteStore().get(fragment.text());
     }
 
-    public ObservableList<LazyImage> getBadges() {
-        return badges;
+    public LazyImage getEmojiImage(ChatMessageFragment fragment) {
+        if (fragment.type() != ChatMessageFragment.Type.EMOJI) throw new IllegalArgumentException("fragment is not emoji");
+        return resources.emojiStore().get(fragment.additional());
     }
 
     public void copyMessage() {
@@ -151,27 +149,59 @@ public class ChatDataViewModel {
         cb.setContent(Map.of(DataFormat.PLAIN_TEXT, getMessage().getPlain()));
     }
 
+    private boolean is(byte flag) {
+        return (flags & flag) != 0;
+    }
+
+    private void set(byte flag, boolean value) {
+        flags = (byte) (value ? flags | flag : flags & ~flag);
+    }
+
     public boolean isSystem() {
-        return system;
+        return is(SYSTEM);
     }
 
-    public void setSystem(boolean system) {
-        this.system = system;
+    void setSystem(boolean system) {
+        set(SYSTEM, system);
     }
 
     public boolean isSubs() {
-        return subs;
+        return is(SUBS);
+    }
+
+    void setSubs(boolean subs) {
+        set(SUBS, subs);
+    }
+
+    public boolean isDeleted() {
+        return is(DELETED);
+    }
+
+    /**
+     * 削除済みにする。
+     * セルに反映させるには{@link ChatRoomViewModel}でリストの要素を置き換える。
+     */
+    void setDeleted(boolean deleted) {
+        set(DELETED, deleted);
     }
 
-    public void setSubs(boolean subs) {
-        this.subs = subs;
+    public boolean isHidden() {
+        return is(HIDDEN);
+    }
+
+    /**
+     * 非表示にする。
+     * セルに反映させるには{@link ChatRoomViewModel}でリストの要素を置き換える。
+     */
+    void setHidden(boolean hidden) {
+        set(HIDDEN, hidden);
     }
 
     /**
      * チアーしたビッツ
      * @param bits ビッツ
      */
-    public void setBits(int bits) {
+    void setBits(int bits) {
         this.bits = bits;
     }
 
@@ -186,7 +216,7 @@ public class ChatDataViewModel {
     public void keywordFilter() {
         var message = getMessage().getPlain();
         var filter = KeywordFilterEntry.exactMatch(message);
-        chatFilters.saveKeywordFilter(filter);
+        resources.chatFilters().saveKeywordFilter(filter);
 
         var event = new KeywordFilteringEvent(filter);
         MvvmFX.getNotificationCenter().publish(event.getClass().getName(), event);
@@ -195,54 +225,10 @@ public class ChatDataViewModel {
     public void userFilter(String comment) {
         var chat = getChatData();
         var filter = new UserFilterEntry(chat.userId(), chat.userName(), comment);
-        chatFilters.saveUserFilter(filter);
+        resources.chatFilters().saveUserFilter(filter);
 
         var event = new UserFilteringEvent(filter);
         MvvmFX.getNotificationCenter().publish(event.getClass().getName(), event);
     }
 
-    // ********** PROPERTIES **********
-
-    public ReadOnlyObjectProperty<TwitchChannelViewModel> channelProperty() { return channel.getReadOnlyProperty(); }
-    public TwitchChannelViewModel getChannel() { return channel.get(); }
-
-    private ReadOnlyStringWrapper userNameWrapper() { return userName; }
-    public ReadOnlyStringProperty userNameProperty() { return userName.getReadOnlyProperty(); }
-    public String getUserName() { return userName.get(); }
-    private void setUserName(String userName) { this.userName.set(userName); }
-
-    private ReadOnlyStringWrapper displayNameWrapper() { return displayName; }
-    public ReadOnlyStringProperty displayNameProperty() { return displayName.getReadOnlyProperty(); }
-    public String getDisplayName() { return displayName.get(); }
-    private void setDisplayName(String displayName) { this.displayName.set(displayName); }
-
-    private ReadOnlyObjectWrapper<Color> colorWrapper() { return color; }
-    public ReadOnlyObjectProperty<Color> colorProperty() { return color.getReadOnlyProperty(); }
-    public Color getColor() { return color.get(); }
-    private void setColor(Color color) { this.color.set(color); }
-
-    private ReadOnlyObjectWrapper<ChatMessage> messageWrapper() { return message; }
-    public ReadOnlyObjectProperty<ChatMessage> messageProperty() { return message.getReadOnlyProperty(); }
-    public ChatMessage getMessage() { return message.get(); }
-    private void setMessage(ChatMessage message) { this.message.set(message); }
-
-    public BooleanProperty visibleNameProperty() { return visibleName; }
-    public boolean isVisibleName() { return visibleName.get(); }
-    public void setVisibleName(boolean deleted) { this.visibleName.set(deleted); }
-
-    public BooleanProperty visibleBadgeProperty() { return visibleBadge; }
-    public boolean isVisibleBadge() { return visibleBadge.get(); }
-    public void setVisibleBadge(boolean visibleBadge) { this.visibleBadge.set(visibleBadge); }
-
-    public BooleanProperty deletedProperty() { return deleted; }
-    public boolean isDeleted() { return deleted.get(); }
-    public void setDeleted(boolean deleted) { this.deleted.set(deleted); }
-
-    public BooleanProperty hiddenProperty() { return hidden; }
-    public boolean isHidden() { return hidden.get(); }
-    public void setHidden(boolean hidden) { this.hidden.set(hidden); }
-
-    public ObjectProperty<ChatFont> fontProperty() { return font; }
-    public ChatFont getFont() { return font.get(); }
-    public void setFont(ChatFont font) { this.font.set(font); }
 }
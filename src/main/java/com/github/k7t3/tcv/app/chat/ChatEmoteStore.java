@@ -29,7 +29,7 @@ public class ChatEmoteStore extends CachedImageStore<String> {
     private static final String CDN_FORMAT = "https://static-cdn.jtvnw.net/emoticons/v2/%s/default/light/1.0";
 
     public ChatEmoteStore() {
-        super(100, Duration.ofMinutes(5));
+        super(0.5, Duration.ofMinutes(5));
     }
 
     @Override
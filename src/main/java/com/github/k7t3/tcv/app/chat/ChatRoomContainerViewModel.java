@@ -27,6 +27,7 @@ import com.github.k7t3.tcv.app.emoji.Emoji;
 import com.github.k7t3.tcv.app.event.ChatOpeningEvent;
 import com.github.k7t3.tcv.app.event.KeywordFilteringEvent;
 import com.github.k7t3.tcv.app.event.UserFilteringEvent;
+import com.github.k7t3.tcv.app.image.ImageMemoryCache;
 import com.github.k7t3.tcv.app.reactive.ChatMessageSubscriber;
 import com.github.k7t3.tcv.app.reactive.DownCastFXSubscriber;
 import com.github.k7t3.tcv.app.service.FXTask;
@@ -44,9 +45,15 @@ import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -55,6 +62,11 @@ import java.util.function.Consumer;
 
 public class ChatRoomContainerViewModel extends AbstractViewModel {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChatRoomContainerViewModel.class);
+
+    /** チャットより先に届いた削除を保持する数*/
+    private static final int MAX_DELETED_MESSAGES = 512;
+
     private final ObservableList<ChatRoomViewModel> chatRoomList = FXCollections.observableArrayList(c -> new Observable[] { c.selectedProperty() });
     private final ObservableList<ChatRoomViewModel> floatingChatRoomList = FXCollections.observableArrayList();
     private final ObservableList<ChatRoomViewModel> allChatRooms = FXCollections.observableArrayList();
@@ -66,6 +78,9 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
     private final ReadOnlyIntegerWrapper selectingCount = new ReadOnlyIntegerWrapper();
     private final ReadOnlyBooleanWrapper loaded = new ReadOnlyBooleanWrapper(false);
 
+    /** ブロードキャスターのユーザーIDからチャットルームを引く経路表*/
+    private final ChatRoomRoutes routes = new ChatRoomRoutes();
+
     private GlobalChatBadgeStore globalBadgeStore;
     private ChatEmoteStore chatEmoteStore;
     private final DefinedChatColors definedChatColors = new DefinedChatColors();
@@ -73,10 +88,30 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
     private ChatEmojiStore emojiStore;
     private ChatFilters chatFilters;
 
+    /** ストアのロードが完了するまではnull*/
+    private volatile ChatDataPreparer preparer;
+
+    /**
+     * チャットより先に届いた削除を反映するため、最近削除されたメッセージIDを保持する。
+     * 削除とチャットは別のパブリッシャーで配送されるため、削除が先に届くことがある。
+     */
+    private final Map<String, Boolean> deletedMessages = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return MAX_DELETED_MESSAGES < size();
+        }
+    };
+
+    /** チャンネル(ブロードキャスターのユーザーID)ごとの最後にクリアしたイベントの順序*/
+    private final Map<String, Long> clearedSequences = new HashMap<>();
+
     private final IntegerProperty chatCacheSize = new SimpleIntegerProperty();
     private final BooleanProperty showUserName = new SimpleBooleanProperty(true);
     private final BooleanProperty showBadges = new SimpleBooleanProperty(true);
     private final ObjectProperty<ChatFont> font = new SimpleObjectProperty<>(null);
+    private final IntegerProperty chatFrameBudget = new SimpleIntegerProperty(ChatMessageSubscriber.DEFAULT_FRAME_BUDGET);
+    private final BooleanProperty dropFilteredChat = new SimpleBooleanProperty(false);
+    private final IntegerProperty imageCacheSize = new SimpleIntegerProperty();
 
     private final List<FlowableSubscriber<?>> subscribers = new ArrayList<>();
 
@@ -93,6 +128,13 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
         // mergeリストに同期させるためのリスナを追加
         chatRoomList.addListener(this::injectionItemListener);
         floatingChatRoomList.addListener(this::injectionItemListener);
+
+        // イメージのメモリキャッシュの上限(MB)
+        imageCacheSize.addListener((ob, o, n) -> {
+            if (0 < n.intValue()) {
+                ImageMemoryCache.getInstance().setMaximumBytes(n.intValue() * 1024L * 1024L);
+            }
+        });
     }
 
     public void bindChatPreferences(ChatPreferences chatPreferences) {
@@ -100,14 +142,22 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
         showUserName.bind(chatPreferences.showUserNameProperty());
         showBadges.bind(chatPreferences.showBadgesProperty());
         font.bind(chatPreferences.fontProperty());
+        chatFrameBudget.bind(chatPreferences.chatFrameBudgetProperty());
+        dropFilteredChat.bind(chatPreferences.dropFilteredChatProperty());
+        imageCacheSize.bind(chatPreferences.imageCacheSizeProperty());
     }
 
     private void injectionItemListener(ListChangeListener.Change<? extends ChatRoomViewModel> c) {
         while (c.next()) {
-            if (c.wasAdded())
-                allChatRooms.addAll(c.getAddedSubList());
-            if (c.wasRemoved())
+            // 付け替え(ポップアウトなど)で経路が消えないように削除を先に反映する
+            if (c.wasRemoved()) {
                 allChatRooms.removeAll(c.getRemoved());
+                c.getRemoved().forEach(routes::unregister);
+            }
+            if (c.wasAdded()) {
+                allChatRooms.addAll(c.getAddedSubList());
+                c.getAddedSubList().forEach(routes::register);
+            }
         }
     }
 
@@ -124,7 +174,8 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
         var raidReceivedSub = subscriber(RaidReceivedEvent.class, this::onRaidReceived);
         var giftedSub = subscriber(UserGiftedSubscribeEvent.class, this::onGiftedSubs);
         var subsSub = subscriber(UserSubscribedEvent.class, this::onSubs);
-        var chatSub = new ChatMessageSubscriber(this::onChatPosted);
+        var chatSub = new ChatMessageSubscriber<>(this::prepare, this::onChatPosted);
+        chatSub.frameBudgetProperty().bind(chatFrameBudget);
 
         eventSubscribers.subscribeChatEvent(clearedSub);
         eventSubscribers.subscribeChatEvent(deleteSub);
@@ -156,19 +207,61 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
     }
 
     private Optional<ChatRoomViewModel> find(TwitchChannel channel) {
-        return allChatRooms.stream().filter(r -> r.accept(channel)).findFirst();
+        return routes.find(channel);
     }
 
-    private void onChatPosted(ChatMessageEvent e) {
-        var chatRoom = e.getChatRoom();
-        var channel = chatRoom.getChannel();
-        find(channel).ifPresent(c -> {
-            var filter = chatFilters.getFilter();
-            var hidden = filter.test(e.getChatData());
-            c.onChatAdded(e, hidden);
+    /**
+     * 受信したチャットメッセージの表示に必要なリソースを解決する。
+     * メッセージを配送するワーカースレッドで呼び出される。
+     */
+    private ChatDataPayload prepare(ChatMessageEvent e) {
+        var preparer = this.preparer;
+        if (preparer != null) {
+            try {
+                return preparer.prepare(e);
+            } catch (Exception ex) {
+                LOGGER.warn("failed to prepare chat message", ex);
+            }
+        }
+        // 解決できなかったものはビューモデルが参照されたときに解決する
+        return ChatDataPayload.unresolved(e.getChatData(), e.getChatRoom().getChannel(), e.getSequence());
+    }
+
+    /**
+     * 1フレーム分のチャットメッセージを受け取る。
+     * チャットルームごとにまとめて追加するため、
+     * チャットルームあたりのリスト変更はフレームごとに一度になる。
+     * <p>
+     *     チャットより先に届いたクリアと削除はここで反映する。
+     *     クリアより前に受信したチャットは追加せず、削除されたチャットは追加してから削除済みにする。
+     * </p>
+     */
+    private void onChatPosted(List<ChatDataPayload> payloads) {
+        var rooms = new LinkedHashMap<ChatRoomViewModel, List<ChatDataPayload>>();
+        for (var p : payloads) {
+            var cleared = clearedSequences.get(key(p.channel()));
+            if (cleared != null && p.sequence() < cleared) continue;
+            find(p.channel()).ifPresent(c -> rooms.computeIfAbsent(c, k -> new ArrayList<>()).add(p));
+        }
+
+        var filter = chatFilters.getSnapshot();
+        rooms.forEach((room, roomPayloads) -> room.onChatsAdded(roomPayloads, filter));
+
+        if (deletedMessages.isEmpty()) return;
+        rooms.forEach((room, roomPayloads) -> {
+            for (var p : roomPayloads) {
+                var msgId = p.chatData().msgId();
+                if (msgId != null && deletedMessages.remove(msgId) != null) {
+                    room.deleteChatMessage(msgId);
+                }
+            }
         });
     }
 
+    private static String key(TwitchChannel channel) {
+        return channel.getBroadcaster().getUserId();
+    }
+
     private void onKeywordFiltered(KeywordFilteringEvent event) {
         allChatRooms.forEach(c -> c.chatFilter(event));
     }
@@ -180,6 +273,8 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
     private void onChatCleared(ChatClearedEvent e) {
         var chatRoom = e.getChatRoom();
         var channel = chatRoom.getChannel();
+        // まだ届いていないクリアより前のチャットも追加しない
+        clearedSequences.merge(key(channel), e.getSequence(), Math::max);
         find(channel).ifPresent(c -> c.clearChatMessages(chatRoom));
     }
 
@@ -187,6 +282,8 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
         var chatRoom = e.getChatRoom();
         var channel = chatRoom.getChannel();
         var messageId = e.getDeletedMessageId();
+        // 削除されたチャットがまだ届いていないときは届いたときに削除する
+        if (messageId != null) deletedMessages.put(messageId, Boolean.TRUE);
         find(channel).ifPresent(c -> c.deleteChatMessage(messageId));
     }
 
@@ -241,15 +338,26 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
         chatFilters = helper.getChatFilters();
 
         var task = FXTask.<Void>task(() -> {
+            var start = System.nanoTime();
+
             var appDir = OS.current().getApplicationDirectory();
             emoji = new Emoji(appDir);
             emojiStore = new ChatEmojiStore(emoji);
 
             var eit = FXTask.task(() -> {
-                if (!emoji.validateArchive()) {
+                var eStart = System.nanoTime();
+                if (emoji.validateArchive()) {
+                    // スタンプだけで判定したアーカイブは優先度を下げて検証する
+                    Thread.ofPlatform()
+                            .name("Emoji-Verify-Thread")
+                            .daemon()
+                            .priority(Thread.MIN_PRIORITY)
+                            .start(this::verifyEmojiArchive);
+                } else {
                     emoji.extractArchive();
                     emoji.validateArchive();
                 }
+                LOGGER.info("emoji archive ready in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - eStart));
                 return null;
             }).runAsync();
 
@@ -264,6 +372,15 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
             cft.waitForDone();
             eit.waitForDone();
 
+            preparer = new ChatDataPreparer(
+                    globalBadgeStore,
+                    definedChatColors,
+                    chatFilters,
+                    routes::findChannel,
+                    routes::isShown
+            );
+
+            LOGGER.info("chat container ready in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
             return null;
         });
 
@@ -272,13 +389,20 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
         return task;
     }
 
+    private void verifyEmojiArchive() {
+        try {
+            emoji.verifyArchive();
+        } catch (IOException e) {
+            LOGGER.warn("failed to verify emoji archive", e);
+        }
+    }
+
     private void openChatRooms(List<TwitchChannelViewModel> channels) {
         if (!loaded.get()) throw new IllegalStateException("not loaded yet");
 
         // すでに登録済みのチャンネルは除外する
         var filtered = channels.stream()
-                .filter(c -> chatRoomList.stream().noneMatch(c2 -> c2.accept(c.getChannel())))
-                .filter(c -> floatingChatRoomList.stream().noneMatch(c2 -> c2.accept(c.getChannel())))
+                .filter(c -> !routes.contains(c.getChannel()))
                 .toList();
 
         if (filtered.isEmpty()) {
@@ -324,17 +448,7 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
     private void openChatRoom(TwitchChannelViewModel channel) {
         if (!loaded.get()) throw new IllegalStateException("not loaded yet");
 
-        var exist = chatRoomList.stream()
-                .filter(vm -> vm.accept(channel.getChannel()))
-                .findFirst();
-        if (exist.isPresent()) {
-            return;
-        }
-
-        exist = floatingChatRoomList.stream()
-                .filter(vm -> vm.accept(channel.getChannel()))
-                .findFirst();
-        if (exist.isPresent()) {
+        if (routes.contains(channel.getChannel())) {
             return;
         }
 
@@ -358,6 +472,7 @@ public class ChatRoomContainerViewModel extends AbstractViewModel {
         viewModel.showBadgesProperty().bind(showBadges);
         viewModel.fontProperty().bind(font);
         viewModel.selectModeProperty().bind(selectMode);
+        viewModel.dropFilteredProperty().bind(dropFilteredChat);
     }
 
     /**
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.k7t3.tcv.app.chat;
+
+import com.github.k7t3.tcv.app.channel.TwitchChannelViewModel;
+import com.github.k7t3.tcv.domain.channel.TwitchChannel;
+import javafx.collections.MapChangeListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ブロードキャスターのユーザーIDからイベントの配送先となるチャットルームを引く経路表。
+ * <p>
+ *     コンテナに表示されている(フローティングを含む)チャットルームを登録する。
+ *     {@link MergedChatRoomViewModel}は登録中に含まれるチャンネルが
+ *     増減したときにも経路を追従させる。
+ * </p>
+ * <p>
+ *     JavaFXアプリケーションスレッドからのみ操作すること。
+ *     ただし{@link #findChannel(TwitchChannel)}と{@link #isShown(TwitchChannel)}は
+ *     どのスレッドからでも呼び出せる。
+ * </p>
+ */
+class ChatRoomRoutes {
+
+    /** ワーカースレッドからも参照されるためConcurrent*/
+    private final Map<String, ChatRoomViewModel> routes = new ConcurrentHashMap<>();
+
+    /**
+     * 経路が登録されているチャンネル
+     * ワーカースレッドからも参照されるためConcurrent
+     */
+    private final Map<String, TwitchChannelViewModel> channels = new ConcurrentHashMap<>();
+
+    private final Map<MergedChatRoomViewModel, MapChangeListener<TwitchChannelViewModel, SingleChatRoomViewModel>> listeners = new HashMap<>();
+
+    ChatRoomRoutes() {
+    }
+
+    private static String key(TwitchChannelViewModel channel) {
+        return key(channel.getChannel());
+    }
+
+    private static String key(TwitchChannel channel) {
+        return channel.getBroadcaster().getUserId();
+    }
+
+    /**
+     * チャットルームが扱うすべてのチャンネルの経路を登録する。
+     */
+    void register(ChatRoomViewModel chatRoom) {
+        switch (chatRoom) {
+            case SingleChatRoomViewModel single -> put(single.getChannel(), single);
+            case MergedChatRoomViewModel merged -> {
+                merged.getChannels().keySet().forEach(c -> put(c, merged));
+
+                MapChangeListener<TwitchChannelViewModel, SingleChatRoomViewModel> listener = c -> {
+                    if (c.wasRemoved()) remove(c.getKey(), merged);
+                    if (c.wasAdded()) put(c.getKey(), merged);
+                };
+                merged.getChannels().addListener(listener);
+                listeners.put(merged, listener);
+            }
+            default -> throw new IllegalArgumentException("Unexpected chat room: " + chatRoom);
+        }
+    }
+
+    /**
+     * チャットルームの経路を取り除く。
+     * 別のチャットルームに付け替えられた経路はそのまま残す。
+     */
+    void unregister(ChatRoomViewModel chatRoom) {
+        switch (chatRoom) {
+            case SingleChatRoomViewModel single -> remove(single.getChannel(), single);
+            case MergedChatRoomViewModel merged -> {
+                var listener = listeners.remove(merged);
+                if (listener != null) {
+                    merged.getChannels().removeListener(listener);
+                }
+                routes.entrySet().removeIf(e -> {
+                    if (e.getValue() != merged) return false;
+                    channels.remove(e.getKey());
+                    return true;
+                });
+            }
+            default -> throw new IllegalArgumentException("Unexpected chat room: " + chatRoom);
+        }
+    }
+
+    private void put(TwitchChannelViewModel channel, ChatRoomViewModel chatRoom) {
+        var key = key(channel);
+        routes.put(key, chatRoom);
+        channels.put(key, channel);
+    }
+
+    private void remove(TwitchChannelViewModel channel, ChatRoomViewModel chatRoom) {
+        var key = key(channel);
+        if (routes.remove(key, chatRoom)) {
+            channels.remove(key);
+        }
+    }
+
+    Optional<ChatRoomViewModel> find(TwitchChannel channel) {
+        return Optional.ofNullable(routes.get(key(channel)));
+    }
+
+    /**
+     * 経路が登録されているチャンネルを返す。
+     * どのスレッドからでも呼び出せる。
+     */
+    Optional<TwitchChannelViewModel> findChannel(TwitchChannel channel) {
+        return Optional.ofNullable(channels.get(key(channel)));
+    }
+
+    /**
+     * チャンネルの経路となるチャットルームが画面に表示されているか。
+     * どのスレッドからでも呼び出せる。
+     */
+    boolean isShown(TwitchChannel channel) {
+        var chatRoom = routes.get(key(channel));
+        return chatRoom != null && chatRoom.isShown();
+    }
+
+    boolean contains(TwitchChannel channel) {
+        return routes.containsKey(key(channel));
+    }
+
+    void clear() {
+        listeners.forEach((merged, listener) -> merged.getChannels().removeListener(listener));
+        listeners.clear();
+        routes.clear();
+        channels.clear();
+    }
+
+}
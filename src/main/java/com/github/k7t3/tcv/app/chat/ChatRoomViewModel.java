@@ -18,6 +18,7 @@ package com.github.k7t3.tcv.app.chat;
 
 import com.github.k7t3.tcv.app.channel.TwitchChannelViewModel;
 import com.github.k7t3.tcv.app.chat.filter.ChatFilters;
+import com.github.k7t3.tcv.app.collections.RingBufferObservableList;
 import com.github.k7t3.tcv.app.chat.filter.KeywordFilterEntry;
 import com.github.k7t3.tcv.app.core.Resources;
 import com.github.k7t3.tcv.app.emoji.ChatEmojiStore;
@@ -30,20 +31,27 @@ import com.github.k7t3.tcv.domain.chat.ChatRoom;
 import com.github.k7t3.tcv.domain.event.chat.*;
 import com.github.k7t3.tcv.view.chat.ChatFont;
 import javafx.beans.property.*;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Predicate;
 
 public abstract class ChatRoomViewModel {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ChatRoomViewModel.class);
 
-    private final IntegerProperty chatCacheSize = new SimpleIntegerProperty(256);
+    private static final int DEFAULT_CHAT_CACHE_SIZE = 256;
 
-    private final ObservableList<ChatDataViewModel> chatDataList = FXCollections.observableArrayList(new LinkedList<>());
+    private final IntegerProperty chatCacheSize = new SimpleIntegerProperty(DEFAULT_CHAT_CACHE_SIZE);
+
+    private final RingBufferObservableList<ChatDataViewModel> chatDataList = new RingBufferObservableList<>(DEFAULT_CHAT_CACHE_SIZE);
 
     private final BooleanProperty autoScroll = new SimpleBooleanProperty(true);
 
@@ -59,17 +67,25 @@ public abstract class ChatRoomViewModel {
 
     private final BooleanProperty selectMode = new SimpleBooleanProperty(false);
 
-    private final GlobalChatBadgeStore globalChatBadgeStore;
+    /** フィルタに一致したチャットを非表示にせず破棄するか*/
+    private final BooleanProperty dropFiltered = new SimpleBooleanProperty(false);
 
-    private final ChatEmoteStore emoteStore;
+    /** チャットルームが画面に表示されているか*/
+    private final BooleanProperty visible = new SimpleBooleanProperty(true);
 
-    private final DefinedChatColors definedChatColors;
+    /** ワーカースレッドから参照する{@link #visible}の値*/
+    private volatile boolean shown = true;
 
-    private final ChatEmojiStore emojiStore;
+    /**
+     * 非表示のあいだに受信したチャット。
+     * 再び表示されたときにまとめてリストに反映する。
+     */
+    private final ArrayDeque<ChatDataViewModel> pendingChats = new ArrayDeque<>();
 
-    protected final ChatRoomContainerViewModel containerViewModel;
+    /** すべてのチャットで共有するストア*/
+    private final ChatResources resources;
 
-    private final ChatFilters chatFilters;
+    protected final ChatRoomContainerViewModel containerViewModel;
 
     ChatRoomViewModel(
             GlobalChatBadgeStore globalChatBadgeStore,
@@ -78,14 +94,14 @@ public abstract class ChatRoomViewModel {
             ChatEmojiStore emojiStore,
             ChatRoomContainerViewModel containerViewModel,
             ChatFilters chatFilters) {
-        this.globalChatBadgeStore = globalChatBadgeStore;
-        this.emoteStore = emoteStore;
-        this.definedChatColors = definedChatColors;
-        this.emojiStore = emojiStore;
+        this.resources = new ChatResources(globalChatBadgeStore, emoteStore, definedChatColors, emojiStore, chatFilters);
         this.containerViewModel = containerViewModel;
-        this.chatFilters = chatFilters;
 
         chatCacheSize.addListener((ob, o, n) -> itemCountLimitChanged(n.intValue()));
+        visible.addListener((ob, o, n) -> {
+            shown = n;
+            if (n) applyPendingChats();
+        });
     }
 
     public void popOutAsFloatableStage() {
@@ -97,28 +113,97 @@ public abstract class ChatRoomViewModel {
     }
 
     public void chatFilter(KeywordFilteringEvent event) {
-        var entry = event.entry();
-        chatDataList.stream()
-                .filter(c -> entry.test(c.getChatData()))
-                .forEach(c -> c.setHidden(true));
+        applyFilter(event.entry());
     }
 
     public void chatFilter(UserFilteringEvent event) {
-        var entry = event.entry();
-        chatDataList.stream()
-                .filter(c -> entry.test(c.getChatData()))
-                .forEach(c -> c.setHidden(true));
+        applyFilter(event.entry());
+    }
+
+    private void applyFilter(Predicate<ChatData> filter) {
+        if (isDropFiltered()) {
+            pendingChats.removeIf(c -> filter.test(c.getChatData()));
+            chatDataList.removeIf(c -> filter.test(c.getChatData()));
+            return;
+        }
+
+        // 反映前のチャットは描画されていないため状態を変えるだけでいい
+        for (var chat : pendingChats) {
+            if (filter.test(chat.getChatData())) {
+                chat.setHidden(true);
+            }
+        }
+
+        for (var i = 0; i < chatDataList.size(); i++) {
+            var chat = chatDataList.get(i);
+            if (!chat.isHidden() && filter.test(chat.getChatData())) {
+                chat.setHidden(true);
+                refresh(i);
+            }
+        }
+    }
+
+    /**
+     * 要素を同じインスタンスで置き換えて、表示しているセルを作り直させる。
+     * チャットはプロパティを持たないため、状態の変更はこの方法でセルに通知する。
+     */
+    private void refresh(int index) {
+        chatDataList.set(index, chatDataList.get(index));
+    }
+
+    /**
+     * 指定したチャットを表示しているセルを作り直させる。
+     * セルの高さを計測し直させるときに使用する。
+     *
+     * @param chats セルを作り直させるチャット
+     */
+    public void refreshChats(Collection<ChatDataViewModel> chats) {
+        if (chats.isEmpty()) return;
+
+        var targets = Collections.newSetFromMap(new IdentityHashMap<ChatDataViewModel, Boolean>(chats.size()));
+        targets.addAll(chats);
+        for (var i = 0; i < chatDataList.size(); i++) {
+            if (targets.contains(chatDataList.get(i))) {
+                refresh(i);
+            }
+        }
     }
 
     private void itemCountLimitChanged(int limit) {
-        var over = chatDataList.size() - limit;
+        // 上限を超えている分は先頭から破棄される
+        chatDataList.setCapacity(Math.max(1, limit));
+        trimPendingChats();
+    }
 
-        if (over < 1)
-            return;
+    /**
+     * 反映を待っているチャットのうち、上限を超える古いものを破棄する
+     */
+    private void trimPendingChats() {
+        var capacity = chatDataList.getCapacity();
+        while (capacity < pendingChats.size()) {
+            pendingChats.pollFirst();
+        }
+    }
 
-        for (var i = 0; i < over; i++) {
-            chatDataList.removeFirst();
+    /**
+     * 非表示のあいだに受信したチャットをまとめてリストに反映する。
+     * <p>
+     *     上限以上のチャットが溜まっているときはリストを置き換え、
+     *     そうでなければ上限を超える分の削除と合わせて一度の変更で追加する。
+     * </p>
+     */
+    void applyPendingChats() {
+        if (pendingChats.isEmpty()) return;
+
+        var count = pendingChats.size();
+        if (chatDataList.getCapacity() <= count) {
+            chatDataList.setAll(pendingChats);
+        } else {
+            chatDataList.addAll(pendingChats);
         }
+        pendingChats.clear();
+
+        LOGGER.debug("{} applied {} pending chats", getIdentity(), count);
     }
 
     public ObservableList<ChatDataViewModel> getChatDataList() {
@@ -141,35 +226,55 @@ public abstract class ChatRoomViewModel {
 
     protected abstract boolean accept(TwitchChannel channel);
 
+    private ChatDataViewModel createChatDataViewModel(TwitchChannelViewModel channel, ChatDataPayload payload) {
+        return new ChatDataViewModel(channel, payload, resources);
+    }
+
     private ChatDataViewModel createChatDataViewModel(TwitchChannelViewModel channel, ChatData item) {
-        return new ChatDataViewModel(
-                channel,
-                item,
-                globalChatBadgeStore,
-                channel.getChatBadgeStore(),
-                emoteStore,
-                definedChatColors,
-                emojiStore,
-                chatFilters
-        );
+        return new ChatDataViewModel(channel, item, resources);
     }
 
     public void addChat(ChatDataViewModel chat) {
-        chat.visibleNameProperty().bind(showName);
-        chat.visibleBadgeProperty().bind(showBadges);
-        chat.fontProperty().bind(font);
+        addChats(List.of(chat));
+    }
 
-        // 上限制限
-        if (getChatCacheSize() <= chatDataList.size()) {
-            chatDataList.removeFirst();
+    /**
+     * チャットをまとめて追加する。
+     * <p>
+     *     上限を超える分の削除と追加を一度の変更で行うため、
+     *     リストの変更通知(とそれに伴うスクロール)は追加件数に依存しない。
+     * </p>
+     * <p>
+     *     チャットルームが表示されていないときはリストに反映せずに溜めておき、
+     *     再び表示されたときにまとめて反映する。
+     * </p>
+     */
+    public void addChats(List<ChatDataViewModel> chats) {
+        if (chats.isEmpty()) return;
+
+        if (!isVisible()) {
+            pendingChats.addAll(chats);
+            trimPendingChats();
+            return;
         }
-        chatDataList.add(chat);
+
+        // 上限を超える分の破棄はリスト側で同じ変更として行われる
+        chatDataList.addAll(chats);
     }
 
     public void deleteChatMessage(String msgId) {
-        for (var item : chatDataList) {
+        for (var item : pendingChats) {
+            if (item.getChatData().msgId().equalsIgnoreCase(msgId)) {
+                item.setDeleted(true);
+                return;
+            }
+        }
+
+        for (var i = 0; i < chatDataList.size(); i++) {
+            var item = chatDataList.get(i);
             if (item.getChatData().msgId().equalsIgnoreCase(msgId)) {
                 item.setDeleted(true);
+                refresh(i);
                 break;
             }
         }
@@ -177,20 +282,36 @@ public abstract class ChatRoomViewModel {
 
     public void clearChatMessages(ChatRoom chatRoom) {
         var broadcaster = chatRoom.getBroadcaster();
+        pendingChats.removeIf(chatData -> chatData.getChannel().getBroadcaster().equals(broadcaster));
         chatDataList.removeIf(chatData -> chatData.getChannel().getBroadcaster().equals(broadcaster));
     }
 
     public abstract void onStateUpdated(ChatRoomStateUpdatedEvent e);
 
-    void onChatAdded(ChatMessageEvent e, boolean hidden) {
-        var chatRoom = e.getChatRoom();
-        var channel = getChannel(chatRoom.getChannel());
-
-        var viewModel = createChatDataViewModel(channel, e.getChatData());
-        viewModel.fontProperty().bind(font);
-        viewModel.setHidden(hidden);
-
-        addChat(viewModel);
+    /**
+     * 同じフレームで受信したチャットをまとめて追加する。
+     * <p>
+     *     フィルタの判定はワーカースレッドで済ませてあるため、
+     *     判定した後にフィルタが変更されたときだけ判定し直す。
+     * </p>
+     * @param payloads このチャットルームに宛てたチャット
+     * @param filter 非表示にするチャットを判定する現在のフィルタ
+     */
+    void onChatsAdded(List<ChatDataPayload> payloads, Predicate<ChatData> filter) {
+        var drop = isDropFiltered();
+        var viewModels = new ArrayList<ChatDataViewModel>(payloads.size());
+        for (var p : payloads) {
+            var hidden = p.filter() == filter ? p.filtered() : filter.test(p.chatData());
+
+            // 破棄する設定のときはビューモデルを生成しない
+            if (hidden && drop) continue;
+
+            var channel = getChannel(p.channel());
+            var viewModel = createChatDataViewModel(channel, p);
+            viewModel.setHidden(hidden);
+            viewModels.add(viewModel);
+        }
+        addChats(viewModels);
     }
 
     void onCheered(CheeredEvent e) {
@@ -199,7 +320,6 @@ public abstract class ChatRoomViewModel {
         var cheer = e.getCheer();
 
         var viewModel = createChatDataViewModel(channel, cheer.chatData());
-        viewModel.fontProperty().bind(font);
         viewModel.setBits(cheer.bits());
 
         addChat(viewModel);
@@ -211,7 +331,6 @@ public abstract class ChatRoomViewModel {
         var channel = getChannel(e.getChatRoom().getChannel());
 
         var viewModel = createChatDataViewModel(channel, chatData);
-        viewModel.fontProperty().bind(font);
         viewModel.setSystem(true);
 
         addChat(viewModel);
@@ -225,7 +344,6 @@ public abstract class ChatRoomViewModel {
         var channel = getChannel(chatRoom.getChannel());
 
         var viewModel = createChatDataViewModel(channel, chatData);
-        viewModel.fontProperty().bind(font);
         viewModel.setSystem(true);
 
         addChat(viewModel);
@@ -236,7 +354,6 @@ public abstract class ChatRoomViewModel {
         var channel = getChannel(chatRoom.getChannel());
 
         var viewModel = createChatDataViewModel(channel, e.getChatData());
-        viewModel.fontProperty().bind(font);
         viewModel.setSubs(true);
 
         addChat(viewModel);
@@ -276,4 +393,18 @@ public abstract class ChatRoomViewModel {
     public BooleanProperty selectModeProperty() { return selectMode; }
     public boolean isSelectMode() { return selectMode.get(); }
     public void setSelectMode(boolean selectMode) { this.selectMode.set(selectMode); }
+
+    public BooleanProperty dropFilteredProperty() { return dropFiltered; }
+    public boolean isDropFiltered() { return dropFiltered.get(); }
+    public void setDropFiltered(boolean dropFiltered) { this.dropFiltered.set(dropFiltered); }
+
+    /**
+     * チャットルームが画面に表示されているか。
+     * どのスレッドからでも呼び出せる。
+     */
+    boolean isShown() { return shown; }
+
+    public BooleanProperty visibleProperty() { return visible; }
+    public boolean isVisible() { return visible.get(); }
+    public void setVisible(boolean visible) { this.visible.set(visible); }
 }
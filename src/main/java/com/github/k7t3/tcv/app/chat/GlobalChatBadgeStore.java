@@ -28,7 +28,7 @@ public class GlobalChatBadgeStore extends CachedImageStore<ChatBadge> {
     private final GlobalChatBadges globalBadges;
 
     public GlobalChatBadgeStore(GlobalChatBadges globalChatBadges) {
-        super(16, Duration.ofMinutes(5));
+        super(0.1, Duration.ofMinutes(5));
         this.globalBadges = globalChatBadges;
     }
 
@@ -18,12 +18,17 @@ package com.github.k7t3.tcv.app.chat;
 
 import com.github.k7t3.tcv.app.channel.TwitchChannelViewModel;
 import com.github.k7t3.tcv.app.chat.filter.ChatFilters;
+import com.github.k7t3.tcv.app.collections.MergedObservableList;
 import com.github.k7t3.tcv.app.emoji.ChatEmojiStore;
+import com.github.k7t3.tcv.app.event.KeywordFilteringEvent;
+import com.github.k7t3.tcv.app.event.UserFilteringEvent;
 import com.github.k7t3.tcv.app.service.FXTask;
 import com.github.k7t3.tcv.domain.channel.TwitchChannel;
+import com.github.k7t3.tcv.domain.chat.ChatRoom;
 import com.github.k7t3.tcv.domain.event.chat.ChatRoomStateUpdatedEvent;
 import de.saxsys.mvvmfx.ViewModel;
 import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 
 import java.nio.charset.StandardCharsets;
@@ -34,12 +39,25 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
+/**
+ * 複数のチャンネルのチャットをまとめて表示するチャットルーム
+ * <p>
+ *     チャットはそれぞれのチャンネルの{@link SingleChatRoomViewModel}が保持し、
+ *     このチャットルームは受信したチャットや削除などのイベントを各チャンネルに振り分ける。
+ *     表示するリストは各チャンネルの時系列順のリストを併合したビューで、
+ *     チャンネル間でチャットを複製したり並べ替えたりしない。
+ * </p>
+ * <p>
+ *     保持するチャットの数はチャンネルごとの上限で決まる。
+ * </p>
+ */
 public class MergedChatRoomViewModel extends ChatRoomViewModel implements ViewModel {
 
-    private static final int DEFAULT_ITEM_COUNT_LIMIT = 512;
-
     private final ObservableMap<TwitchChannelViewModel, SingleChatRoomViewModel> channels = FXCollections.observableHashMap();
 
+    private final MergedObservableList<ChatDataViewModel> mergedChatList =
+            new MergedObservableList<>(Comparator.comparing((ChatDataViewModel c) -> c.getChatData().firedAt()));
+
     MergedChatRoomViewModel(
             GlobalChatBadgeStore globalChatBadgeStore,
             ChatEmoteStore emoteStore,
@@ -50,15 +68,15 @@ public class MergedChatRoomViewModel extends ChatRoomViewModel implements ViewMo
             ChatFilters chatFilters
     ) {
         super(globalChatBadgeStore, emoteStore, definedChatColors, emojiCache, containerViewModel, chatFilters);
-        setChatCacheSize(DEFAULT_ITEM_COUNT_LIMIT);
 
         initChatRooms(chatRooms);
     }
 
     private void initChatRooms(List<SingleChatRoomViewModel> chatRooms) {
         for (var chatRoom : chatRooms) {
-            addChatRoom(chatRoom);
+            putChatRoom(chatRoom);
         }
+        mergedChatList.addSources(chatRooms.stream().map(ChatRoomViewModel::getChatDataList).toList());
     }
 
     @Override
@@ -70,26 +88,35 @@ public class MergedChatRoomViewModel extends ChatRoomViewModel implements ViewMo
         return Base64.getEncoder().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
     }
 
+    @Override
+    public ObservableList<ChatDataViewModel> getChatDataList() {
+        return mergedChatList;
+    }
+
+    /**
+     * チャンネルを登録し、表示状態をこのチャットルームに合わせる。
+     * 非表示のあいだはチャンネルごとにチャットが溜められる。
+     */
+    private void putChatRoom(SingleChatRoomViewModel chatRoom) {
+        chatRoom.visibleProperty().bind(visibleProperty());
+        channels.put(chatRoom.getChannel(), chatRoom);
+    }
+
+    /**
+     * チャンネルを取り除く。
+     * チャンネルが保持しているチャットはそのまま残る。
+     */
+    private void removeChatRoom(SingleChatRoomViewModel chatRoom) {
+        channels.remove(chatRoom.getChannel());
+        mergedChatList.removeSource(chatRoom.getChatDataList());
+        chatRoom.visibleProperty().unbind();
+    }
+
     public void addChatRoom(SingleChatRoomViewModel chatRoom) {
-        var channel = chatRoom.getChannel();
-
-        //
-        // 追加するチャットルームが現在持っているチャットの情報をマージする
-        // とりあえずすべてマージして最後に制限の個数で切り捨てる
-        //
-        var mergedChats = new ArrayList<>(getChatDataList());
-        mergedChats.addAll(chatRoom.getChatDataList());
-        mergedChats.sort(Comparator.comparing(o -> o.getChatData().firedAt()));
-
-        var limit = getChatCacheSize();
-        if (mergedChats.size() <= limit) {
-            getChatDataList().setAll(mergedChats);
-        } else {
-            var subList = mergedChats.subList(mergedChats.size() - limit, mergedChats.size());
-            getChatDataList().setAll(subList);
-        }
+        if (channels.containsValue(chatRoom)) return;
 
-        channels.put(channel, chatRoom);
+        putChatRoom(chatRoom);
+        mergedChatList.addSource(chatRoom.getChatDataList());
     }
 
     /**
@@ -115,20 +142,8 @@ public class MergedChatRoomViewModel extends ChatRoomViewModel implements ViewMo
     public void separateChatRoom(SingleChatRoomViewModel chatRoom) {
         if (!channels.containsValue(chatRoom)) return;
 
-        var channel = chatRoom.getChannel();
-
-        channels.remove(channel);
-
-        // 分離するチャンネルのチャットを取り出す
-        var chatList = getChatDataList().stream()
-                .filter(c -> c.getChannel().equals(channel))
-                .toList();
-
-        // 分離したチャンネルにチャット情報を渡す
-        chatRoom.getChatDataList().setAll(chatList);
-
-        // 現在のチャットから削除
-        getChatDataList().removeAll(chatList);
+        // 分離したチャンネルは自身のチャットをそのまま表示する
+        removeChatRoom(chatRoom);
 
         containerViewModel.getChatRoomList().add(chatRoom);
 
@@ -138,9 +153,7 @@ public class MergedChatRoomViewModel extends ChatRoomViewModel implements ViewMo
     public void closeChatRoom(SingleChatRoomViewModel chatRoom) {
         if (!channels.containsValue(chatRoom)) return;
 
-        var channel = chatRoom.getChannel();
-
-        channels.remove(channel);
+        removeChatRoom(chatRoom);
 
         onChannelRemoved();
     }
@@ -148,32 +161,64 @@ public class MergedChatRoomViewModel extends ChatRoomViewModel implements ViewMo
     public void aggregate(MergedChatRoomViewModel mergedChatRoom) {
         if (this == mergedChatRoom) return;
 
-        for (var entry : mergedChatRoom.channels.entrySet()) {
-            var channel = entry.getKey();
-            var chatRoom = entry.getValue();
-
+        for (var chatRoom : mergedChatRoom.channels.values()) {
             if (channels.containsValue(chatRoom)) continue;
+            putChatRoom(chatRoom);
+        }
 
-            //
-            // 追加するチャットルームが現在持っているチャットの情報をマージする
-            // とりあえずすべてマージして、最後に制限の個数で切り捨てる
-            //
-            var mergedChats = new ArrayList<>(getChatDataList());
-            mergedChats.addAll(chatRoom.getChatDataList());
-            mergedChats.sort(Comparator.comparing(o -> o.getChatData().firedAt()));
-
-            var limit = getChatCacheSize();
-            if (mergedChats.size() <= limit) {
-                chatRoom.getChatDataList().setAll(mergedChats);
-            } else {
-                var subList = mergedChats.subList(mergedChats.size() - limit, mergedChats.size());
-                chatRoom.getChatDataList().setAll(subList);
-            }
+        // 併合済みのリストどうしをマージするだけで済む
+        mergedChatList.absorb(mergedChatRoom.mergedChatList);
+        containerViewModel.getChatRoomList().remove(mergedChatRoom);
+    }
 
-            channels.put(channel, chatRoom);
-            containerViewModel.getChatRoomList().remove(mergedChatRoom);
+    /**
+     * チャットはそれぞれのチャンネルに追加する
+     */
+    @Override
+    public void addChats(List<ChatDataViewModel> chats) {
+        if (chats.isEmpty()) return;
+
+        var chatRooms = new LinkedHashMap<SingleChatRoomViewModel, List<ChatDataViewModel>>();
+        for (var chat : chats) {
+            var chatRoom = channels.get(chat.getChannel());
+            if (chatRoom != null) {
+                chatRooms.computeIfAbsent(chatRoom, k -> new ArrayList<>()).add(chat);
+            }
         }
+        chatRooms.forEach(SingleChatRoomViewModel::addChats);
+    }
+
+    @Override
+    public void chatFilter(KeywordFilteringEvent event) {
+        channels.values().forEach(c -> c.chatFilter(event));
+    }
+
+    @Override
+    public void chatFilter(UserFilteringEvent event) {
+        channels.values().forEach(c -> c.chatFilter(event));
+    }
 
+    @Override
+    public void deleteChatMessage(String msgId) {
+        channels.values().forEach(c -> c.deleteChatMessage(msgId));
+    }
+
+    /**
+     * マージしているリストはチャンネルのリストの置き換えに追従するため、各チャンネルに委譲する
+     */
+    @Override
+    public void refreshChats(Collection<ChatDataViewModel> chats) {
+        channels.values().forEach(c -> c.refreshChats(chats));
+    }
+
+    @Override
+    public void clearChatMessages(ChatRoom chatRoom) {
+        var broadcaster = chatRoom.getBroadcaster();
+        channels.forEach((channel, c) -> {
+            if (channel.getBroadcaster().equals(broadcaster)) {
+                c.clearChatMessages(chatRoom);
+            }
+        });
     }
 
     public ObservableMap<TwitchChannelViewModel, SingleChatRoomViewModel> getChannels() {
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.app.chat.filter;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+/**
+ * 複数のキーワードのいずれかを含むかを一度の走査で判定するAho-Corasickオートマトン。
+ * <p>
+ *     {@link PrefixTrie}の遷移に失敗関数を加えたもので、
+ *     判定にかかる時間はキーワードの数に依存しない。
+ * </p>
+ */
+class AhoCorasick extends PrefixTrie {
+
+    /** 失敗時の遷移先*/
+    private final int[] fail;
+
+    /** このノードまでにいずれかのキーワードが出現しているか(失敗リンク先を含む)*/
+    private final boolean[] output;
+
+    AhoCorasick(Collection<String> keywords) {
+        super(keywords);
+
+        var size = size();
+        fail = new int[size];
+        output = terminal.clone();
+
+        // 幅優先で失敗リンクを構築する
+        var queue = new ArrayDeque<Integer>();
+        for (var child : targets[0]) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            var k = keys[state];
+            var t = targets[state];
+            for (var i = 0; i < k.length; i++) {
+                var child = t[i];
+                fail[child] = transition(fail[state], k[i]);
+                output[child] |= output[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int transition(int state, char c) {
+        while (true) {
+            var next = next(state, c);
+            if (0 <= next) return next;
+            if (state == 0) return 0;
+            state = fail[state];
+        }
+    }
+
+    /**
+     * いずれかのキーワードを含むか判定する。
+     */
+    boolean matches(CharSequence text) {
+        if (output[0]) return true;
+
+        var state = 0;
+        for (var i = 0; i < text.length(); i++) {
+            state = transition(state, text.charAt(i));
+            if (output[state]) return true;
+        }
+        return false;
+    }
+
+}
@@ -24,7 +24,9 @@ import com.github.k7t3.tcv.entity.ChatKeywordFilterEntity;
 import com.github.k7t3.tcv.entity.ChatUserFilterEntity;
 import com.github.k7t3.tcv.entity.service.ChatKeywordFilterEntityService;
 import com.github.k7t3.tcv.entity.service.ChatUserFilterEntityService;
+import javafx.beans.Observable;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
 import java.util.function.Predicate;
@@ -35,21 +37,55 @@ public class ChatFilters extends AbstractViewModel {
     private final ChatKeywordFilterEntityService keywordService;
     private final ChatUserFilterEntityService userService;
 
-    private final ObservableList<KeywordFilterEntry> keywordEntries = FXCollections.observableArrayList();
-    private final ObservableList<UserFilterEntry> userEntries = FXCollections.observableArrayList();
+    private final ObservableList<KeywordFilterEntry> keywordEntries = FXCollections.observableArrayList(e -> new Observable[] {
+            e.filterTypeProperty(), e.keywordProperty(), e.patternProperty()
+    });
+    private final ObservableList<UserFilterEntry> userEntries = FXCollections.observableArrayList(e -> new Observable[] {
+            e.userIdProperty()
+    });
 
-    private final Predicate<ChatData> filter;
+    /**
+     * 現在のフィルタ一覧から生成した判定用のフィルタ。
+     * 一覧が変更されるたびに生成し直して差し替える。
+     */
+    private volatile CompiledChatFilter compiled = CompiledChatFilter.EMPTY;
+
+    private final Predicate<ChatData> filter = chatData -> compiled.test(chatData);
 
     public ChatFilters(ChatKeywordFilterEntityService keywordService, ChatUserFilterEntityService userService) {
         this.keywordService = keywordService;
         this.userService = userService;
-        filter = new KeywordFilter(keywordEntries).or(new UserFilter(userEntries));
+
+        keywordEntries.addListener((ListChangeListener<KeywordFilterEntry>) c -> recompile());
+        userEntries.addListener((ListChangeListener<UserFilterEntry>) c -> recompile());
+    }
+
+    private void recompile() {
+        compiled = CompiledChatFilter.compile(keywordEntries, userEntries);
     }
 
+    /**
+     * フィルタに一致するチャットか判定する{@link Predicate}を返す。
+     * <p>
+     *     返される{@link Predicate}は常に最新のフィルタ一覧で評価され、
+     *     どのスレッドからでも呼び出せる。
+     * </p>
+     */
     public Predicate<ChatData> getFilter() {
         return filter;
     }
 
+    /**
+     * 現在のフィルタ一覧から生成した判定用のフィルタを返す。
+     * <p>
+     *     フィルタ一覧が変更されるたびに別のインスタンスに差し替わるため、
+     *     判定した時点から一覧が変更されていないかを同一性で確かめられる。
+     * </p>
+     */
+    public Predicate<ChatData> getSnapshot() {
+        return compiled;
+    }
+
     public ObservableList<KeywordFilterEntry> getKeywordEntries() {
         return keywordEntries;
     }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.app.chat.filter;
+
+import com.github.k7t3.tcv.domain.chat.ChatData;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * キーワードフィルタとユーザーフィルタを判定用に変換した不変のフィルタ。
+ * <p>
+ *     {@link ChatFilters}がフィルタの一覧が変更されるたびに生成し直し、
+ *     参照を差し替えて使用する。生成後は変更されないため、
+ *     どのスレッドからでもロックせずに評価できる。
+ * </p>
+ * <ul>
+ *     <li>完全一致とユーザーIDはハッシュセット</li>
+ *     <li>前方一致はトライ木</li>
+ *     <li>部分一致はAho-Corasickオートマトン</li>
+ *     <li>正規表現は一つの選択パターンに連結する</li>
+ * </ul>
+ */
+final class CompiledChatFilter implements Predicate<ChatData> {
+
+    /** 何も除外しないフィルタ*/
+    static final CompiledChatFilter EMPTY = compile(List.of(), List.of());
+
+    /**
+     * 連結すると意味が変わる(後方参照や名前付きグループを含む)正規表現
+     */
+    private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]");
+
+    private final Set<String> userIds;
+
+    private final Set<String> exactKeywords;
+
+    private final PrefixTrie prefixKeywords;
+
+    private final AhoCorasick containsKeywords;
+
+    /** 連結した正規表現(対象がないときはnull)*/
+    private final Pattern combinedPattern;
+
+    /** 連結できなかった正規表現*/
+    private final List<Pattern> patterns;
+
+    private final boolean empty;
+
+    private CompiledChatFilter(
+            Set<String> userIds,
+            Set<String> exactKeywords,
+            PrefixTrie prefixKeywords,
+            AhoCorasick containsKeywords,
+            Pattern combinedPattern,
+            List<Pattern> patterns
+    ) {
+        this.userIds = userIds;
+        this.exactKeywords = exactKeywords;
+        this.prefixKeywords = prefixKeywords;
+        this.containsKeywords = containsKeywords;
+        this.combinedPattern = combinedPattern;
+        this.patterns = patterns;
+        this.empty = userIds.isEmpty()
+                && exactKeywords.isEmpty()
+                && prefixKeywords.isEmpty()
+                && containsKeywords.isEmpty()
+                && combinedPattern == null
+                && patterns.isEmpty();
+    }
+
+    /**
+     * フィルタの一覧から判定用のフィルタを生成する。
+     */
+    static CompiledChatFilter compile(
+            Collection<KeywordFilterEntry> keywordEntries,
+            Collection<UserFilterEntry> userEntries
+    ) {
+        var userIds = userEntries.stream()
+                .map(UserFilterEntry::getUserId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet());
+
+        var exact = new HashSet<String>();
+        var prefix = new ArrayList<String>();
+        var contains = new ArrayList<String>();
+        var regex = new ArrayList<Pattern>();
+
+        for (var entry : keywordEntries) {
+            var type = entry.getFilterType();
+            if (type == null) continue;
+
+            switch (type) {
+                case EXACT_MATCH -> addIfNotNull(exact, entry.getKeyword());
+                case PREFIX_MATCH -> addIfNotNull(prefix, entry.getKeyword());
+                case CONTAINS -> addIfNotNull(contains, entry.getKeyword());
+                case REGEXP -> {
+                    var pattern = entry.getPattern();
+                    if (pattern == null && entry.getKeyword() != null) {
+                        pattern = Pattern.compile(entry.getKeyword());
+                    }
+                    addIfNotNull(regex, pattern);
+                }
+            }
+        }
+
+        // フラグを持たず、グループの番号や名前に依存しない正規表現は一つに連結する
+        var combinable = new ArrayList<Pattern>();
+        var separated = new ArrayList<Pattern>();
+        for (var pattern : regex) {
+            if (isCombinable(pattern)) {
+                combinable.add(pattern);
+            } else {
+                separated.add(pattern);
+            }
+        }
+
+        Pattern combined = null;
+        if (combinable.size() == 1) {
+            separated.add(combinable.getFirst());
+        } else if (1 < combinable.size()) {
+            var source = combinable.stream()
+                    .map(p -> "(?:" + p.pattern() + ")")
+                    .collect(Collectors.joining("|"));
+            try {
+                combined = Pattern.compile(source);
+            } catch (PatternSyntaxException e) {
+                // 個別には連結できても、連結した結果が解釈できないときは個別に評価する
+                separated.addAll(combinable);
+            }
+        }
+
+        return new CompiledChatFilter(
+                userIds,
+                Set.copyOf(exact),
+                new PrefixTrie(prefix),
+                new AhoCorasick(contains),
+                combined,
+                List.copyOf(separated)
+        );
+    }
+
+    /**
+     * 連結しても意味が変わらず、グループで囲んでも解釈できる正規表現か。
+     * 終端のない{@code \Q}などはグループで囲むと解釈できなくなる。
+     */
+    private static boolean isCombinable(Pattern pattern) {
+        var source = pattern.pattern();
+        if (pattern.flags() != 0 || NOT_COMBINABLE.matcher(source).find()) {
+            return false;
+        }
+        try {
+            Pattern.compile("(?:" + source + ")");
+            return true;
+        } catch (PatternSyntaxException e) {
+            return false;
+        }
+    }
+
+    private static <T> void addIfNotNull(Collection<T> collection, T value) {
+        if (value != null) collection.add(value);
+    }
+
+    @Override
+    public boolean test(ChatData chatData) {
+        if (empty) return false;
+
+        if (chatData.userId() != null && userIds.contains(chatData.userId()))
+            return true;
+
+        var message = chatData.message().getPlain();
+
+        if (exactKeywords.contains(message))
+            return true;
+
+        if (prefixKeywords.matchesPrefix(message))
+            return true;
+
+        if (containsKeywords.matches(message))
+            return true;
+
+        if (combinedPattern != null && combinedPattern.matcher(message).find())
+            return true;
+
+        for (var pattern : patterns) {
+            if (pattern.matcher(message).find())
+                return true;
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.app.chat.filter;
+
+import java.util.*;
+
+/**
+ * 前方一致を判定する文字単位のトライ木。
+ * <p>
+ *     構築後は変更されない。各ノードの遷移は文字順にソートされた配列で持ち、
+ *     二分探索で辿る。
+ * </p>
+ */
+class PrefixTrie {
+
+    /** ノードごとの遷移文字(ソート済み)*/
+    protected final char[][] keys;
+
+    /** ノードごとの遷移先*/
+    protected final int[][] targets;
+
+    /** キーワードの終端となるノード*/
+    protected final boolean[] terminal;
+
+    PrefixTrie(Collection<String> keywords) {
+        var builder = new ArrayList<TreeMap<Character, Integer>>();
+        var ends = new ArrayList<Boolean>();
+        builder.add(new TreeMap<>());
+        ends.add(false);
+
+        for (var keyword : keywords) {
+            var state = 0;
+            for (var i = 0; i < keyword.length(); i++) {
+                var c = keyword.charAt(i);
+                var next = builder.get(state).get(c);
+                if (next == null) {
+                    next = builder.size();
+                    builder.add(new TreeMap<>());
+                    ends.add(false);
+                    builder.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ends.set(state, true);
+        }
+
+        var size = builder.size();
+        keys = new char[size][];
+        targets = new int[size][];
+        terminal = new boolean[size];
+
+        for (var state = 0; state < size; state++) {
+            var transitions = builder.get(state);
+            var k = new char[transitions.size()];
+            var t = new int[transitions.size()];
+            var i = 0;
+            for (var entry : transitions.entrySet()) {
+                k[i] = entry.getKey();
+                t[i] = entry.getValue();
+                i++;
+            }
+            keys[state] = k;
+            targets[state] = t;
+            terminal[state] = ends.get(state);
+        }
+    }
+
+    /**
+     * 指定したノードから文字で遷移した先のノードを返す。
+     * @return 遷移先のノード、遷移できないときは-1
+     */
+    protected int next(int state, char c) {
+        var index = Arrays.binarySearch(keys[state], c);
+        return index < 0 ? -1 : targets[state][index];
+    }
+
+    protected int size() {
+        return terminal.length;
+    }
+
+    boolean isEmpty() {
+        return size() == 1 && !terminal[0];
+    }
+
+    /**
+     * いずれかのキーワードで始まるか判定する。
+     */
+    boolean matchesPrefix(CharSequence text) {
+        var state = 0;
+        if (terminal[state]) return true;
+
+        for (var i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            if (state < 0) return false;
+            if (terminal[state]) return true;
+        }
+        return false;
+    }
+
+}
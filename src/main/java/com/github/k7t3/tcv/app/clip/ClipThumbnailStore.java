@@ -28,7 +28,7 @@ public class ClipThumbnailStore extends CachedImageStore<PostedClipItem> {
     private static final double THUMBNAIL_HEIGHT = 128;
 
     public ClipThumbnailStore() {
-        super(128, Duration.ofMinutes(5));
+        super(0.4, Duration.ofMinutes(5));
     }
 
     @Override
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.app.collections;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+import java.util.*;
+
+/**
+ * 整列済みの複数の{@link ObservableList}を一つに併合して見せる読み取り専用の{@link ObservableList}
+ * <p>
+ *     それぞれのソースは{@link Comparator}の順に並んでいることを前提とし、
+ *     ソースの変更を監視して併合した結果を差分で更新する。
+ *     要素はソースと同じインスタンスを参照し、ソースの間で要素を複製しない。
+ * </p>
+ * <p>
+ *     ソースの末尾への追加は二分探索で挿入位置を決めるため、ほとんどの場合で末尾への追加になる。
+ *     ソースの追加は既存の要素とのk-wayマージでO(n log k)、
+ *     ソースの削除は一度の走査でO(n)となり、全体を並べ替えることはない。
+ * </p>
+ * <p>
+ *     ソースの要素を同じインスタンスで置き換えたときは、このリストでも同じ位置の置き換えとして通知する。
+ * </p>
+ * @param <E> 要素の型
+ */
+public class MergedObservableList<E> extends ObservableListBase<E> {
+
+    private final Comparator<? super E> comparator;
+
+    private final List<ObservableList<? extends E>> sources = new ArrayList<>();
+
+    private final ListChangeListener<E> sourceListener = this::onSourceChanged;
+
+    private ArrayList<E> elements = new ArrayList<>();
+
+    public MergedObservableList(Comparator<? super E> comparator) {
+        this.comparator = Objects.requireNonNull(comparator);
+    }
+
+    public List<ObservableList<? extends E>> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * ソースを追加する。
+     * 現在の要素とソースの要素をk-wayマージし、全体の置き換えとして一度だけ通知する。
+     *
+     * @param source 追加するソース
+     */
+    public void addSource(ObservableList<? extends E> source) {
+        addSources(List.of(source));
+    }
+
+    /**
+     * 複数のソースをまとめて追加する。
+     *
+     * @param newSources 追加するソース
+     */
+    public void addSources(Collection<? extends ObservableList<? extends E>> newSources) {
+        var lists = new ArrayList<List<? extends E>>(newSources.size() + 1);
+        lists.add(elements);
+        for (var source : newSources) {
+            if (containsSource(source)) continue;
+            sources.add(source);
+            source.addListener(sourceListener);
+            lists.add(source);
+        }
+        if (lists.size() == 1) return;
+
+        replaceAll(merge(lists));
+    }
+
+    /**
+     * 別の併合リストのソースをすべて引き取る。
+     * <p>
+     *     引き取るリストはすでに併合済みのため、二つのリストのマージだけで済む。
+     *     引き取られたリストは空になる。
+     * </p>
+     *
+     * @param other 引き取る併合リスト
+     */
+    public void absorb(MergedObservableList<? extends E> other) {
+        if (other == this) return;
+
+        var otherSources = new ArrayList<>(other.sources);
+        var otherElements = other.elements;
+        other.clearSources();
+
+        for (var source : otherSources) {
+            if (containsSource(source)) continue;
+            sources.add(source);
+            source.addListener(sourceListener);
+        }
+
+        replaceAll(merge(List.of(elements, otherElements)));
+    }
+
+    /**
+     * ソースを取り除き、そのソースの要素をこのリストから取り除く。
+     *
+     * @param source 取り除くソース
+     */
+    public void removeSource(ObservableList<? extends E> source) {
+        if (!containsSource(source)) return;
+
+        sources.removeIf(s -> s == source);
+        source.removeListener(sourceListener);
+
+        if (source.isEmpty()) return;
+
+        beginChange();
+        removeInstances(source);
+        modCount++;
+        endChange();
+    }
+
+    /**
+     * すべてのソースを取り除いて空にする
+     */
+    public void clearSources() {
+        for (var source : sources) {
+            source.removeListener(sourceListener);
+        }
+        sources.clear();
+        replaceAll(new ArrayList<>());
+    }
+
+    private boolean containsSource(ObservableList<? extends E> source) {
+        for (var s : sources) {
+            if (s == source) return true;
+        }
+        return false;
+    }
+
+    private void replaceAll(ArrayList<E> next) {
+        var old = elements;
+        elements = next;
+        modCount++;
+
+        if (old.isEmpty() && next.isEmpty()) return;
+
+        beginChange();
+        if (!old.isEmpty()) nextRemove(0, old);
+        if (!next.isEmpty()) nextAdd(0, next.size());
+        endChange();
+    }
+
+    /**
+     * 整列済みのリストをk-wayマージする
+     */
+    private ArrayList<E> merge(List<? extends List<? extends E>> lists) {
+        var total = 0;
+        for (var list : lists) total += list.size();
+
+        var merged = new ArrayList<E>(total);
+        if (lists.size() == 1) {
+            merged.addAll(lists.getFirst());
+            return merged;
+        }
+
+        // 同じ順位のときは先に並んでいるリストを優先して順序を保つ
+        var queue = new PriorityQueue<Cursor<E>>((a, b) -> {
+            var c = comparator.compare(a.current(), b.current());
+            return c != 0 ? c : Integer.compare(a.order, b.order);
+        });
+        for (var i = 0; i < lists.size(); i++) {
+            var list = lists.get(i);
+            if (!list.isEmpty()) queue.add(new Cursor<>(list, i));
+        }
+
+        while (!queue.isEmpty()) {
+            var cursor = queue.poll();
+            merged.add(cursor.current());
+            if (++cursor.index < cursor.list.size()) {
+                queue.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private void onSourceChanged(ListChangeListener.Change<? extends E> c) {
+        // 整列済みのソースは並べ替えられない想定だが、念のため全体を作り直す
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                replaceAll(merge(sources));
+                return;
+            }
+        }
+        c.reset();
+
+        beginChange();
+        while (c.next()) {
+            var removed = c.getRemoved();
+            var added = c.getAddedSubList();
+
+            // 同じインスタンスでの置き換えは同じ位置の置き換えとして通知する
+            if (c.wasReplaced() && isSameInstances(removed, added)) {
+                for (var e : added) {
+                    var index = indexOfInstance(e);
+                    if (0 <= index) {
+                        elements.set(index, e);
+                        nextSet(index, e);
+                    }
+                }
+                continue;
+            }
+
+            // 要素ごとに取り除くとそのたびに後ろの要素がずれるため、まとめて一度で詰め直す
+            if (!removed.isEmpty()) {
+                removeInstances(removed);
+            }
+
+            for (var e : added) {
+                var index = insertionPoint(e);
+                elements.add(index, e);
+                nextAdd(index, index + 1);
+            }
+        }
+        modCount++;
+        endChange();
+    }
+
+    /**
+     * 指定したインスタンスをまとめて取り除き、削除を通知する。
+     */
+    private void removeInstances(List<? extends E> removed) {
+        var removing = Collections.newSetFromMap(new IdentityHashMap<>(removed.size()));
+        removing.addAll(removed);
+
+        var next = new ArrayList<E>(Math.max(0, elements.size() - removed.size()));
+        for (var i = 0; i < elements.size(); i++) {
+            var e = elements.get(i);
+            if (removing.contains(e)) {
+                nextRemove(next.size(), e);
+            } else {
+                next.add(e);
+            }
+        }
+        elements = next;
+    }
+
+    private static boolean isSameInstances(List<?> removed, List<?> added) {
+        if (removed.size() != added.size()) return false;
+        for (var i = 0; i < removed.size(); i++) {
+            if (removed.get(i) != added.get(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 要素を追加する位置(同じ順位の要素の後ろ)を返す。
+     * 新しい要素は末尾に追加されることがほとんどのため、末尾を先に確認する。
+     */
+    private int insertionPoint(E e) {
+        var size = elements.size();
+        if (size == 0 || comparator.compare(elements.get(size - 1), e) <= 0) {
+            return size;
+        }
+
+        var low = 0;
+        var high = size;
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (comparator.compare(elements.get(mid), e) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 同じインスタンスの位置を返す。
+     * 二分探索で同じ順位の範囲を探し、見つからないときは全体を走査する。
+     */
+    private int indexOfInstance(E e) {
+        var low = 0;
+        var high = elements.size();
+        while (low < high) {
+            var mid = (low + high) >>> 1;
+            if (comparator.compare(elements.get(mid), e) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (var i = low; i < elements.size() && comparator.compare(elements.get(i), e) == 0; i++) {
+            if (elements.get(i) == e) return i;
+        }
+
+        // ソースの順序が崩れていたときのための保険
+        for (var i = 0; i < elements.size(); i++) {
+            if (elements.get(i) == e) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public E get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    private static class Cursor<E> {
+
+        private final List<? extends E> list;
+        private final int order;
+        private int index;
+
+        private Cursor(List<? extends E> list, int order) {
+            this.list = list;
+            this.order = order;
+        }
+
+        private E current() {
+            return list.get(index);
+        }
+
+    }
+
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.k7t3.tcv.app.collections;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * 容量が固定された循環バッファによる{@link javafx.collections.ObservableList}
+ * <p>
+ *     インデックスによる参照、末尾への追加、先頭の削除はいずれもO(1)で行える。
+ *     容量を超えて要素が追加されたときは先頭(最も古い要素)から破棄され、
+ *     破棄と追加は一つの変更として通知される。
+ * </p>
+ * <p>
+ *     途中への挿入や削除にも対応するが、要素の移動が発生するためO(n)になる。
+ * </p>
+ * @param <E> 要素の型
+ */
+public class RingBufferObservableList<E> extends ObservableListBase<E> {
+
+    private Object[] elements;
+
+    /** 先頭要素の物理インデックス*/
+    private int head = 0;
+
+    private int size = 0;
+
+    public RingBufferObservableList(int capacity) {
+        checkCapacity(capacity);
+        elements = new Object[capacity];
+    }
+
+    private static void checkCapacity(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+
+    /**
+     * 論理インデックスを配列上のインデックスに変換する。
+     */
+    private int physical(int index) {
+        var i = head + index;
+        return i < elements.length ? i : i - elements.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int index) {
+        return (E) elements[physical(index)];
+    }
+
+    private List<E> copyOf(int from, int to) {
+        var list = new ArrayList<E>(to - from);
+        for (var i = from; i < to; i++) {
+            list.add(elementAt(i));
+        }
+        return list;
+    }
+
+    /**
+     * 内容を先頭が物理インデックス0になるように詰め直す。
+     */
+    private void replaceContents(Object[] contents, int count) {
+        Arrays.fill(elements, null);
+        System.arraycopy(contents, 0, elements, 0, count);
+        head = 0;
+        size = count;
+    }
+
+    public int getCapacity() {
+        return elements.length;
+    }
+
+    /**
+     * 容量を変更する。
+     * <p>
+     *     現在の要素数が新しい容量を超えるときは先頭から破棄し、
+     *     その削除を一つの変更として通知する。
+     * </p>
+     * @param capacity 新しい容量
+     */
+    public void setCapacity(int capacity) {
+        checkCapacity(capacity);
+        if (capacity == elements.length) return;
+
+        var over = Math.max(0, size - capacity);
+        var removed = over == 0 ? List.<E>of() : copyOf(0, over);
+
+        var next = new Object[capacity];
+        for (var i = over; i < size; i++) {
+            next[i - over] = elements[physical(i)];
+        }
+        elements = next;
+        head = 0;
+        size -= over;
+
+        if (0 < over) {
+            modCount++;
+            beginChange();
+            nextRemove(0, removed);
+            endChange();
+        }
+    }
+
+    @Override
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return elementAt(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        Objects.checkIndex(index, size);
+        var p = physical(index);
+        @SuppressWarnings("unchecked")
+        var old = (E) elements[p];
+        elements[p] = element;
+
+        beginChange();
+        nextSet(index, old);
+        endChange();
+        return old;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        addAll(index, Collections.singletonList(element));
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        return addAll(size, c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> c) {
+        Objects.checkIndex(index, size + 1);
+        var added = c.toArray();
+        if (added.length == 0) return false;
+
+        modCount++;
+        beginChange();
+        try {
+            if (index == size) {
+                append(added);
+            } else {
+                insert(index, added);
+            }
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    /**
+     * 末尾に追加する。あふれた分だけ先頭を破棄する。
+     */
+    private void append(Object[] added) {
+        var capacity = elements.length;
+
+        // 追加分だけで容量を超えるときは先頭側の追加分は最初から存在しないものとする
+        var skip = Math.max(0, added.length - capacity);
+        var count = added.length - skip;
+
+        // 破棄する既存の要素
+        var evict = Math.max(0, size + count - capacity);
+        if (0 < evict) {
+            var removed = copyOf(0, evict);
+            for (var i = 0; i < evict; i++) {
+                elements[physical(i)] = null;
+            }
+            head = physical(evict);
+            size -= evict;
+            nextRemove(0, removed);
+        }
+
+        var from = size;
+        for (var i = skip; i < added.length; i++) {
+            elements[physical(size)] = added[i];
+            size++;
+        }
+        nextAdd(from, size);
+    }
+
+    /**
+     * 途中に挿入する。あふれた分だけ先頭を破棄する。
+     */
+    private void insert(int index, Object[] added) {
+        var capacity = elements.length;
+        var total = size + added.length;
+
+        var merged = new Object[total];
+        for (var i = 0; i < index; i++) {
+            merged[i] = elements[physical(i)];
+        }
+        System.arraycopy(added, 0, merged, index, added.length);
+        for (var i = index; i < size; i++) {
+            merged[i + added.length] = elements[physical(i)];
+        }
+
+        var evict = Math.max(0, total - capacity);
+        var removedOld = Math.min(evict, index);
+        var removed = copyOf(0, removedOld);
+
+        var remain = total - evict;
+        var contents = new Object[remain];
+        System.arraycopy(merged, evict, contents, 0, remain);
+        replaceContents(contents, remain);
+
+        if (0 < removedOld) {
+            nextRemove(0, removed);
+        }
+
+        // 先頭の破棄が挿入位置を超えたときは追加した要素の一部も破棄される
+        var addedFrom = index - removedOld;
+        var addedCount = added.length - (evict - removedOld);
+        if (0 < addedCount) {
+            nextAdd(addedFrom, addedFrom + addedCount);
+        }
+    }
+
+    @Override
+    public E remove(int index) {
+        Objects.checkIndex(index, size);
+        var old = elementAt(index);
+        removeRange(index, index + 1);
+        return old;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size);
+        var count = toIndex - fromIndex;
+        if (count == 0) return;
+
+        var removed = copyOf(fromIndex, toIndex);
+
+        if (fromIndex == 0) {
+            // 先頭からの削除は先頭位置を進めるだけ
+            for (var i = 0; i < count; i++) {
+                elements[physical(i)] = null;
+            }
+            head = physical(count);
+        } else {
+            // 後続の要素を前に詰める
+            for (var i = toIndex; i < size; i++) {
+                elements[physical(i - count)] = elements[physical(i)];
+            }
+            for (var i = size - count; i < size; i++) {
+                elements[physical(i)] = null;
+            }
+        }
+        size -= count;
+
+        modCount++;
+        beginChange();
+        nextRemove(fromIndex, removed);
+        endChange();
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) return;
+        removeRange(0, size);
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends E> col) {
+        var contents = col.toArray();
+        var skip = Math.max(0, contents.length - elements.length);
+        var count = contents.length - skip;
+
+        if (size == 0 && count == 0) return false;
+
+        var removed = copyOf(0, size);
+        var next = new Object[count];
+        System.arraycopy(contents, skip, next, 0, count);
+        replaceContents(next, count);
+
+        modCount++;
+        beginChange();
+        nextReplace(0, count, removed);
+        endChange();
+        return true;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        return removeMatching(filter);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        if (c.isEmpty()) return false;
+        return removeMatching(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeMatching(e -> !c.contains(e));
+    }
+
+    /**
+     * 条件に一致する要素を一度の走査で取り除き、一つの変更として通知する。
+     */
+    private boolean removeMatching(Predicate<? super E> filter) {
+        var write = 0;
+        var changed = false;
+
+        beginChange();
+        try {
+            for (var read = 0; read < size; read++) {
+                var e = elementAt(read);
+                if (filter.test(e)) {
+                    // 直前までの削除を反映した位置で通知する
+                    nextRemove(write, e);
+                    changed = true;
+                } else {
+                    if (write != read) {
+                        elements[physical(write)] = e;
+                    }
+                    write++;
+                }
+            }
+
+            for (var i = write; i < size; i++) {
+                elements[physical(i)] = null;
+            }
+            size = write;
+
+            if (changed) {
+                modCount++;
+            }
+        } finally {
+            endChange();
+        }
+        return changed;
+    }
+
+}
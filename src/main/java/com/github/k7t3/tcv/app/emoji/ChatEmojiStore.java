@@ -27,7 +27,7 @@ public class ChatEmojiStore extends CachedImageStore<String> {
     private final Emoji emoji;
 
     public ChatEmojiStore(Emoji emoji) {
-        super(64, Duration.ofHours(1));
+        super(0.2, Duration.ofHours(1));
         this.emoji = emoji;
     }
 
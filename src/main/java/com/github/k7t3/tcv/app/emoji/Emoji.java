@@ -28,22 +28,38 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Properties;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
  * 絵文字イメージをロードするためのクラス。
+ * <p>
+ *     アーカイブを抽出したときにサイズ、更新日時、ハッシュ値を記録したスタンプファイルを
+ *     アーカイブと同じディレクトリに書き出す。
+ *     起動時の{@link #validateArchive()}はスタンプとファイルの属性だけを比較し、
+ *     アーカイブ全体のハッシュ値はスタンプが一致しないときだけ計算する。
+ *     スタンプが一致したアーカイブは{@link #verifyArchive()}でバックグラウンドで検証する。
+ * </p>
  */
 public class Emoji implements AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Emoji.class);
     private static final String FILE_NAME = "openmoji-72x72-color.zip";
+    private static final String STAMP_SUFFIX = ".stamp";
+
+    private static final String STAMP_SIZE = "size";
+    private static final String STAMP_LAST_MODIFIED = "lastModified";
+    private static final String STAMP_HASH = "hash";
 
     private final Map<String, String> hexAndName = new HashMap<>();
     private final ObjectProperty<Path> archivePath = new SimpleObjectProperty<>();
@@ -79,57 +95,152 @@ public class Emoji implements AutoCloseable {
     }
 
     /**
-     * アーカイブを抽出する
+     * アーカイブを抽出する。
+     * 抽出したアーカイブが既定のものであればスタンプを書き出す。
      */
     public void extractArchive() throws IOException {
+        var properties = loadProperties();
         final var archivePath = getArchivePath();
-        try (var input = Objects.requireNonNull(getClass().getResourceAsStream(FILE_NAME))) {
+        var digest = newDigest();
+        try (var input = new DigestInputStream(Objects.requireNonNull(getClass().getResourceAsStream(FILE_NAME)), digest)) {
             Files.copy(input, archivePath, StandardCopyOption.REPLACE_EXISTING);
         }
+
+        var hash = HexFormat.of().formatHex(digest.digest());
+        if (properties.getHash().equals(hash)) {
+            writeStamp(archivePath, hash);
+        } else {
+            LOGGER.warn("extracted emoji archive hash mismatch {}", hash);
+            deleteStamp();
+        }
     }
 
     /**
      * 絵文字アーカイブファイルが所定のパスに抽出されているかを判定する。
+     * <p>
+     *     スタンプのサイズ、更新日時、ハッシュ値が一致するときはアーカイブを読み込まずに
+     *     適切なものとみなす。一致しないときはアーカイブ全体のハッシュ値を求め、
+     *     既定のものであればスタンプを書き直す。
+     * </p>
      *
      * @return 抽出されているファイルが適切なものである場合はtrueを返す。
      */
     public boolean validateArchive() throws IOException {
-        var properties = this.properties.get();
-        if (properties == null) {
-            properties = new EmojiProperties();
-            properties.loadEmojiProperties();
-            LOGGER.info("emoji properties {}", properties);
-            this.properties.set(properties);
+        var properties = loadProperties();
+
+        var path = getArchivePath();
+        if (!Files.exists(path)) return false;
+
+        if (!matchesStamp(path, properties.getHash())) {
+            // 存在するファイルのハッシュ値を求める
+            String hash;
+            try (var input = Files.newInputStream(path)) {
+                hash = computeHash(input);
+            }
+            if (!properties.getHash().equals(hash)) return false;
+
+            writeStamp(path, hash);
         }
 
+        // コピーしたアーカイブをロード
+        var zip = new ZipFile(path.toFile());
+        zip.stream().map(ZipEntry::getName).forEach(name -> {
+            var hex = name.toLowerCase();
+            var index = hex.indexOf(".");
+            if (0 < index) {
+                hex = hex.substring(0, index);
+            }
+            hexAndName.put(hex, name);
+        });
+        zipFile.set(zip);
+
+        ready.set(true);
+        return true;
+    }
+
+    /**
+     * 抽出されているアーカイブ全体のハッシュ値を求めて既定のものであるかを検証する。
+     * <p>
+     *     一致しないときはスタンプを削除し、次回の{@link #validateArchive()}で
+     *     アーカイブを抽出し直させる。
+     * </p>
+     *
+     * @return 抽出されているファイルが適切なものである場合はtrueを返す。
+     */
+    public boolean verifyArchive() throws IOException {
+        var properties = loadProperties();
+
         var path = getArchivePath();
         if (Files.exists(path)) {
-            // 存在するファイルのハッシュ値を求める
             try (var input = Files.newInputStream(path)) {
-                var hash = computeHash(input);
-                if (properties.getHash().equals(hash)) {
-                    final var archivePath = getArchivePath();
-
-                    // コピーしたアーカイブをロード
-                    var zip = new ZipFile(archivePath.toFile());
-                    zip.stream().map(ZipEntry::getName).forEach(name -> {
-                        var hex = name.toLowerCase();
-                        var index = hex.indexOf(".");
-                        if (0 < index) {
-                            hex = hex.substring(0, index);
-                        }
-                        hexAndName.put(hex, name);
-                    });
-                    zipFile.set(zip);
-
-                    ready.set(true);
+                if (properties.getHash().equals(computeHash(input))) {
                     return true;
                 }
             }
         }
+
+        LOGGER.warn("emoji archive is corrupted {}", path);
+        deleteStamp();
         return false;
     }
 
+    private EmojiProperties loadProperties() {
+        var properties = this.properties.get();
+        if (properties == null) {
+            properties = new EmojiProperties();
+            properties.loadEmojiProperties();
+            LOGGER.info("emoji properties {}", properties);
+            this.properties.set(properties);
+        }
+        return properties;
+    }
+
+    /**
+     * スタンプに記録されているサイズ、更新日時、ハッシュ値がアーカイブと一致するか
+     */
+    private boolean matchesStamp(Path archivePath, String hash) throws IOException {
+        var stampPath = getStampPath();
+        if (!Files.exists(stampPath)) return false;
+
+        var stamp = new Properties();
+        try (var input = Files.newInputStream(stampPath)) {
+            stamp.load(input);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("failed to read emoji archive stamp", e);
+            return false;
+        }
+
+        var attributes = Files.readAttributes(archivePath, BasicFileAttributes.class);
+        return Long.toString(attributes.size()).equals(stamp.getProperty(STAMP_SIZE))
+                && Long.toString(attributes.lastModifiedTime().toMillis()).equals(stamp.getProperty(STAMP_LAST_MODIFIED))
+                && hash.equals(stamp.getProperty(STAMP_HASH));
+    }
+
+    private void writeStamp(Path archivePath, String hash) throws IOException {
+        var attributes = Files.readAttributes(archivePath, BasicFileAttributes.class);
+
+        var stamp = new Properties();
+        stamp.setProperty(STAMP_SIZE, Long.toString(attributes.size()));
+        stamp.setProperty(STAMP_LAST_MODIFIED, Long.toString(attributes.lastModifiedTime().toMillis()));
+        stamp.setProperty(STAMP_HASH, hash);
+
+        // 書き込み途中のスタンプを読み込まないように一時ファイルから置き換える
+        var stampPath = getStampPath();
+        var temp = stampPath.resolveSibling(stampPath.getFileName() + ".tmp");
+        try (var output = Files.newOutputStream(temp)) {
+            stamp.store(output, null);
+        }
+        Files.move(temp, stampPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteStamp() {
+        try {
+            Files.deleteIfExists(getStampPath());
+        } catch (IOException e) {
+            LOGGER.warn("failed to delete emoji archive stamp", e);
+        }
+    }
+
     private void checkReady() {
         if (!isReady()) throw new IllegalStateException("not ready");
         if (closed) throw new IllegalStateException("closed");
@@ -149,39 +260,39 @@ public class Emoji implements AutoCloseable {
     }
 
     public static String computeHash(InputStream input) {
-        MessageDigest digest;
+        var digest = newDigest();
         try {
-            digest = MessageDigest.getInstance("sha-256");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
-
-        try {
-            var bytes = new byte[1024];
+            var bytes = new byte[64 * 1024];
             int length;
             while ((length = input.read(bytes)) != -1) {
                 digest.update(bytes, 0, length);
             }
-
-            var hashBytes = digest.digest();
-            var builder = new StringBuilder();
-            // 1文字目の0が消えてしまうのでInteger.toHexStringじゃなくformatで
-            for (var b : hashBytes)
-                builder.append("%02x".formatted(Byte.toUnsignedInt(b)));
-                //builder.append(Integer.toHexString(Byte.toUnsignedInt(b)));
-            return builder.toString();
+            return HexFormat.of().formatHex(digest.digest());
 
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("sha-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public EmojiProperties getProperties() { return properties.get(); }
 
     public ObjectProperty<Path> archivePathProperty() { return archivePath; }
     public Path getArchivePath() { return archivePath.get(); }
     public void setArchivePath(Path path) { archivePath.set(Objects.requireNonNull(path)); }
 
+    public Path getStampPath() {
+        var path = getArchivePath();
+        return path.resolveSibling(path.getFileName() + STAMP_SUFFIX);
+    }
+
     public ReadOnlyBooleanProperty readyProperty() { return ready.getReadOnlyProperty(); }
     public boolean isReady() { return ready.get(); }
 }
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.app.image;
+
+import com.github.k7t3.tcv.app.core.OS;
+import com.github.k7t3.tcv.app.service.TaskWorker;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ダウンロードしたイメージをアプリケーションディレクトリに保存するディスクキャッシュ
+ * <p>
+ *     イメージの内容はSHA-256をファイル名とするファイル({@code blobs})に保存し、
+ *     URLごとのエントリ({@code entries})がそのファイルとETag、Last-Modifiedを記録する。
+ *     同じ内容のイメージはURLが異なっても一つのファイルを共有する。
+ * </p>
+ * <p>
+ *     エントリは保存してから{@link #DEFAULT_MAX_AGE}のあいだはそのまま使用し、
+ *     それを過ぎたものは条件付きリクエストで再検証する。
+ *     再検証に失敗したときは保存済みのイメージを使用する。
+ * </p>
+ * <p>
+ *     ファイルはすべて一時ファイルに書き込んでから置き換えるため、
+ *     同じディレクトリを共有する別のインスタンスが書きかけのファイルを読むことはない。
+ *     エントリの更新日時を最終参照日時として扱い、合計サイズが上限を超えたときは
+ *     参照の古いものから削除する。削除はロックファイルを取得したインスタンスだけが行う。
+ * </p>
+ */
+public class ImageDiskCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageDiskCache.class);
+
+    /** デフォルトの上限(バイト)*/
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    /** 再検証せずに使用する期間*/
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofDays(7);
+
+    private static final String ENTRY_DIRECTORY = "entries";
+    private static final String BLOB_DIRECTORY = "blobs";
+    private static final String LOCK_FILE = "cache.lock";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_BLOB = "blob";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_VALIDATED_AT = "validatedAt";
+
+    /** 書き込み中の別のインスタンスのファイルを削除しないための猶予*/
+    private static final Duration GRACE_PERIOD = Duration.ofMinutes(1);
+
+    private final Path entryDirectory;
+    private final Path blobDirectory;
+    private final Path lockFile;
+
+    private final ImageHttpClient client;
+
+    private final long maxBytes;
+
+    private final Duration maxAge;
+
+    /** 前回の整理から書き込んだバイト数*/
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    private final AtomicBoolean trimScheduled = new AtomicBoolean(false);
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public ImageDiskCache(Path directory, long maxBytes) {
+        this(directory, maxBytes, DEFAULT_MAX_AGE);
+    }
+
+    public ImageDiskCache(Path directory, long maxBytes, Duration maxAge) {
+        this(directory, maxBytes, maxAge, ImageHttpClient.getDefault());
+    }
+
+    public ImageDiskCache(Path directory, long maxBytes, Duration maxAge, ImageHttpClient client) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        this.entryDirectory = directory.resolve(ENTRY_DIRECTORY);
+        this.blobDirectory = directory.resolve(BLOB_DIRECTORY);
+        this.lockFile = directory.resolve(LOCK_FILE);
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+        this.client = client;
+
+        // 起動直後に前回までの分を整理する
+        writtenBytes.set(maxBytes);
+    }
+
+    /**
+     * URLのイメージを返す。
+     * 保存されていないときと再検証で更新されていたときはダウンロードして保存する。
+     *
+     * @param url イメージのURL
+     * @return イメージのバイト列
+     * @throws IOException ダウンロードできず、保存されているイメージもないとき
+     */
+    public byte[] fetch(String url) throws IOException {
+        var key = sha256(url.getBytes(StandardCharsets.UTF_8));
+        var entryPath = entryDirectory.resolve(key);
+
+        var entry = readEntry(entryPath);
+        var cached = entry == null ? null : readBlob(entry.blob());
+
+        if (entry != null && cached != null) {
+            touch(entryPath);
+
+            if (!isExpired(entry)) {
+                hitCount.incrementAndGet();
+                return cached;
+            }
+
+            try {
+                var response = download(url, entry);
+                if (response.notModified()) {
+                    revalidatedCount.incrementAndGet();
+                    writeEntry(entryPath, entry.validated(Instant.now()));
+                    return cached;
+                }
+                missCount.incrementAndGet();
+                store(entryPath, url, response);
+                return response.body();
+            } catch (IOException e) {
+                LOGGER.debug("failed to revalidate {}, use cached image", url, e);
+                hitCount.incrementAndGet();
+                return cached;
+            }
+        }
+
+        missCount.incrementAndGet();
+        var response = download(url, null);
+        if (response.notModified()) {
+            throw new IOException("unexpected 304 response: " + url);
+        }
+        store(entryPath, url, response);
+        return response.body();
+    }
+
+    private boolean isExpired(Entry entry) {
+        return entry.validatedAt().plus(maxAge).isBefore(Instant.now());
+    }
+
+    /**
+     * イメージをダウンロードする。
+     * 保存済みのエントリがあるときは条件付きリクエストにする。
+     */
+    private ImageHttpClient.Response download(String url, @Nullable Entry entry) throws IOException {
+        if (entry == null) {
+            return client.get(url, null, null);
+        }
+        return client.get(url, entry.etag(), entry.lastModified());
+    }
+
+    private void store(Path entryPath, String url, ImageHttpClient.Response response) {
+        try {
+            var blob = writeBlob(response.body());
+            writeEntry(entryPath, new Entry(url, blob, response.etag(), response.lastModified(), Instant.now()));
+        } catch (IOException e) {
+            // 保存できなくてもイメージは使用できる
+            LOGGER.warn("failed to store image {}", url, e);
+        }
+
+        if (maxBytes / 16 < writtenBytes.addAndGet(response.body().length)) {
+            trimAsync();
+        }
+    }
+
+    private String writeBlob(byte[] body) throws IOException {
+        var name = sha256(body);
+        var path = blobDirectory.resolve(name);
+
+        // 同じ内容のイメージは保存済み
+        if (Files.exists(path)) return name;
+
+        Files.createDirectories(blobDirectory);
+        writeAtomically(path, out -> out.write(body));
+        return name;
+    }
+
+    /**
+     * 保存されているイメージを読み込む。
+     * 別のインスタンスに削除されていたときはnull
+     */
+    private byte[] readBlob(String name) {
+        var path = blobDirectory.resolve(name);
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (Integer.MAX_VALUE < size) return null;
+
+            var buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) return null;
+            }
+            return buffer.array();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.debug("failed to read cached image {}", path, e);
+            return null;
+        }
+    }
+
+    private @Nullable Entry readEntry(Path path) {
+        var properties = new Properties();
+        try (var input = Files.newInputStream(path)) {
+            properties.load(input);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.debug("failed to read cache entry {}", path, e);
+            return null;
+        }
+
+        var url = properties.getProperty(KEY_URL);
+        var blob = properties.getProperty(KEY_BLOB);
+        var validatedAt = properties.getProperty(KEY_VALIDATED_AT);
+        if (url == null || blob == null || validatedAt == null) return null;
+
+        try {
+            return new Entry(
+                    url,
+                    blob,
+                    properties.getProperty(KEY_ETAG),
+                    properties.getProperty(KEY_LAST_MODIFIED),
+                    Instant.ofEpochMilli(Long.parseLong(validatedAt))
+            );
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void writeEntry(Path path, Entry entry) throws IOException {
+        var properties = new Properties();
+        properties.setProperty(KEY_URL, entry.url());
+        properties.setProperty(KEY_BLOB, entry.blob());
+        if (entry.etag() != null) properties.setProperty(KEY_ETAG, entry.etag());
+        if (entry.lastModified() != null) properties.setProperty(KEY_LAST_MODIFIED, entry.lastModified());
+        properties.setProperty(KEY_VALIDATED_AT, Long.toString(entry.validatedAt().toEpochMilli()));
+
+        Files.createDirectories(entryDirectory);
+        writeAtomically(path, out -> properties.store(out, null));
+    }
+
+    /**
+     * 一時ファイルに書き込んでから置き換える
+     */
+    private static void writeAtomically(Path path, Writer writer) throws IOException {
+        var temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), TEMP_SUFFIX);
+        try {
+            try (var out = Files.newOutputStream(temp)) {
+                writer.write(out);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * エントリの更新日時を最終参照日時として更新する
+     */
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            LOGGER.debug("failed to touch cache entry {}", path, e);
+        }
+    }
+
+    private void trimAsync() {
+        if (!trimScheduled.compareAndSet(false, true)) return;
+
+        TaskWorker.getInstance().getExecutor().execute(() -> {
+            try {
+                trim();
+            } finally {
+                trimScheduled.set(false);
+            }
+        });
+    }
+
+    /**
+     * 合計サイズが上限を超えていれば、参照の古いエントリから削除する。
+     * 別のインスタンスが整理しているときは何もしない。
+     */
+    public void trim() {
+        writtenBytes.set(0);
+        if (!Files.isDirectory(entryDirectory)) return;
+
+        try {
+            Files.createDirectories(lockFile.getParent());
+            try (var channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 var lock = channel.tryLock()) {
+                if (lock == null) return;
+                trimLocked();
+            }
+        } catch (OverlappingFileLockException e) {
+            // このインスタンスで整理中
+        } catch (IOException e) {
+            LOGGER.warn("failed to trim image cache", e);
+        }
+    }
+
+    private void trimLocked() throws IOException {
+        var now = Instant.now();
+
+        record Stored(Path path, Entry entry, long accessed) {}
+
+        var entries = new ArrayList<Stored>();
+        try (var paths = Files.newDirectoryStream(entryDirectory)) {
+            for (var path : paths) {
+                if (isTemp(path)) {
+                    deleteStaleTemp(path, now);
+                    continue;
+                }
+                var entry = readEntry(path);
+                if (entry == null) continue;
+                entries.add(new Stored(path, entry, lastModified(path)));
+            }
+        }
+
+        var blobSizes = new HashMap<String, Long>();
+        if (Files.isDirectory(blobDirectory)) {
+            try (var paths = Files.newDirectoryStream(blobDirectory)) {
+                for (var path : paths) {
+                    if (isTemp(path)) {
+                        deleteStaleTemp(path, now);
+                        continue;
+                    }
+                    blobSizes.put(path.getFileName().toString(), Files.size(path));
+                }
+            }
+        }
+
+        // 参照されているイメージの数(同じ内容は共有されている)
+        var references = new HashMap<String, Integer>();
+        for (var stored : entries) {
+            references.merge(stored.entry().blob(), 1, Integer::sum);
+        }
+
+        var total = blobSizes.values().stream().mapToLong(Long::longValue).sum();
+
+        // 参照されていないイメージを削除する
+        for (var it = blobSizes.entrySet().iterator(); it.hasNext(); ) {
+            var blob = it.next();
+            if (references.containsKey(blob.getKey())) continue;
+
+            var path = blobDirectory.resolve(blob.getKey());
+            if (now.minus(GRACE_PERIOD).isBefore(Instant.ofEpochMilli(lastModified(path)))) continue;
+            if (deleteQuietly(path)) {
+                total -= blob.getValue();
+                it.remove();
+            }
+        }
+
+        if (total <= maxBytes) return;
+
+        // 上限の9割まで参照の古いものから削除する
+        var target = maxBytes - maxBytes / 10;
+        entries.sort(Comparator.comparingLong(Stored::accessed));
+
+        var removed = 0;
+        for (var stored : entries) {
+            if (total <= target) break;
+
+            if (!deleteQuietly(stored.path())) continue;
+            removed++;
+
+            var blob = stored.entry().blob();
+            var count = references.merge(blob, -1, Integer::sum);
+            if (count != null && count <= 0) {
+                var size = blobSizes.getOrDefault(blob, 0L);
+                if (deleteQuietly(blobDirectory.resolve(blob))) {
+                    total -= size;
+                }
+            }
+        }
+
+        LOGGER.info("trimmed image cache: {} entries removed, {} bytes remain", removed, total);
+    }
+
+    private static boolean isTemp(Path path) {
+        return path.getFileName().toString().endsWith(TEMP_SUFFIX);
+    }
+
+    /**
+     * 書き込みを中断した一時ファイルを削除する
+     */
+    private static void deleteStaleTemp(Path path, Instant now) {
+        if (Instant.ofEpochMilli(lastModified(path)).isBefore(now.minus(GRACE_PERIOD))) {
+            deleteQuietly(path);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            return true;
+        } catch (IOException e) {
+            // 別のインスタンスが読み込み中など
+            LOGGER.debug("failed to delete {}", path, e);
+            return false;
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public static ImageDiskCache getDefault() {
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final ImageDiskCache INSTANCE = new ImageDiskCache(
+                OS.current().getApplicationDirectory().resolve("cache").resolve("images"),
+                DEFAULT_MAX_BYTES
+        );
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private record Entry(String url, String blob, @Nullable String etag, @Nullable String lastModified, Instant validatedAt) {
+
+        Entry validated(Instant validatedAt) {
+            return new Entry(url, blob, etag, lastModified, validatedAt);
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.app.image;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * イメージをダウンロードするHTTPクライアント
+ * <p>
+ *     すべてのイメージで一つの{@link HttpClient}を共有し、HTTP/2で同じホストへの接続を多重化する。
+ *     HTTP/1.1のサーバーに対しても接続は使いまわされる。
+ * </p>
+ * <p>
+ *     レスポンスの本文はバイト列として受け取り、デコードは呼び出し側で行う。
+ * </p>
+ */
+public class ImageHttpClient {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+
+    public ImageHttpClient() {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build());
+    }
+
+    ImageHttpClient(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * イメージをダウンロードする。
+     * ETagかLast-Modifiedを指定したときは条件付きリクエストにする。
+     *
+     * @param url イメージのURL
+     * @param etag 保存しているイメージのETag
+     * @param lastModified 保存しているイメージのLast-Modified
+     * @return レスポンス
+     * @throws IOException 接続できなかったとき、200と304以外のステータスのとき
+     */
+    public Response get(String url, @Nullable String etag, @Nullable String lastModified) throws IOException {
+        var builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "image/*")
+                .GET();
+        if (etag != null) builder.header("If-None-Match", etag);
+        if (lastModified != null) builder.header("If-Modified-Since", lastModified);
+
+        HttpResponse<byte[]> response;
+        try {
+            response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while fetching " + url);
+        }
+
+        var status = response.statusCode();
+        if (status == 304) {
+            return new Response(true, null, null, null);
+        }
+        if (status != 200) {
+            throw new IOException("unexpected response %d: %s".formatted(status, url));
+        }
+
+        var headers = response.headers();
+        return new Response(
+                false,
+                response.body(),
+                headers.firstValue("ETag").orElse(null),
+                headers.firstValue("Last-Modified").orElse(null)
+        );
+    }
+
+    public static ImageHttpClient getDefault() {
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final ImageHttpClient INSTANCE = new ImageHttpClient();
+    }
+
+    /**
+     * ダウンロードの結果
+     *
+     * @param notModified 保存しているイメージから変更されていないか(304)
+     * @param body イメージのバイト列(変更されていないときはnull)
+     * @param etag ETag
+     * @param lastModified Last-Modified
+     */
+    public record Response(boolean notModified, byte[] body, @Nullable String etag, @Nullable String lastModified) {
+    }
+
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.app.image;
+
+import javafx.scene.image.Image;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LazyImage}の読み込みをまとめて管理するローダー
+ * <p>
+ *     同じイメージ(URLと大きさが同じもの)の読み込みが重なったときは一度だけ読み込み、
+ *     待っているすべての{@link LazyImage}に同じイメージを渡す。
+ * </p>
+ * <p>
+ *     表示されているイメージ({@link Priority#VISIBLE})は先読み({@link Priority#PREFETCH})より先に読み込む。
+ *     ダウンロードは全体とホストごとに、デコードはプロセッサ数に応じて同時に実行する数を制限する。
+ * </p>
+ * <p>
+ *     表示のために要求されたイメージが読み込み前に表示されなくなったときは、
+ *     待ち行列から取り除いて読み込まない。実行中の読み込みはそのまま完了させる。
+ *     先読みされていたイメージは先読みの優先度に戻す。
+ * </p>
+ * <p>
+ *     待機している先読みは{@value #MAX_QUEUED_PREFETCHES}件までとし、超えたときは古いものから取り消す。
+ *     待機したまま一定時間を過ぎた先読みは読み込まない。
+ * </p>
+ */
+public class ImageLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageLoader.class);
+
+    /** 同時にダウンロードする数*/
+    private static final int MAX_FETCHES = 16;
+
+    /** ホストごとに同時にダウンロードする数*/
+    private static final int MAX_FETCHES_PER_HOST = 6;
+
+    /** 同時にデコードする数*/
+    private static final int MAX_DECODES = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    /** 待機させておく先読みの上限*/
+    private static final int MAX_QUEUED_PREFETCHES = 512;
+
+    /** 先読みを待機させておく時間*/
+    private static final long PREFETCH_EXPIRE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /** 統計をログに出力する間隔(読み込み数)*/
+    private static final int LOG_INTERVAL = 256;
+
+    /**
+     * 読み込みの優先度
+     */
+    public enum Priority {
+
+        /** 表示されているイメージ*/
+        VISIBLE,
+
+        /** まだ表示されていないイメージの先読み*/
+        PREFETCH
+
+    }
+
+    private final Object lock = new Object();
+
+    /** 読み込み中(待機中を含む)のイメージ*/
+    private final Map<Key, Load> loads = new HashMap<>();
+
+    private final PriorityBlockingQueue<Load> queue = new PriorityBlockingQueue<>(
+            64,
+            Comparator.comparing((Load l) -> l.priority).thenComparingLong(l -> l.sequence)
+    );
+
+    /** 先読みの優先度で待機させた順序(実行済みや優先度が変わったものを含む)*/
+    private final Deque<Load> prefetches = new ArrayDeque<>();
+
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    private final Semaphore decodePermits = new Semaphore(MAX_DECODES);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong joinedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    private ImageLoader() {
+        for (var i = 0; i < MAX_FETCHES; i++) {
+            Thread.ofVirtual().name("TCV-Image-Loader-" + i).start(this::work);
+        }
+    }
+
+    /**
+     * イメージの読み込みを要求する。
+     * 読み込み済みのとき、同じイメージを読み込み中のときは新たに読み込まない。
+     *
+     * @param image イメージ
+     * @param priority 優先度
+     */
+    void request(LazyImage image, Priority priority) {
+        synchronized (lock) {
+            if (priority == Priority.VISIBLE) image.demand++;
+
+            if (image.isDone()) {
+                hitCount.incrementAndGet();
+                return;
+            }
+
+            var load = image.load;
+            if (load == null) {
+                var key = image.getKey();
+                load = loads.get(key);
+                if (load == null) {
+                    load = new Load(key, image, priority, sequence.getAndIncrement());
+                    loads.put(key, load);
+                    queue.add(load);
+                    missCount.incrementAndGet();
+                    if (priority == Priority.PREFETCH) addPrefetch(load);
+                } else {
+                    joinedCount.incrementAndGet();
+                }
+                load.waiters.add(image);
+                image.load = load;
+            }
+
+            if (priority == Priority.PREFETCH) {
+                load.prefetch = true;
+            }
+
+            // 先読みで待機しているものを表示のために要求されたら優先する
+            if (priority.compareTo(load.priority) < 0 && queue.remove(load)) {
+                load.priority = priority;
+                queue.add(load);
+            }
+        }
+    }
+
+    /**
+     * 表示のための要求を取り消す。
+     * 待っているイメージがすべて表示されなくなったときは、待ち行列から取り除く。
+     *
+     * @param image イメージ
+     */
+    void release(LazyImage image) {
+        synchronized (lock) {
+            if (0 < image.demand) image.demand--;
+            if (0 < image.demand) return;
+
+            var load = image.load;
+            if (load == null || load.state != State.QUEUED) return;
+
+            for (var waiter : load.waiters) {
+                if (0 < waiter.demand) return;
+            }
+
+            if (!load.prefetch) {
+                cancel(load);
+                cancelledCount.incrementAndGet();
+                return;
+            }
+
+            // 先読みされていたものは先読みとして上限と期限の対象に戻す
+            if (load.priority != Priority.PREFETCH && queue.remove(load)) {
+                load.priority = Priority.PREFETCH;
+                queue.add(load);
+                addPrefetch(load);
+            }
+        }
+    }
+
+    /**
+     * 先読みを待機させる。上限を超えたときは古いものから取り消す。
+     * ロックを取得して呼び出すこと。
+     */
+    private void addPrefetch(Load load) {
+        load.queuedAt = System.nanoTime();
+        prefetches.addLast(load);
+        while (MAX_QUEUED_PREFETCHES < prefetches.size()) {
+            var oldest = prefetches.pollFirst();
+            if (isQueuedPrefetch(oldest)) {
+                cancel(oldest);
+                cancelledCount.incrementAndGet();
+            }
+        }
+    }
+
+    private static boolean isQueuedPrefetch(Load load) {
+        return load.state == State.QUEUED && load.priority == Priority.PREFETCH;
+    }
+
+    /**
+     * 待機している読み込みを取り消す。
+     * ロックを取得して呼び出すこと。
+     */
+    private void cancel(Load load) {
+        load.state = State.CANCELLED;
+        queue.remove(load);
+        loads.remove(load.key);
+        load.waiters.forEach(w -> w.load = null);
+    }
+
+    private void work() {
+        while (true) {
+            Load load;
+            try {
+                load = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            synchronized (lock) {
+                if (load.state != State.QUEUED) continue;
+
+                // 期限を過ぎた先読みは表示されないものとして読み込まない
+                if (isQueuedPrefetch(load) && PREFETCH_EXPIRE_NANOS < System.nanoTime() - load.queuedAt) {
+                    cancel(load);
+                    expiredCount.incrementAndGet();
+                    continue;
+                }
+                load.state = State.RUNNING;
+            }
+
+            Image image = null;
+            try {
+                image = load(load.image);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.debug("failed to load image {}", load.key, e);
+            }
+
+            if (image == null) failedCount.incrementAndGet();
+
+            List<LazyImage> waiters;
+            synchronized (lock) {
+                load.state = State.DONE;
+                loads.remove(load.key);
+                waiters = List.copyOf(load.waiters);
+                waiters.forEach(w -> w.load = null);
+            }
+
+            for (var waiter : waiters) {
+                waiter.complete(image);
+            }
+
+            totalLatencyNanos.addAndGet(System.nanoTime() - load.requestedAt);
+            if (completedCount.incrementAndGet() % LOG_INTERVAL == 0) {
+                LOGGER.debug("{}", getStatistics());
+            }
+        }
+    }
+
+    /**
+     * ダウンロードしてからデコードする
+     */
+    private Image load(LazyImage image) throws Exception {
+        var url = image.getUrl();
+        byte[] bytes;
+
+        if (url == null) {
+            try (var input = image.getInputCallable().call()) {
+                bytes = input.readAllBytes();
+            }
+        } else if (url.startsWith("http://") || url.startsWith("https://")) {
+            bytes = fetch(url);
+        } else {
+            // ローカルのリソースはJavaFXに読み込ませる
+            bytes = null;
+        }
+
+        decodePermits.acquire();
+        try {
+            var decoded = bytes == null
+                    ? new Image(url, image.getRequestWidth(), image.getRequestHeight(), true, true, false)
+                    : new Image(new ByteArrayInputStream(bytes), image.getRequestWidth(), image.getRequestHeight(), true, true);
+            return decoded.isError() ? null : decoded;
+        } finally {
+            decodePermits.release();
+        }
+    }
+
+    /**
+     * ホストごとの同時接続数を制限してディスクキャッシュ経由でダウンロードする
+     */
+    private byte[] fetch(String url) throws IOException, InterruptedException {
+        var host = Objects.requireNonNullElse(URI.create(url).getHost(), "");
+        var permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(MAX_FETCHES_PER_HOST));
+
+        permits.acquire();
+        try {
+            return ImageDiskCache.getDefault().fetch(url);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 読み込みの統計
+     */
+    public Statistics getStatistics() {
+        int queueLength;
+        int inFlight;
+        synchronized (lock) {
+            queueLength = queue.size();
+            inFlight = loads.size() - queueLength;
+        }
+
+        var completed = completedCount.get();
+        var averageLatency = completed == 0 ? 0 : totalLatencyNanos.get() / completed / 1_000_000.0;
+        return new Statistics(
+                queueLength,
+                inFlight,
+                hitCount.get(),
+                missCount.get(),
+                joinedCount.get(),
+                cancelledCount.get(),
+                expiredCount.get(),
+                failedCount.get(),
+                averageLatency
+        );
+    }
+
+    public static ImageLoader getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final ImageLoader INSTANCE = new ImageLoader();
+    }
+
+    /**
+     * 読み込みの統計
+     *
+     * @param queueLength 待機している読み込みの数
+     * @param inFlight 実行中の読み込みの数
+     * @param hitCount 読み込み済みだった要求の数
+     * @param missCount 読み込みを開始した要求の数
+     * @param joinedCount 実行中の同じイメージの読み込みを待った要求の数
+     * @param cancelledCount 表示されなくなった、または先読みの上限を超えたため取り消した読み込みの数
+     * @param expiredCount 期限を過ぎたため取り消した先読みの数
+     * @param failedCount 失敗した読み込みの数
+     * @param averageLatencyMillis 要求されてから読み込みが終わるまでの平均(ミリ秒)
+     */
+    public record Statistics(
+            int queueLength,
+            int inFlight,
+            long hitCount,
+            long missCount,
+            long joinedCount,
+            long cancelledCount,
+            long expiredCount,
+            long failedCount,
+            double averageLatencyMillis
+    ) {
+    }
+
+    /**
+     * 同じイメージを表すキー
+     * URLのないイメージはインスタンスごとに区別する
+     */
+    record Key(Object source, double requestWidth, double requestHeight) {
+    }
+
+    private enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        CANCELLED
+    }
+
+    static class Load {
+
+        private final Key key;
+
+        /** 読み込み元(最初に要求したイメージ)*/
+        private final LazyImage image;
+
+        private final long sequence;
+
+        private final long requestedAt = System.nanoTime();
+
+        /** 先読みとして待機させた時刻*/
+        private long queuedAt;
+
+        private final List<LazyImage> waiters = new ArrayList<>(1);
+
+        private Priority priority;
+
+        private boolean prefetch;
+
+        private State state = State.QUEUED;
+
+        private Load(Key key, LazyImage image, Priority priority, long sequence) {
+            this.key = key;
+            this.image = image;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+    }
+
+}
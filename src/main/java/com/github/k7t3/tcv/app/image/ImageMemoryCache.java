@@ -0,0 +1,439 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.app.image;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.k7t3.tcv.app.service.TaskWorker;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.NotificationEmitter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * すべてのイメージストアで共有するメモリキャッシュ
+ * <p>
+ *     エントリの重みはデコードしたイメージのバイト数(幅×高さ×4)で、
+ *     読み込み前は要求された大きさから見積もる。キャッシュ全体の上限はバイト数で指定する。
+ * </p>
+ * <p>
+ *     ストアの種類ごとに{@link Region}を割り当て、上限に対する割合で使用できる量を制限する。
+ *     割合を超えたときはその領域のエントリだけを参照の古いものから、
+ *     割合の{@value #TRIM_RATIO}倍まで破棄する。
+ *     破棄はイメージを取得したスレッドではなくワーカースレッドで行う。
+ * </p>
+ * <p>
+ *     ヒープの使用量がしきい値を超えたときは上限を一時的に半分にして、
+ *     ヒープが枯渇するより先にイメージを手放す。
+ * </p>
+ */
+public class ImageMemoryCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageMemoryCache.class);
+
+    /** デフォルトの上限(バイト)*/
+    public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+    /** 大きさが指定されていないイメージの読み込み前の見積もり(32px四方)*/
+    private static final int PLACEHOLDER_WEIGHT = 32 * 32 * 4;
+
+    /** 割合を超えた領域はこの比率まで破棄する(超えるたびに破棄しないようにする)*/
+    private static final double TRIM_RATIO = 0.9;
+
+    /** このしきい値(GC後のヒープ使用率)を超えたら上限を縮める*/
+    private static final double MEMORY_PRESSURE_THRESHOLD = 0.75;
+
+    /** 上限を縮めてから元に戻すまでの時間*/
+    private static final long PRESSURE_RELIEF_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final Cache<Key, Entry> cache;
+
+    private final Map<String, Region> regions = new ConcurrentHashMap<>();
+
+    private volatile long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+
+    /** 上限を縮めた時刻(縮めていないときは0)*/
+    private volatile long pressuredAt = 0;
+
+    private final AtomicLong pressureCount = new AtomicLong();
+
+    ImageMemoryCache(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((Key k, Entry e) -> e.weight())
+                .expireAfter(new EntryExpiry())
+                .executor(Runnable::run)
+                .removalListener((Key k, Entry e, RemovalCause cause) -> {
+                    if (k != null && e != null) k.region().add(-e.weight());
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * ストアの種類ごとの領域を返す。
+     * 同じ名前の領域がすでにあるときはそれを返す。
+     *
+     * @param name 領域の名前
+     * @param maximumShare 上限に対して使用できる割合
+     * @param expire 最後に参照されてから破棄するまでの時間
+     * @return 領域
+     */
+    public Region region(String name, double maximumShare, Duration expire) {
+        if (maximumShare <= 0 || 1 < maximumShare) {
+            throw new IllegalArgumentException("maximumShare must be in (0, 1]: " + maximumShare);
+        }
+        return regions.computeIfAbsent(name, n -> new Region(n, maximumShare, expire));
+    }
+
+    /**
+     * キャッシュ全体の上限を変更する
+     *
+     * @param maximumBytes 上限(バイト)
+     */
+    public void setMaximumBytes(long maximumBytes) {
+        if (maximumBytes <= 0) throw new IllegalArgumentException("maximumBytes must be positive: " + maximumBytes);
+        this.maximumBytes = maximumBytes;
+        applyMaximum(pressuredAt == 0 ? maximumBytes : maximumBytes / 2);
+        LOGGER.info("image memory cache maximum changed to {} bytes", maximumBytes);
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    private void applyMaximum(long maximum) {
+        cache.policy().eviction().ifPresent(e -> e.setMaximum(maximum));
+    }
+
+    private long getEffectiveMaximum() {
+        return cache.policy().eviction().map(e -> e.getMaximum()).orElse(maximumBytes);
+    }
+
+    private @Nullable LazyImage get(Region region, Object owner, Object key, Function<Object, LazyImage> loader) {
+        relievePressure();
+
+        var cacheKey = new Key(region, owner, key);
+        var entry = cache.get(cacheKey, k -> {
+            var image = loader.apply(k.key());
+            if (image == null) return null;
+            watch(k, image);
+            return newEntry(region, image);
+        });
+        if (entry == null) return null;
+
+        if (region.exceeds(getEffectiveMaximum())) {
+            trimAsync(region);
+        }
+        return entry.image();
+    }
+
+    private Entry newEntry(Region region, LazyImage image) {
+        var entry = new Entry(image, weigh(image), region.expire().toNanos());
+        region.add(entry.weight());
+        return entry;
+    }
+
+    /**
+     * 読み込みが終わったイメージの重みを実際の大きさで計算し直す。
+     * イメージはJavaFXスレッドで設定されるため、JavaFXスレッドで監視する。
+     */
+    private void watch(Key key, LazyImage image) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> watch(key, image));
+            return;
+        }
+
+        if (image.getValue() != null) {
+            reweigh(key, image);
+            return;
+        }
+
+        image.valueProperty().addListener(new InvalidationListener() {
+            @Override
+            public void invalidated(Observable observable) {
+                observable.removeListener(this);
+                reweigh(key, image);
+            }
+        });
+    }
+
+    private void reweigh(Key key, LazyImage image) {
+        cache.asMap().computeIfPresent(key, (k, e) -> {
+            if (e.image() != image || weigh(image) == e.weight()) return e;
+            return newEntry(k.region(), image);
+        });
+        if (key.region().exceeds(getEffectiveMaximum())) {
+            trimAsync(key.region());
+        }
+    }
+
+    private static int weigh(LazyImage image) {
+        var value = image.getValue();
+        if (value != null) {
+            return (int) Math.min(Integer.MAX_VALUE, (long) value.getWidth() * (long) value.getHeight() * 4);
+        }
+        var width = image.getRequestWidth();
+        var height = image.getRequestHeight();
+        if (0 < width && 0 < height) {
+            return (int) Math.min(Integer.MAX_VALUE, (long) width * (long) height * 4);
+        }
+        return PLACEHOLDER_WEIGHT;
+    }
+
+    private void trimAsync(Region region) {
+        if (!region.trimScheduled.compareAndSet(false, true)) return;
+
+        TaskWorker.getInstance().getExecutor().execute(() -> {
+            try {
+                trim(region);
+            } finally {
+                region.trimScheduled.set(false);
+            }
+        });
+    }
+
+    /**
+     * 割合を超えた領域のエントリを参照の古いものから破棄する。
+     * 参照の古いものから順に辿り、割合の{@value #TRIM_RATIO}倍に収まる分だけを集めたところで打ち切る。
+     */
+    private void trim(Region region) {
+        var target = (long) (getEffectiveMaximum() * region.maximumShare * TRIM_RATIO);
+        var excess = region.getWeight() - target;
+        if (excess <= 0) return;
+
+        var eviction = cache.policy().eviction().orElseThrow();
+        var keys = eviction.coldest(stream -> {
+            var collected = new ArrayList<Key>();
+            var weight = 0L;
+            var iterator = stream.filter(e -> e.getKey().region() == region).iterator();
+            while (weight < excess && iterator.hasNext()) {
+                var entry = iterator.next();
+                collected.add(entry.getKey());
+                weight += entry.getValue().weight();
+            }
+            return collected;
+        });
+
+        cache.invalidateAll(keys);
+        region.evictionCount.addAndGet(keys.size());
+    }
+
+    /**
+     * ヒープの使用量がしきい値を超えたときに呼び出される
+     */
+    void onMemoryPressure() {
+        pressureCount.incrementAndGet();
+        pressuredAt = System.nanoTime();
+        applyMaximum(maximumBytes / 2);
+        cache.cleanUp();
+        LOGGER.info("image memory cache shrunk by memory pressure: {}", getStatistics());
+    }
+
+    private void relievePressure() {
+        var at = pressuredAt;
+        if (at == 0 || System.nanoTime() - at < PRESSURE_RELIEF_NANOS) return;
+        pressuredAt = 0;
+        applyMaximum(maximumBytes);
+    }
+
+    /**
+     * GC後のヒープ使用量がしきい値を超えたときに通知を受け取る
+     */
+    private void installMemoryListener() {
+        for (var pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) continue;
+            var max = pool.getUsage().getMax();
+            if (max <= 0) continue;
+            pool.setCollectionUsageThreshold((long) (max * MEMORY_PRESSURE_THRESHOLD));
+        }
+
+        if (ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter emitter) {
+            emitter.addNotificationListener((notification, handback) -> {
+                if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                    onMemoryPressure();
+                }
+            }, null, null);
+        }
+    }
+
+    public Statistics getStatistics() {
+        var stats = cache.stats();
+        var regionWeights = new LinkedHashMap<String, Long>();
+        regions.forEach((name, region) -> regionWeights.put(name, region.getWeight()));
+
+        return new Statistics(
+                stats.hitRate(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                stats.evictionWeight(),
+                cache.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L),
+                getEffectiveMaximum(),
+                pressureCount.get(),
+                Map.copyOf(regionWeights)
+        );
+    }
+
+    public static ImageMemoryCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final ImageMemoryCache INSTANCE = createDefault();
+
+        private static ImageMemoryCache createDefault() {
+            var cache = new ImageMemoryCache(DEFAULT_MAXIMUM_BYTES);
+            cache.installMemoryListener();
+            return cache;
+        }
+    }
+
+    /**
+     * ストアの種類ごとの領域
+     */
+    public final class Region {
+
+        private final String name;
+
+        private final double maximumShare;
+
+        private final Duration expire;
+
+        private final AtomicLong weight = new AtomicLong();
+
+        private final AtomicLong evictionCount = new AtomicLong();
+
+        private final AtomicBoolean trimScheduled = new AtomicBoolean(false);
+
+        private Region(String name, double maximumShare, Duration expire) {
+            this.name = name;
+            this.maximumShare = maximumShare;
+            this.expire = expire;
+        }
+
+        /**
+         * イメージを返す。キャッシュされていないときは読み込んでキャッシュする。
+         *
+         * @param owner キーを区別するストア
+         * @param key キー
+         * @param loader キャッシュされていないときにイメージを生成する関数
+         * @return イメージ、生成できないときはnull
+         */
+        @SuppressWarnings("unchecked")
+        public <K> @Nullable LazyImage get(Object owner, K key, Function<K, LazyImage> loader) {
+            return ImageMemoryCache.this.get(this, owner, key, k -> loader.apply((K) k));
+        }
+
+        private void add(long delta) {
+            weight.addAndGet(delta);
+        }
+
+        private boolean exceeds(long maximum) {
+            return maximum * maximumShare < weight.get();
+        }
+
+        private Duration expire() {
+            return expire;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getWeight() {
+            return weight.get();
+        }
+
+        /** 割合を超えたために破棄したエントリの数*/
+        public long getEvictionCount() {
+            return evictionCount.get();
+        }
+
+    }
+
+    /**
+     * キャッシュの統計
+     *
+     * @param hitRate ヒット率
+     * @param hitCount ヒット数
+     * @param missCount ミス数
+     * @param evictionCount 上限によって破棄したエントリの数
+     * @param evictionWeight 上限によって破棄したバイト数
+     * @param weightedSize 現在のバイト数
+     * @param maximumBytes 現在の上限(メモリ不足で縮めているときはその値)
+     * @param pressureCount メモリ不足で上限を縮めた回数
+     * @param regionWeights 領域ごとのバイト数
+     */
+    public record Statistics(
+            double hitRate,
+            long hitCount,
+            long missCount,
+            long evictionCount,
+            long evictionWeight,
+            long weightedSize,
+            long maximumBytes,
+            long pressureCount,
+            Map<String, Long> regionWeights
+    ) {
+    }
+
+    private record Key(Region region, Object owner, Object key) {
+    }
+
+    private record Entry(LazyImage image, int weight, long expireNanos) {
+    }
+
+    private static class EntryExpiry implements Expiry<Key, Entry> {
+
+        @Override
+        public long expireAfterCreate(Key key, Entry value, long currentTime) {
+            return value.expireNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Entry value, long currentTime, long currentDuration) {
+            return value.expireNanos();
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Entry value, long currentTime, long currentDuration) {
+            return value.expireNanos();
+        }
+
+    }
+
+}
@@ -14,9 +14,10 @@
  * limitations under the License.
  */
 
+
 package com.github.k7t3.tcv.app.image;
 
-import com.github.k7t3.tcv.app.service.FXTask;
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectProperty;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.scene.image.Image;
@@ -26,55 +27,105 @@ import java.util.concurrent.Callable;
 
 /**
  * 非同期で遅延読み込みするイメージ
+ * <p>
+ *     生成しただけでは読み込まず、表示するときに{@link #request()}で要求して
+ *     {@link ImageLoader}に読み込ませる。表示しなくなったときは{@link #release()}を呼び出す。
+ *     まだ表示されていないイメージは{@link #prefetch()}で先読みできる。
+ * </p>
  */
 public class LazyImage {
 
     private final ReadOnlyObjectWrapper<Image> value = new ReadOnlyObjectWrapper<>();
 
+    private final String url;
+    private final Callable<InputStream> inputCallable;
+    private final double requestWidth;
+    private final double requestHeight;
+
+    private final ImageLoader.Key key;
+
+    /** 読み込みが終わったか(失敗したときも含む)*/
+    private volatile boolean done = false;
+
+    /** 表示のために要求されている数(ImageLoaderのロックで保護する)*/
+    int demand = 0;
+
+    /** 待っている読み込み(ImageLoaderのロックで保護する)*/
+    ImageLoader.Load load;
+
     public LazyImage(String url, double requestWidth, double requestHeight) {
-        var task = new LoadImageTask(url, requestWidth, requestHeight);
-        task.onDone(value::set).runAsync();
+        this(url, null, requestWidth, requestHeight);
     }
 
     public LazyImage(Callable<InputStream> callable, double requestWidth, double requestHeight) {
-        var task = new LoadImageTask(callable, requestWidth, requestHeight);
-        task.onDone(value::set).runAsync();
+        this(null, callable, requestWidth, requestHeight);
     }
 
-    public ReadOnlyObjectProperty<Image> valueProperty() { return value.getReadOnlyProperty(); }
-    public Image getValue() { return value.get(); }
+    private LazyImage(String url, Callable<InputStream> inputCallable, double requestWidth, double requestHeight) {
+        this.url = url;
+        this.inputCallable = inputCallable;
+        this.requestWidth = requestWidth;
+        this.requestHeight = requestHeight;
+        this.key = new ImageLoader.Key(url != null ? url : this, requestWidth, requestHeight);
+    }
+
+    /**
+     * 表示するために読み込みを要求する。
+     * 表示しなくなったときは{@link #release()}を呼び出すこと。
+     */
+    public void request() {
+        ImageLoader.getInstance().request(this, ImageLoader.Priority.VISIBLE);
+    }
+
+    /**
+     * 表示のための要求を取り消す。
+     * まだ読み込みを開始していなければ読み込まない。
+     */
+    public void release() {
+        ImageLoader.getInstance().release(this);
+    }
 
+    /**
+     * 表示するより前に低い優先度で読み込む。
+     * どのスレッドからでも呼び出せる。
+     */
+    public void prefetch() {
+        ImageLoader.getInstance().request(this, ImageLoader.Priority.PREFETCH);
+    }
 
-    private static class LoadImageTask extends FXTask<Image> {
+    /**
+     * 読み込みが終わったときにローダーから呼び出される
+     */
+    void complete(Image image) {
+        done = true;
+        Platform.runLater(() -> value.set(image));
+    }
 
-        private final String url;
-        private final Callable<InputStream> inputCallable;
-        private final double requestWidth;
-        private final double requestHeight;
+    boolean isDone() {
+        return done;
+    }
 
-        public LoadImageTask(String url, double requestWidth, double requestHeight) {
-            this(url, null, requestWidth, requestHeight);
-        }
+    ImageLoader.Key getKey() {
+        return key;
+    }
 
-        public LoadImageTask(Callable<InputStream> callable, double requestWidth, double requestHeight) {
-            this(null, callable, requestWidth, requestHeight);
-        }
+    String getUrl() {
+        return url;
+    }
 
-        private LoadImageTask(String url, Callable<InputStream> inputCallable, double requestWidth, double requestHeight) {
-            this.url = url;
-            this.inputCallable = inputCallable;
-            this.requestWidth = requestWidth;
-            this.requestHeight = requestHeight;
-        }
+    Callable<InputStream> getInputCallable() {
+        return inputCallable;
+    }
 
-        @Override
-        protected Image call() throws Exception {
-            if (url != null) {
-                return new Image(url, requestWidth, requestHeight, true, true, false);
-            } else {
-                return new Image(inputCallable.call(), requestWidth, requestHeight, true, true);
-            }
-        }
+    double getRequestWidth() {
+        return requestWidth;
+    }
 
+    double getRequestHeight() {
+        return requestHeight;
     }
+
+    public ReadOnlyObjectProperty<Image> valueProperty() { return value.getReadOnlyProperty(); }
+    public Image getValue() { return value.get(); }
+
 }
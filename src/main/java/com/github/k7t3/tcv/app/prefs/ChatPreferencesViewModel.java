@@ -20,6 +20,7 @@ import com.github.k7t3.tcv.app.service.FXTask;
 import com.github.k7t3.tcv.prefs.AppPreferences;
 import com.github.k7t3.tcv.prefs.ChatPreferences;
 import com.github.k7t3.tcv.view.chat.ChatFont;
+import com.github.k7t3.tcv.view.chat.ChatRenderMode;
 import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
@@ -44,6 +45,8 @@ public class ChatPreferencesViewModel implements PreferencesViewModelBase {
     private final BooleanProperty showUserName;
     private final BooleanProperty showBadges;
     private final IntegerProperty chatCacheSize;
+    private final BooleanProperty dropFilteredChat;
+    private final BooleanProperty canvasRendering;
 
     private final ObservableList<FontFamily> fontFamilies = FXCollections.observableArrayList();
 
@@ -54,6 +57,8 @@ public class ChatPreferencesViewModel implements PreferencesViewModelBase {
         showUserName = new SimpleBooleanProperty(prefs.isShowUserName());
         showBadges = new SimpleBooleanProperty(prefs.isShowBadges());
         chatCacheSize = new SimpleIntegerProperty(prefs.getChatCacheSize());
+        dropFilteredChat = new SimpleBooleanProperty(prefs.isDropFilteredChat());
+        canvasRendering = new SimpleBooleanProperty(prefs.getRenderMode() == ChatRenderMode.CANVAS);
 
         var font = prefs.getFont();
         this.font = new SimpleObjectProperty<>(new FontFamily(font.getFamily()));
@@ -98,6 +103,8 @@ public class ChatPreferencesViewModel implements PreferencesViewModelBase {
         prefs.setShowUserName(isShowUserName());
         prefs.setShowBadges(isShowBadges());
         prefs.setChatCacheSize(getChatCacheSize());
+        prefs.setDropFilteredChat(isDropFilteredChat());
+        prefs.setRenderMode(isCanvasRendering() ? ChatRenderMode.CANVAS : ChatRenderMode.NODE);
     }
 
     // ******************** PROPERTIES ********************
@@ -122,4 +129,12 @@ public class ChatPreferencesViewModel implements PreferencesViewModelBase {
     public int getChatCacheSize() { return chatCacheSize.get(); }
     public void setChatCacheSize(int chatCacheSize) { this.chatCacheSize.set(chatCacheSize); }
 
+    public BooleanProperty dropFilteredChatProperty() { return dropFilteredChat; }
+    public boolean isDropFilteredChat() { return dropFilteredChat.get(); }
+    public void setDropFilteredChat(boolean dropFilteredChat) { this.dropFilteredChat.set(dropFilteredChat); }
+
+    public BooleanProperty canvasRenderingProperty() { return canvasRendering; }
+    public boolean isCanvasRendering() { return canvasRendering.get(); }
+    public void setCanvasRendering(boolean canvasRendering) { this.canvasRendering.set(canvasRendering); }
+
 }
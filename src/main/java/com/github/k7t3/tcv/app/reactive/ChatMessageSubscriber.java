@@ -19,45 +19,157 @@ package com.github.k7t3.tcv.app.reactive;
 import com.github.k7t3.tcv.domain.event.chat.ChatMessageEvent;
 import com.github.k7t3.tcv.reactive.AbstractSubscriber;
 import com.github.k7t3.tcv.reactive.BackPressurePolicy;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Flow;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
-
-public class ChatMessageSubscriber extends AbstractSubscriber<ChatMessageEvent> {
+import java.util.function.Function;
+
+/**
+ * チャットメッセージをフレーム単位にまとめてJavaFXスレッドに配送するサブスクライバ。
+ * <p>
+ *     受信したメッセージは受信したスレッドで{@code preparer}によって表示用の形式に変換してから蓄積する。
+ *     JavaFXスレッドで行う処理を変換済みの値の追加だけにするためのもので、
+ *     JavaFXスレッドでの配送にかかった時間は{@link #getAverageDeliveryNanos()}で確認できる。
+ * </p>
+ * <p>
+ *     受信したメッセージはいったんキューに蓄積され、
+ *     {@link AnimationTimer}によってパルスごとに一度だけまとめて取り出される。
+ *     メッセージごとに{@link Platform#runLater(Runnable)}を発行しないため、
+ *     流量の多いチャンネルを複数開いている場合でもFXのイベントキューが溢れない。
+ * </p>
+ * <p>
+ *     1フレームで配送する最大件数は{@link #frameBudgetProperty()}で指定する。
+ *     上限を超えた分は次のフレームに持ち越される。
+ * </p>
+ * <p>
+ *     流量制限の既定値は{@link BackPressurePolicy#LATEST}で、
+ *     表示が追いつかずパブリッシャーのバッファが溢れたときは古いメッセージから破棄される。
+ *     このためtwitch4jのイベントスレッドが待たされることはない。
+ * </p>
+ * @param <T> 表示用に変換したメッセージの型
+ */
+public class ChatMessageSubscriber<T> extends AbstractSubscriber<ChatMessageEvent> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ChatMessageSubscriber.class);
 
-    private final Consumer<ChatMessageEvent> consumer;
+    /** フレーム単位の配送上限の既定値*/
+    public static final int DEFAULT_FRAME_BUDGET = 512;
 
-    public ChatMessageSubscriber(Consumer<ChatMessageEvent> consumer) {
-        this.consumer = consumer;
-    }
+    private final Function<ChatMessageEvent, T> preparer;
 
-    @Override
-    public void onSubscribe(Flow.Subscription subscription) {
-        super.onSubscribe(subscription);
+    private final Consumer<List<T>> consumer;
+
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+
+    /** キューに積まれている件数(ConcurrentLinkedQueue#size()はO(n)のため別に数える)*/
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /** タイマーが稼働しているか*/
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final IntegerProperty frameBudget = new SimpleIntegerProperty(DEFAULT_FRAME_BUDGET);
+
+    /** 受信したメッセージの数*/
+    private final LongAdder receivedCount = new LongAdder();
+
+    /** 配送を行ったフレームの数*/
+    private final LongAdder frameCount = new LongAdder();
+
+    /** 配送済みのメッセージの数*/
+    private final LongAdder deliveredCount = new LongAdder();
+
+    /** JavaFXスレッドでの配送にかかった時間の合計*/
+    private final LongAdder deliveryNanos = new LongAdder();
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain();
+        }
+    };
+
+    /**
+     * @param preparer 受信したスレッドでメッセージを表示用の形式に変換する関数
+     * @param consumer JavaFXスレッドで変換済みのメッセージを受け取る
+     */
+    public ChatMessageSubscriber(Function<ChatMessageEvent, T> preparer, Consumer<List<T>> consumer) {
+        this.preparer = preparer;
+        this.consumer = consumer;
+        setBackPressurePolicy(BackPressurePolicy.LATEST);
     }
 
+    /**
+     * 受信したメッセージは{@link #onNext(ChatMessageEvent)}でキューに積み、フレームごとに配送する
+     */
     @Override
     protected void handle(ChatMessageEvent item) {
-        consumer.accept(item);
+        throw new IllegalStateException("chat messages are delivered per frame");
     }
 
     @Override
     public void onNext(ChatMessageEvent item) {
-        if (Platform.isFxApplicationThread()) {
-            onNextFX(item);
-        } else {
-            Platform.runLater(() -> onNextFX(item));
+        receivedCount.increment();
+        queue.offer(preparer.apply(item));
+        pending.incrementAndGet();
+
+        if (running.compareAndSet(false, true)) {
+            Platform.runLater(timer::start);
         }
     }
 
-    private void onNextFX(ChatMessageEvent item) {
-        handle(item);
+    /**
+     * キューに溜まっているメッセージをフレームの上限まで取り出して配送する。
+     * JavaFXのパルスごとに呼び出される。
+     */
+    private void drain() {
+        var budget = Math.max(1, frameBudget.get());
+
+        var batch = new ArrayList<T>(Math.min(budget, pending.get()));
+        T item;
+        while (batch.size() < budget && (item = queue.poll()) != null) {
+            batch.add(item);
+        }
+
+        if (batch.isEmpty()) {
+            // キューが空になったらタイマーを止める
+            timer.stop();
+            running.set(false);
 
+            // 停止の直前に積まれたものがあれば再開する
+            if (!queue.isEmpty() && running.compareAndSet(false, true)) {
+                timer.start();
+            }
+            return;
+        }
+
+        pending.addAndGet(-batch.size());
+        frameCount.increment();
+        deliveredCount.add(batch.size());
+
+        var start = System.nanoTime();
+        try {
+            consumer.accept(batch);
+        } catch (Exception e) {
+            LOGGER.error("failed to deliver chat messages", e);
+        }
+        deliveryNanos.add(System.nanoTime() - start);
+
+        requestNext(batch.size());
+    }
+
+    private void requestNext(int handled) {
         // 現在設定されているポリシーとリクエスト時点のポリシーを取得
         var policy = backPressurePolicy.get();
         var requested = requestedPolicy.getAndSet(policy);
@@ -70,12 +182,24 @@ public class ChatMessageSubscriber extends AbstractSubscriber<ChatMessageEvent>
 
         // FULLでないときは処理件数を考慮して適宜リクエストを再発行する
         if (policy != BackPressurePolicy.FULL) {
-            if (segmentCounter.incrementAndGet() == policy.getSegmentSize()) {
+            if (policy.getSegmentSize() <= segmentCounter.addAndGet(handled)) {
                 request(policy.getSegmentSize());
             }
         }
     }
 
+    @Override
+    public void cancel() {
+        super.cancel();
+        if (running.getAndSet(false)) {
+            Platform.runLater(timer::stop);
+        }
+        queue.clear();
+        pending.set(0);
+        LOGGER.info("received={}, frames={}, coalesced={}, delivery={}ns/message",
+                getReceivedCount(), getFrameCount(), getCoalescedCount(), getAverageDeliveryNanos());
+    }
+
     @Override
     public void onError(Throwable throwable) {
         LOGGER.error("error occurred", throwable);
@@ -86,4 +210,45 @@ public class ChatMessageSubscriber extends AbstractSubscriber<ChatMessageEvent>
         LOGGER.info("completed");
     }
 
+    /**
+     * 受信したメッセージの総数
+     */
+    public long getReceivedCount() {
+        return receivedCount.sum();
+    }
+
+    /**
+     * 配送を行ったフレームの総数
+     */
+    public long getFrameCount() {
+        return frameCount.sum();
+    }
+
+    /**
+     * フレーム単位にまとめたことで省略できた配送の回数。
+     * (メッセージごとにrunLaterしていた場合との差分)
+     */
+    public long getCoalescedCount() {
+        return deliveredCount.sum() - frameCount.sum();
+    }
+
+    /**
+     * JavaFXスレッドでメッセージ1件の配送にかかった平均の時間(ナノ秒)
+     */
+    public long getAverageDeliveryNanos() {
+        var delivered = deliveredCount.sum();
+        return delivered == 0 ? 0 : deliveryNanos.sum() / delivered;
+    }
+
+    /**
+     * 配送待ちのメッセージの数
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public IntegerProperty frameBudgetProperty() { return frameBudget; }
+    public int getFrameBudget() { return frameBudget.get(); }
+    public void setFrameBudget(int frameBudget) { this.frameBudget.set(frameBudget); }
+
 }
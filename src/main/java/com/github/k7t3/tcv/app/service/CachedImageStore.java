@@ -16,34 +16,42 @@
 
 package com.github.k7t3.tcv.app.service;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.k7t3.tcv.app.image.ImageMemoryCache;
 import com.github.k7t3.tcv.app.image.LazyImage;
-import javafx.scene.image.Image;
 import org.jetbrains.annotations.Nullable;
 
 import java.time.Duration;
 import java.util.Optional;
 
+/**
+ * キーに対応するイメージを返すストア
+ * <p>
+ *     イメージはすべてのストアで共有する{@link ImageMemoryCache}にキャッシュする。
+ *     同じ種類のストアは一つの領域を共有し、キャッシュの上限に対して使用できる割合を指定する。
+ * </p>
+ *
+ * @param <K> キーの型
+ */
 public abstract class CachedImageStore<K> {
 
-    private final LoadingCache<K, LazyImage> images;
+    private final ImageMemoryCache.Region region;
 
-    public CachedImageStore(int maxCount, Duration expire) {
-        images = Caffeine.newBuilder()
-                .maximumSize(maxCount)
-                .expireAfterAccess(expire)
-                .build(this::loadImage);
+    /**
+     * @param maximumShare キャッシュの上限に対してこの種類のストアが使用できる割合
+     * @param expire 最後に参照されてから破棄するまでの時間
+     */
+    public CachedImageStore(double maximumShare, Duration expire) {
+        region = ImageMemoryCache.getInstance().region(getClass().getName(), maximumShare, expire);
     }
 
     protected abstract @Nullable LazyImage loadImage(K key);
 
     public LazyImage get(K key) {
-        return images.get(key);
+        return region.get(this, key, this::loadImage);
     }
 
     public Optional<LazyImage> getNullable(K key) {
-        return Optional.ofNullable(images.get(key));
+        return Optional.ofNullable(get(key));
     }
 
 }
@@ -16,32 +16,140 @@
 
 package com.github.k7t3.tcv.domain.chat;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.AbstractList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * チャットメッセージ。
+ * <p>
+ *     {@link #lazy(String, String, ChatMessageParser)}で生成したメッセージは
+ *     受信したテキストとエモートのタグだけを保持し、
+ *     部品({@link ChatMessageFragment})に最初にアクセスされたときに一度だけパースする。
+ *     キャッシュの上限で破棄されたり、フィルタで非表示になったりして
+ *     表示されないメッセージはパースされない。
+ * </p>
+ */
 public class ChatMessage extends AbstractList<ChatMessageFragment> {
 
-    private final List<ChatMessageFragment> fragments;
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChatMessage.class);
+
+    /** 遅延して生成したメッセージの数*/
+    private static final LongAdder DEFERRED = new LongAdder();
+
+    /** 遅延して生成したメッセージのうちパースしたものの数*/
+    private static final LongAdder MATERIALIZED = new LongAdder();
+
+    private volatile List<ChatMessageFragment> fragments;
 
     private final String plain;
 
+    private final String emotes;
+
+    private ChatMessageParser parser;
+
     public ChatMessage(String plain, List<ChatMessageFragment> fragments) {
         this.plain = plain;
         this.fragments = fragments;
+        this.emotes = null;
+    }
+
+    private ChatMessage(String plain, String emotes, ChatMessageParser parser) {
+        this.plain = plain;
+        this.emotes = emotes;
+        this.parser = parser;
+    }
+
+    /**
+     * 部品へのアクセスまでパースを遅延するメッセージを生成する。
+     * @param plain 受信したメッセージ
+     * @param emotes IRCのemotesタグ
+     * @param parser パーサー
+     * @return メッセージ
+     */
+    static ChatMessage lazy(String plain, String emotes, ChatMessageParser parser) {
+        DEFERRED.increment();
+        return new ChatMessage(plain, emotes, parser);
     }
 
     public String getPlain() {
         return plain;
     }
 
+    /**
+     * 受信したIRCのemotesタグ
+     * @return 遅延して生成したメッセージでないとき、またはタグがないときはnull
+     */
+    public String getEmotes() {
+        return emotes;
+    }
+
+    /**
+     * 部品にパースされているか
+     */
+    public boolean isMaterialized() {
+        return fragments != null;
+    }
+
+    private List<ChatMessageFragment> fragments() {
+        var f = fragments;
+        if (f != null) return f;
+
+        synchronized (this) {
+            if (fragments == null) {
+                fragments = parseFragments();
+                parser = null;
+                MATERIALIZED.increment();
+            }
+            return fragments;
+        }
+    }
+
+    /**
+     * 不正なタグなどでパースできないときは受信したメッセージをそのままテキストとする。
+     * 失敗したパースを部品へのアクセスのたびに繰り返さない。
+     */
+    private List<ChatMessageFragment> parseFragments() {
+        try {
+            return parser.parseFragments(plain, emotes);
+        } catch (RuntimeException e) {
+            LOGGER.warn("failed to parse chat message emotes={}", emotes, e);
+            return List.of(ChatMessageFragment.text(plain));
+        }
+    }
+
     @Override
     public ChatMessageFragment get(int index) {
-        return fragments.get(index);
+        return fragments().get(index);
     }
 
     @Override
     public int size() {
-        return fragments.size();
+        return fragments().size();
+    }
+
+    /**
+     * 遅延して生成したメッセージの総数
+     */
+    public static long getDeferredCount() {
+        return DEFERRED.sum();
+    }
+
+    /**
+     * 遅延して生成したメッセージのうち、部品にパースしたものの総数
+     */
+    public static long getMaterializedCount() {
+        return MATERIALIZED.sum();
+    }
+
+    /**
+     * 遅延したことでパースを省略できたメッセージの数
+     */
+    public static long getSkippedCount() {
+        return getDeferredCount() - getMaterializedCount();
     }
 
 }
@@ -16,11 +16,9 @@
 
 package com.github.k7t3.tcv.domain.chat;
 
-import org.jetbrains.annotations.NotNull;
-
 import java.text.BreakIterator;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -34,14 +32,31 @@ import java.util.List;
  *     一方でJavaは文字列の形式にUTF-16を使用するためコードポイントの数に
  *     着目して処理する必要がある。
  * </p>
+ * <p>
+ *     ほとんどのメッセージは前後の文字と結合しない文字だけで構成されるため、
+ *     そのような文字は一文字を一つの書記素クラスタとして扱い、
+ *     サロゲートペアや結合文字などを含む範囲に限って{@link BreakIterator}で分解する。
+ *     テキストは元の文字列から範囲を指定して切り出す。
+ * </p>
  */
 public class ChatMessageParser {
 
-    private record Emote(String id, int begin, int end) implements Comparable<Emote> {
-        @Override
-        public int compareTo(@NotNull ChatMessageParser.Emote o) {
-            return Integer.compare(begin(), o.begin());
+    private static final Comparator<Emote> EMOTE_ORDER = Comparator.comparingInt(Emote::begin);
+
+    private record Emote(String id, int begin, int end) {
+    }
+
+    /**
+     * メッセージを部品にパースせずに、最初にアクセスされたときにパースするメッセージを返す。
+     * @param message メッセージ
+     * @param emoteInfo IRCのemotesタグ
+     * @return メッセージ
+     */
+    public ChatMessage parseLazily(String message, String emoteInfo) {
+        if (message == null || message.isEmpty()) {
+            return parse(message, emoteInfo);
         }
+        return ChatMessage.lazy(message, emoteInfo, this);
     }
 
     public ChatMessage parse(String message, String emoteInfo) {
@@ -49,119 +64,243 @@ public class ChatMessageParser {
             return new ChatMessage("", List.of(ChatMessageFragment.text("")));
         }
 
-        var fragments = new ArrayList<ChatMessageFragment>();
+        return new ChatMessage(message, parseFragments(message, emoteInfo));
+    }
+
+    /**
+     * 空でないメッセージを部品にパースする。
+     */
+    List<ChatMessageFragment> parseFragments(String message, String emoteInfo) {
         var emotes = parseEmotes(emoteInfo);
-        var emote = emotes.isEmpty() ? null : emotes.getFirst();
-        var emoteIndex = 0;
 
-        var boundary = BreakIterator.getCharacterInstance();
-        boundary.setText(message);
+        // エモートを含まず、絵文字や結合する文字もないときはそのままテキストとする
+        if (emotes.isEmpty() && isPlainText(message)) {
+            return List.of(ChatMessageFragment.text(message));
+        }
+
+        var scanner = new Scanner(message, emotes);
+        scanner.scan();
+        return scanner.fragments;
+    }
+
+    private static boolean isPlainText(String message) {
+        for (var i = 0; i < message.length(); i++) {
+            var c = message.charAt(i);
+            if (!isIsolated(c) || Character.isEmoji(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 前後の文字と結合して書記素クラスタを構成することのない文字か。
+     * <p>
+     *     この判定が真になる文字が連続するとき、その間は必ず書記素クラスタの境界になる。
+     *     (CR、結合文字、ZWJ、異体字セレクタ、ハングル字母、サロゲートなどは含まない)
+     * </p>
+     */
+    static boolean isIsolated(char c) {
+        if (c < 0x0300) return c != '\r';                        // Latin-1・ラテン文字拡張
+        if (0x3040 <= c && c <= 0x3098) return true;             // ひらがな(結合用濁点・半濁点を除く)
+        if (0x309B <= c && c <= 0x30FF) return true;             // カタカナ
+        if (0x4E00 <= c && c <= 0x9FFF) return true;             // CJK統合漢字
+        if (0x3400 <= c && c <= 0x4DBF) return true;             // CJK統合漢字拡張A
+        if (0x3000 <= c && c <= 0x3029) return true;             // CJKの記号と句読点(結合記号を除く)
+        if (0x3030 <= c && c <= 0x303F) return true;
+        return 0xFF01 <= c && c <= 0xFF9D;                       // 全角英数・半角カナ(濁点・半濁点を除く)
+    }
+
+    /**
+     * 一つのメッセージを走査する間の状態
+     */
+    private static final class Scanner {
+
+        private final String message;
+
+        private final List<Emote> emotes;
 
-        // 文字位置を指定するカーソル
-        int cursor = 0;
+        private final List<ChatMessageFragment> fragments = new ArrayList<>();
 
-        // 読み取った文字列を再構成するためのバッファ
-        var builder = new StringBuilder();
+        private Emote emote;
 
-        int start = boundary.first();
-        for (var end = boundary.next(); end != BreakIterator.DONE; start = end, end = boundary.next()) {
-            // 適切な境界で分解された一文字
-            var singleChar = message.substring(start, end);
+        private int emoteIndex = 0;
 
-            if (emote == null) {
-                // 文字を構成する先頭のコードポイントを取得
-                var codePoint = singleChar.codePointAt(0);
-                if (Character.isEmoji(codePoint)) { // 絵文字のとき
-                    builder = cleanBufferAsText(fragments, builder);
-                    handleEmojiChar(fragments, singleChar, codePoint);
+        /** コードポイント準拠の文字位置*/
+        private int cursor = 0;
+
+        /** テキストとして読み取った範囲(bufferStart == bufferEndのときは空)*/
+        private int bufferStart = 0;
+        private int bufferEnd = 0;
+
+        private BreakIterator boundary;
+
+        private Scanner(String message, List<Emote> emotes) {
+            this.message = message;
+            this.emotes = emotes;
+            this.emote = emotes.isEmpty() ? null : emotes.getFirst();
+        }
+
+        private void scan() {
+            var length = message.length();
+            var i = 0;
+            while (i < length) {
+                var c = message.charAt(i);
+                if (isIsolated(c) && (i + 1 == length || isIsolated(message.charAt(i + 1)))) {
+                    // 一文字で一つの書記素クラスタ
+                    handle(i, i + 1, c, 1);
+                    i++;
                 } else {
-                    builder.append(singleChar);
-                }
-            } else {
-                if (cursor < emote.begin()) { // エモートに到達していない間はテキスト・絵文字として扱う
-                    // 文字を構成する先頭のコードポイントを取得
-                    var codePoint = singleChar.codePointAt(0);
-                    if (Character.isEmoji(codePoint)) { // 絵文字のとき
-                        builder = cleanBufferAsText(fragments, builder);
-                        handleEmojiChar(fragments, singleChar, codePoint);
-                    } else {
-                        builder.append(singleChar);
-                    }
-                } else if (cursor == emote.begin()) { // エモートに到達したときはそれまでのバッファをクリア
-                    builder = cleanBufferAsText(fragments, builder);
-                    builder.append(singleChar);
-                } else if (cursor < emote.end()) { // エモートの終了まで
-                    builder.append(singleChar);
-                } else if (cursor == emote.end()) { // エモートが終了したとき
-                    builder.append(singleChar);
-                    var name = builder.toString(); // 名前を取得
-                    builder = new StringBuilder(); // クリーン
-                    var fragment = ChatMessageFragment.emote(emote.id(), name);
-                    fragments.add(fragment);
-                    // 次のエモートに移動
-                    if (emoteIndex + 1 < emotes.size()) {
-                        emoteIndex += 1;
-                        emote = emotes.get(emoteIndex);
-                    } else {
-                        emote = null;
-                    }
+                    i = scanRegion(i);
                 }
             }
 
-            // コードポイント準拠の文字数
-            var charCount = singleChar.codePointCount(0, singleChar.length());
-            cursor += charCount;
+            flushBufferAsText();
         }
 
-        cleanBufferAsText(fragments, builder);
+        /**
+         * 結合する可能性のある文字を含む範囲を書記素クラスタに分解して処理する。
+         * 範囲は結合しない文字が2つ連続するところ(確実に境界となる位置)までとする。
+         * @return 処理した範囲の終端
+         */
+        private int scanRegion(int start) {
+            var length = message.length();
+            var end = start + 1;
+            while (end < length && !(isIsolated(message.charAt(end - 1)) && isIsolated(message.charAt(end)))) {
+                end++;
+            }
 
-        return new ChatMessage(message, fragments);
-    }
+            if (boundary == null) {
+                boundary = BreakIterator.getCharacterInstance();
+            }
+            boundary.setText(message.substring(start, end));
+
+            var s = boundary.first();
+            for (var e = boundary.next(); e != BreakIterator.DONE; s = e, e = boundary.next()) {
+                var clusterStart = start + s;
+                var clusterEnd = start + e;
+                handle(
+                        clusterStart,
+                        clusterEnd,
+                        message.codePointAt(clusterStart),
+                        message.codePointCount(clusterStart, clusterEnd)
+                );
+            }
+
+            return end;
+        }
 
-    private void handleEmojiChar(List<ChatMessageFragment> fragments, String emojiChar, int codePoint) {
-        // Unicodeが構成する長さ
-        var charLength = emojiChar.length();
-        // 絵文字として使用する文字数
-        var innerCursor = Character.charCount(codePoint);
+        /**
+         * 一つの書記素クラスタを処理する。
+         * @param start クラスタの開始位置
+         * @param end クラスタの終了位置
+         * @param codePoint クラスタを構成する先頭のコードポイント
+         * @param codePointCount クラスタを構成するコードポイントの数
+         */
+        private void handle(int start, int end, int codePoint, int codePointCount) {
+            if (emote == null || cursor < emote.begin()) {
+                // エモートに到達していない間はテキスト・絵文字として扱う
+                if (Character.isEmoji(codePoint)) {
+                    flushBufferAsText();
+                    addEmoji(start, end);
+                } else {
+                    append(start, end);
+                }
+            } else if (cursor == emote.begin()) { // エモートに到達したときはそれまでのバッファをクリア
+                flushBufferAsText();
+                append(start, end);
+            } else if (cursor < emote.end()) { // エモートの終了まで
+                append(start, end);
+            } else if (cursor == emote.end()) { // エモートが終了したとき
+                append(start, end);
+                var name = message.substring(bufferStart, bufferEnd);
+                bufferStart = bufferEnd;
+                fragments.add(ChatMessageFragment.emote(emote.id(), name));
 
-        var hexes = new ArrayList<String>();
-        hexes.add(Integer.toHexString(codePoint));
+                // 次のエモートに移動
+                emoteIndex++;
+                emote = emoteIndex < emotes.size() ? emotes.get(emoteIndex) : null;
+            }
 
-        // 残り文字を絵文字の追加情報としてコードポイントを取得する
-        while (innerCursor < charLength) {
-            codePoint = emojiChar.codePointAt(innerCursor);
-            innerCursor += Character.charCount(codePoint); // 文字数分ずらす
-            hexes.add(Integer.toHexString(codePoint));
+            cursor += codePointCount;
         }
 
-        fragments.add(ChatMessageFragment.emoji(emojiChar, String.join("-", hexes)));
-    }
+        private void append(int start, int end) {
+            if (bufferStart == bufferEnd) {
+                bufferStart = start;
+            }
+            bufferEnd = end;
+        }
+
+        private void flushBufferAsText() {
+            if (bufferStart == bufferEnd) return;
+            fragments.add(ChatMessageFragment.text(message.substring(bufferStart, bufferEnd)));
+            bufferStart = bufferEnd;
+        }
+
+        private void addEmoji(int start, int end) {
+            var hexes = new StringBuilder();
+            for (var i = start; i < end; ) {
+                var codePoint = message.codePointAt(i);
+                if (!hexes.isEmpty()) hexes.append('-');
+                hexes.append(Integer.toHexString(codePoint));
+                i += Character.charCount(codePoint);
+            }
+            fragments.add(ChatMessageFragment.emoji(message.substring(start, end), hexes.toString()));
+        }
 
-    private StringBuilder cleanBufferAsText(List<ChatMessageFragment> fragments, StringBuilder builder) {
-        if (builder.isEmpty()) return builder;
-        var fragment = ChatMessageFragment.text(builder.toString());
-        fragments.add(fragment);
-        return new StringBuilder();
     }
 
+    /**
+     * IRCのemotesタグをパースする。
+     * <p>
+     *     形式は{@code <エモートID>:<開始>-<終了>,<開始>-<終了>/<エモートID>:...}で、
+     *     位置はコードポイント準拠の文字位置を表す。
+     * </p>
+     */
     private List<Emote> parseEmotes(String emoteValue) {
         if (emoteValue == null || emoteValue.isEmpty()) {
             return List.of();
         }
+
         var result = new ArrayList<Emote>();
-        var emotes = emoteValue.split("/");
-        for (var emote : emotes) {
-            var emoteSplit = emote.split(":", 2);
-            var id = emoteSplit[0];
-            var ranges = emoteSplit[1].split(",");
-            for (var range : ranges) {
-                var rangeSplit = range.split("-", 2);
-                var begin = Integer.parseInt(rangeSplit[0]);
-                var end = Integer.parseInt(rangeSplit[1]);
-                result.add(new Emote(id, begin, end));
+        var length = emoteValue.length();
+        var i = 0;
+        while (i < length) {
+            var slash = emoteValue.indexOf('/', i);
+            var emoteEnd = slash < 0 ? length : slash;
+
+            if (i < emoteEnd) {
+                var colon = emoteValue.indexOf(':', i);
+                if (colon < 0 || emoteEnd < colon) {
+                    throw new IllegalArgumentException("invalid emotes tag: " + emoteValue);
+                }
+                var id = emoteValue.substring(i, colon);
+
+                var r = colon + 1;
+                while (r < emoteEnd) {
+                    var comma = emoteValue.indexOf(',', r);
+                    var rangeEnd = comma < 0 || emoteEnd < comma ? emoteEnd : comma;
+
+                    if (r < rangeEnd) {
+                        var hyphen = emoteValue.indexOf('-', r);
+                        if (hyphen < 0 || rangeEnd < hyphen) {
+                            throw new IllegalArgumentException("invalid emotes tag: " + emoteValue);
+                        }
+                        var begin = Integer.parseInt(emoteValue, r, hyphen, 10);
+                        var end = Integer.parseInt(emoteValue, hyphen + 1, rangeEnd, 10);
+                        result.add(new Emote(id, begin, end));
+                    }
+                    r = rangeEnd + 1;
+                }
             }
+            i = emoteEnd + 1;
+        }
+
+        // 安定ソートのため同じ位置のエモートは出現順が保たれる
+        if (1 < result.size()) {
+            result.sort(EMOTE_ORDER);
         }
-        Collections.sort(result);
         return result;
     }
 }
@@ -19,20 +19,45 @@ package com.github.k7t3.tcv.domain.chat;
 import com.github.k7t3.tcv.domain.Twitch;
 import com.github.k7t3.tcv.domain.event.EventPublishers;
 import com.github.k7t3.tcv.domain.event.chat.*;
+import com.github.k7t3.tcv.reactive.MonitoredExecutor;
+import com.github.k7t3.tcv.reactive.StripedExecutor;
 import com.github.philippheuer.events4j.api.domain.IDisposable;
+import com.github.twitch4j.chat.events.AbstractChannelEvent;
 import com.github.twitch4j.chat.events.channel.*;
 import com.github.twitch4j.chat.events.roomstate.EmoteOnlyEvent;
 import com.github.twitch4j.chat.events.roomstate.FollowersOnlyEvent;
 import com.github.twitch4j.chat.events.roomstate.SlowModeEvent;
 import com.github.twitch4j.chat.events.roomstate.SubscribersOnlyEvent;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * twitch4jのチャットのイベントをドメインのイベントに変換して発行する。
+ * <p>
+ *     twitch4jのイベントは全てのチャンネルで一つのスレッドから通知されるため、
+ *     メッセージのパースなどの処理はチャンネルのIDで振り分けた複数のワーカーで実行する。
+ *     同じチャンネルのイベントは常に同じワーカーで受信した順に処理され、
+ *     異なるチャンネルのイベントは並行して処理される。
+ * </p>
+ */
 public class ChatRoomEventProvider {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChatRoomEventProvider.class);
+
+    /** イベントを処理するワーカーの数*/
+    private static final int WORKER_COUNT = Math.clamp(Runtime.getRuntime().availableProcessors(), 2, 8);
+
     private final ConcurrentHashMap<String, ChatRoom> chatRoomMap = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Set<ChatRoomState>> stateMap = new ConcurrentHashMap<>();
 
@@ -40,6 +65,13 @@ public class ChatRoomEventProvider {
     private final EventPublishers eventPublishers;
     private final ChatMessageParser parser = new ChatMessageParser();
     private final ClipFinder clipFinder;
+    private final ClipResolver clipResolver;
+
+    /** チャンネルのIDで振り分けてイベントを処理するワーカー*/
+    private final StripedExecutor workers = new StripedExecutor("Chat-Event-Worker", WORKER_COUNT);
+
+    /** チャンネルごとの処理待ちのイベントの数*/
+    private final ConcurrentHashMap<String, AtomicInteger> backlogs = new ConcurrentHashMap<>();
 
     private List<IDisposable> subscriptions;
 
@@ -47,6 +79,7 @@ public class ChatRoomEventProvider {
         this.twitch = twitch;
         this.eventPublishers = eventPublishers;
         this.clipFinder = new ClipFinder(twitch);
+        this.clipResolver = new ClipResolver(twitch);
     }
 
     public void onJoined(ChatRoom chatRoom) {
@@ -59,6 +92,7 @@ public class ChatRoomEventProvider {
         var channelId = chatRoom.getBroadcaster().getUserId();
         chatRoomMap.remove(channelId);
         stateMap.remove(channelId);
+        backlogs.remove(channelId);
     }
 
     public void listen() {
@@ -68,23 +102,91 @@ public class ChatRoomEventProvider {
         var eventManager = chat.getEventManager();
 
         subscriptions = new ArrayList<>();
-        subscriptions.add(eventManager.onEvent(ChannelMessageEvent.class, this::onChannelMessageEvent));
-        subscriptions.add(eventManager.onEvent(SubscriptionEvent.class, this::onSubscriptionEvent));
-        subscriptions.add(eventManager.onEvent(ClearChatEvent.class, this::onClearChatEvent));
-        subscriptions.add(eventManager.onEvent(DeleteMessageEvent.class, this::onDeleteMessageEvent));
-        subscriptions.add(eventManager.onEvent(EmoteOnlyEvent.class, this::onEmoteOnlyEvent));
-        subscriptions.add(eventManager.onEvent(FollowersOnlyEvent.class, this::onFollowersOnlyEvent));
-        subscriptions.add(eventManager.onEvent(RaidEvent.class, this::onRaidEvent));
-        subscriptions.add(eventManager.onEvent(SlowModeEvent.class, this::onSlowModeEvent));
-        subscriptions.add(eventManager.onEvent(SubscribersOnlyEvent.class, this::onSubscribersOnlyEvent));
-        subscriptions.add(eventManager.onEvent(CheerEvent.class, this::onCheerEvent));
+        subscriptions.add(eventManager.onEvent(ChannelMessageEvent.class, onWorker(this::onChannelMessageEvent)));
+        subscriptions.add(eventManager.onEvent(SubscriptionEvent.class, onWorker(this::onSubscriptionEvent)));
+        subscriptions.add(eventManager.onEvent(ClearChatEvent.class, onWorker(this::onClearChatEvent)));
+        subscriptions.add(eventManager.onEvent(DeleteMessageEvent.class, onWorker(this::onDeleteMessageEvent)));
+        subscriptions.add(eventManager.onEvent(EmoteOnlyEvent.class, onWorker(this::onEmoteOnlyEvent)));
+        subscriptions.add(eventManager.onEvent(FollowersOnlyEvent.class, onWorker(this::onFollowersOnlyEvent)));
+        subscriptions.add(eventManager.onEvent(RaidEvent.class, onWorker(this::onRaidEvent)));
+        subscriptions.add(eventManager.onEvent(SlowModeEvent.class, onWorker(this::onSlowModeEvent)));
+        subscriptions.add(eventManager.onEvent(SubscribersOnlyEvent.class, onWorker(this::onSubscribersOnlyEvent)));
+        subscriptions.add(eventManager.onEvent(CheerEvent.class, onWorker(this::onCheerEvent)));
+    }
+
+    /**
+     * イベントをチャンネルに対応するワーカーで処理するハンドラを返す。
+     * <p>
+     *     チャンネルに関する全てのイベントを同じワーカーで受信した順に処理する。
+     *     メッセージとそれ以外のイベントは別のパブリッシャーで配送されるため、
+     *     配送先で届く順序は保証されない。前後関係は{@link ChatRoomEvent#getSequence()}で判定する。
+     * </p>
+     */
+    private <E extends AbstractChannelEvent> Consumer<E> onWorker(Consumer<E> handler) {
+        return e -> {
+            var channelId = e.getChannel().getId();
+            var backlog = backlogs.computeIfAbsent(channelId, k -> new AtomicInteger());
+            backlog.incrementAndGet();
+            try {
+                workers.execute(channelId, () -> {
+                    try {
+                        handler.accept(e);
+                    } catch (Exception ex) {
+                        LOGGER.error("failed to handle {}", e.getClass().getSimpleName(), ex);
+                    } finally {
+                        backlog.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                backlog.decrementAndGet();
+                LOGGER.warn("worker rejected {}", e.getClass().getSimpleName());
+            }
+        };
+    }
+
+    /**
+     * チャンネルの処理待ちのイベントの数を返す。
+     * @param channelId チャンネルのID
+     */
+    public int getBacklog(String channelId) {
+        var backlog = backlogs.get(channelId);
+        return backlog == null ? 0 : backlog.get();
+    }
+
+    /**
+     * チャンネルのIDと処理待ちのイベントの数を返す。
+     */
+    public Map<String, Integer> getBacklogs() {
+        var snapshot = new HashMap<String, Integer>();
+        backlogs.forEach((channelId, backlog) -> snapshot.put(channelId, backlog.get()));
+        return snapshot;
+    }
+
+    /**
+     * イベントを処理するワーカー。
+     * ワーカー全体の処理待ちの数と待ち時間を取得できる。
+     */
+    public MonitoredExecutor getWorkers() {
+        return workers;
     }
 
     public void clean() {
-        if (subscriptions == null || subscriptions.isEmpty()) return;
-        for (var sub : subscriptions)
-            sub.dispose();
-        subscriptions.clear();
+        // 購読していなくてもワーカーとクリップの解決は生成時に開始している
+        if (subscriptions != null) {
+            for (var sub : subscriptions)
+                sub.dispose();
+            subscriptions.clear();
+        }
+
+        // 受信済みのイベントを処理してから停止する
+        workers.close();
+        backlogs.clear();
+
+        // バッチのスケジューラを停止し、未解決のクリップの取得はキャンセルする
+        clipResolver.close();
+
+        LOGGER.info("chat messages deferred={}, parsed={}, skipped={}",
+                ChatMessage.getDeferredCount(), ChatMessage.getMaterializedCount(), ChatMessage.getSkippedCount());
     }
 
     private void updateRoomState(String channelId, ChatRoomState roomState, boolean active) {
@@ -105,23 +207,24 @@ public class ChatRoomEventProvider {
         eventPublishers.submit(event);
     }
 
-    private ChatData parseMessageEvent(IRCMessageEvent item) {
+    ChatData parseMessageEvent(IRCMessageEvent item) {
         var channelId = item.getChannelId();
         var channelName = item.getChannelName().orElse("");
         var message = item.getMessage().orElse(null);
         var emotes = item.getTagValue("emotes").orElse(null);
 
         var msgId = item.getMessageId().orElse("");
-        var chatMessage = parser.parse(message, emotes);
+        // 部品へのパースは表示されるときまで遅延する
+        var chatMessage = parser.parseLazily(message, emotes);
         var userId = item.getUserId();
         var userDisplayName = item.getUserDisplayName().orElse(null);
         var userName = item.getUserName();
         var userColor = item.getUserChatColor().orElse(null);
-        var badges = item.getBadges()
-                .entrySet()
-                .stream()
-                .map(pair -> new ChatBadge(pair.getKey(), pair.getValue()))
-                .toList();
+        var badgeMap = item.getBadges();
+        var badges = new ArrayList<ChatBadge>(badgeMap.size());
+        for (var entry : badgeMap.entrySet()) {
+            badges.add(new ChatBadge(entry.getKey(), entry.getValue()));
+        }
         var firedAt = item.getFiredAtInstant();
 
         return new ChatData(
@@ -148,10 +251,22 @@ public class ChatRoomEventProvider {
         var postedEvent = new ChatMessageEvent(chatRoom, chatData);
         eventPublishers.submitChatMessage(postedEvent);
 
-        var clipOp = clipFinder.findClip(message);
-        clipOp.ifPresent(clipChatMessage -> {
-            var clipPostedEvent = new ClipPostedEvent(chatRoom, clipChatMessage);
-            eventPublishers.submit(clipPostedEvent);
+        // クリップの情報はイベントスレッドを止めないように非同期で解決する
+        clipFinder.findClipReference(message).ifPresent(reference -> {
+            var url = reference.uri().toString();
+            clipResolver.resolve(reference.id()).whenComplete((clip, ex) -> {
+                if (ex != null) {
+                    LOGGER.warn("failed to resolve clip {}", url, ex);
+                    return;
+                }
+
+                var clipChatMessage = clip
+                        .map(c -> ClipChatMessage.of(reference.id(), url, message, c))
+                        .orElseGet(() -> ClipChatMessage.of(reference.id(), url, message));
+
+                var clipPostedEvent = new ClipPostedEvent(chatRoom, clipChatMessage);
+                eventPublishers.submit(clipPostedEvent);
+            });
         });
     }
 
@@ -55,9 +55,9 @@ public class ClipFinder {
     }
 
     /**
-     * チャットに投稿されたクリップのURLをパースしてAPIに投げるメソッド
+     * チャットに投稿されたクリップのURLからクリップのIDを取り出すメソッド
      */
-    public Optional<ClipChatMessage> findClip(String message) {
+    public Optional<ClipReference> findClipReference(String message) {
         var uri = parseClipURI(message);
         if (uri == null) {
             return Optional.empty();
@@ -74,6 +74,24 @@ public class ClipFinder {
         }
 
         var clipId = paths[paths.length - 1];
+        return Optional.of(new ClipReference(clipId, uri));
+    }
+
+    /**
+     * チャットに投稿されたクリップのURLをパースしてAPIに投げるメソッド
+     * <p>
+     *     呼び出したスレッドでAPIの応答を待つ。
+     *     チャットのイベントを処理するスレッドからは{@link ClipResolver}を使用すること。
+     * </p>
+     */
+    public Optional<ClipChatMessage> findClip(String message) {
+        var reference = findClipReference(message);
+        if (reference.isEmpty()) {
+            return Optional.empty();
+        }
+
+        var clipId = reference.get().id();
+        var uri = reference.get().uri();
 
         var api = twitch.getTwitchAPI();
         var clips = api.getClips(List.of(clipId));
@@ -86,4 +104,10 @@ public class ClipFinder {
         return Optional.of(ClipChatMessage.of(clipId, uri.toString(), message, VideoClip.of(clips.getFirst())));
     }
 
+    /**
+     * チャットに含まれていたクリップのIDとURL
+     */
+    public record ClipReference(String id, URI uri) {
+    }
+
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.domain.chat;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.k7t3.tcv.domain.Twitch;
+import com.github.k7t3.tcv.domain.clip.VideoClip;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * クリップのIDから非同期にクリップの情報を解決するクラス。
+ * <p>
+ *     短い時間内に要求されたIDをまとめ、一度のAPI呼び出しで最大{@value #MAX_BATCH_SIZE}件を取得する。
+ *     同じIDの要求は解決中のものも含めて一つにまとめられ、
+ *     解決した結果は見つからなかったものも含めて一定数キャッシュされる。
+ * </p>
+ */
+public class ClipResolver implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClipResolver.class);
+
+    /** 一度のAPI呼び出しで取得できるクリップの最大数*/
+    static final int MAX_BATCH_SIZE = 100;
+
+    /** 要求をまとめる時間*/
+    private static final Duration DEFAULT_WINDOW = Duration.ofMillis(200);
+
+    private static final int CACHE_SIZE = 1024;
+
+    private static final Duration CACHE_EXPIRATION = Duration.ofMinutes(30);
+
+    private final Twitch twitch;
+
+    private final Duration window;
+
+    /** 解決中の要求も保持することで同じIDの要求をまとめる*/
+    private final AsyncCache<String, Optional<VideoClip>> cache = Caffeine.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .expireAfterWrite(CACHE_EXPIRATION)
+            .buildAsync();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofVirtual().name("Clip-Resolver-Thread").factory()
+    );
+
+    /** APIの呼び出しを待っている要求(lockで保護する)*/
+    private final Map<String, CompletableFuture<Optional<VideoClip>>> pending = new LinkedHashMap<>();
+
+    private final Object lock = new Object();
+
+    /** 予約されている次回のAPI呼び出し(lockで保護する)*/
+    private ScheduledFuture<?> timer;
+
+    public ClipResolver(Twitch twitch) {
+        this(twitch, DEFAULT_WINDOW);
+    }
+
+    ClipResolver(Twitch twitch, Duration window) {
+        this.twitch = twitch;
+        this.window = window;
+    }
+
+    /**
+     * クリップを解決する。
+     * @param clipId クリップのID
+     * @return 解決したクリップ。見つからなかったときは空のOptional
+     */
+    public CompletableFuture<Optional<VideoClip>> resolve(String clipId) {
+        return cache.get(clipId, (id, executor) -> enqueue(id));
+    }
+
+    private CompletableFuture<Optional<VideoClip>> enqueue(String clipId) {
+        var future = new CompletableFuture<Optional<VideoClip>>();
+
+        synchronized (lock) {
+            pending.put(clipId, future);
+
+            if (MAX_BATCH_SIZE <= pending.size()) {
+                // 上限に達したときは待たずに取得する
+                scheduler.execute(this::flush);
+            } else if (timer == null) {
+                timer = scheduler.schedule(this::onTimer, window.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return future;
+    }
+
+    private void onTimer() {
+        synchronized (lock) {
+            timer = null;
+        }
+        flush();
+    }
+
+    private void flush() {
+        var batch = new LinkedHashMap<String, CompletableFuture<Optional<VideoClip>>>();
+
+        synchronized (lock) {
+            var iterator = pending.entrySet().iterator();
+            while (iterator.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+                var entry = iterator.next();
+                batch.put(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+
+            // 残りが上限に達していれば続けて取得し、そうでなければ次の要求を待つ
+            if (MAX_BATCH_SIZE <= pending.size()) {
+                scheduler.execute(this::flush);
+            } else if (!pending.isEmpty() && timer == null) {
+                timer = scheduler.schedule(this::onTimer, window.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (batch.isEmpty()) return;
+
+        try {
+            var api = twitch.getTwitchAPI();
+            var clips = api.getClips(List.copyOf(batch.keySet()));
+
+            var found = new HashMap<String, VideoClip>();
+            for (var clip : clips) {
+                try {
+                    found.put(clip.getId(), VideoClip.of(clip));
+                } catch (Exception e) {
+                    LOGGER.warn("unexpected clip {}", clip, e);
+                }
+            }
+
+            batch.forEach((id, future) -> {
+                var clip = found.get(id);
+                if (clip == null) {
+                    LOGGER.warn("clip not found clip_id={}", id);
+                }
+                future.complete(Optional.ofNullable(clip));
+            });
+
+        } catch (Exception e) {
+            LOGGER.error("failed to get clips {}", batch.keySet(), e);
+
+            // 失敗したものはキャッシュから取り除かれるため次回再度取得を試みる
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+
+        synchronized (lock) {
+            var e = new CancellationException("closed");
+            pending.values().forEach(future -> future.completeExceptionally(e));
+            pending.clear();
+        }
+    }
+
+}
@@ -13,48 +13,137 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.github.k7t3.tcv.domain.event;
 
 import com.github.k7t3.tcv.domain.event.channel.TwitchChannelEvent;
 import com.github.k7t3.tcv.domain.event.chat.ChatMessageEvent;
 import com.github.k7t3.tcv.domain.event.chat.ChatRoomEvent;
+import com.github.k7t3.tcv.reactive.BufferedPublisher;
+import com.github.k7t3.tcv.reactive.MonitoredExecutor;
+import com.github.k7t3.tcv.reactive.OverflowPolicy;
+import com.github.k7t3.tcv.reactive.TypedPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Flow;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.SubmissionPublisher;
 
+/**
+ * ドメインのイベントを発行するパブリッシャー。
+ * <p>
+ *     イベントはtwitch4jのイベントスレッドから発行されるため、
+ *     購読者のバッファが溢れてもスレッドを無期限に待機させないように
+ *     パブリッシャーごとに{@link OverflowPolicy}を指定する。
+ *     既定の設定は{@link PublisherSettings#withSystemProperties(String)}で上書きできる。
+ * </p>
+ * <p>
+ *     チャンネルとチャットルームのイベントは購読者が登録したタイプごとにキューを持ち、
+ *     購読者は登録したタイプのイベントだけを受け取る。
+ * </p>
+ * <p>
+ *     購読者への配送はパブリッシャーごとに専用のExecutorで行う。
+ *     共有のスレッドプールを使わないため、他の処理の影響を受けずに配送できる。
+ *     スレッドのモデルは{@link EventThreadingModel}で指定する。
+ * </p>
+ */
 public class EventPublishers implements AutoCloseable {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventPublishers.class);
+
+    /**
+     * チャンネルに関するイベントの既定の設定。
+     * 配信状態の変更は失うと復元できないため一定時間まで待機する。
+     */
+    public static final PublisherSettings DEFAULT_CHANNEL_SETTINGS =
+            new PublisherSettings(64, OverflowPolicy.BLOCK, Duration.ofSeconds(1), EventThreadingModel.SINGLE);
+
+    /**
+     * チャットルームに関するイベントの既定の設定。
+     * 購読者が多いため複数のスレッドで配送する。
+     */
+    public static final PublisherSettings DEFAULT_CHAT_SETTINGS =
+            new PublisherSettings(64, OverflowPolicy.BLOCK, Duration.ofSeconds(1), EventThreadingModel.STRIPED);
+
+    /**
+     * チャットメッセージに関するイベントの既定の設定。
+     * 表示が追いつかないときは古いメッセージから破棄する。
+     */
+    public static final PublisherSettings DEFAULT_MESSAGE_SETTINGS =
+            new PublisherSettings(256, OverflowPolicy.DROP_OLDEST, Duration.ZERO, EventThreadingModel.SINGLE);
+
     /**
      * チャンネルに関するイベントのパブリッシャー
      */
-    private final SubmissionPublisher<TwitchChannelEvent> channelEventPublisher = new SubmissionPublisher<>(
-            ForkJoinPool.commonPool(),
-            64
-    );
+    private final TypedPublisher<TwitchChannelEvent> channelEventPublisher;
 
     /**
      * チャットルームに関するイベントのパブリッシャー
      */
-    private final SubmissionPublisher<ChatRoomEvent> chatEventPublisher = new SubmissionPublisher<>(
-            ForkJoinPool.commonPool(),
-            64
-    );
+    private final TypedPublisher<ChatRoomEvent> chatEventPublisher;
 
     /**
      * チャットメッセージに関するパブリッシャー
      */
-    private final SubmissionPublisher<ChatMessageEvent> chatMessagePublisher = new SubmissionPublisher<>(
-            ForkJoinPool.commonPool(),
-            256
-    );
+    private final BufferedPublisher<ChatMessageEvent> chatMessagePublisher;
+
+    /**
+     * パブリッシャーの名前とそのExecutor
+     */
+    private final Map<String, MonitoredExecutor> executors = new LinkedHashMap<>();
+
+    public EventPublishers() {
+        this(
+                DEFAULT_CHANNEL_SETTINGS.withSystemProperties("channel"),
+                DEFAULT_CHAT_SETTINGS.withSystemProperties("chat"),
+                DEFAULT_MESSAGE_SETTINGS.withSystemProperties("message")
+        );
+    }
 
-    Flow.Publisher<TwitchChannelEvent> getChannelEventPublisher() {
+    public EventPublishers(
+            PublisherSettings channelSettings,
+            PublisherSettings chatSettings,
+            PublisherSettings messageSettings
+    ) {
+        channelEventPublisher = createTyped("channel-event", TwitchChannelEvent.class, channelSettings);
+        chatEventPublisher = createTyped("chat-event", ChatRoomEvent.class, chatSettings);
+        chatMessagePublisher = create("chat-message", messageSettings);
+    }
+
+    private MonitoredExecutor createExecutor(String name, PublisherSettings settings) {
+        var executor = settings.threadingModel().createExecutor("Event-" + name);
+        executors.put(name, executor);
+        return executor;
+    }
+
+    private <T> BufferedPublisher<T> create(String name, PublisherSettings settings) {
+        return new BufferedPublisher<>(
+                name,
+                createExecutor(name, settings),
+                settings.bufferSize(),
+                settings.overflowPolicy(),
+                settings.blockTimeout()
+        );
+    }
+
+    private <T> TypedPublisher<T> createTyped(String name, Class<T> type, PublisherSettings settings) {
+        return new TypedPublisher<>(
+                name,
+                type,
+                createExecutor(name, settings),
+                settings.bufferSize(),
+                settings.overflowPolicy(),
+                settings.blockTimeout()
+        );
+    }
+
+    TypedPublisher<TwitchChannelEvent> getChannelEventPublisher() {
         return channelEventPublisher;
     }
 
-    Flow.Publisher<ChatRoomEvent> getChatEventPublisher() {
+    TypedPublisher<ChatRoomEvent> getChatEventPublisher() {
         return chatEventPublisher;
     }
 
@@ -63,15 +152,32 @@ public class EventPublishers implements AutoCloseable {
     }
 
     public void submit(TwitchChannelEvent e) {
-        channelEventPublisher.submit(e);
+        channelEventPublisher.offer(e);
     }
 
     public void submit(ChatRoomEvent e) {
-        chatEventPublisher.submit(e);
+        chatEventPublisher.offer(e);
     }
 
     public void submitChatMessage(ChatMessageEvent e) {
-        chatMessagePublisher.submit(e);
+        chatMessagePublisher.offer(e);
+    }
+
+    /**
+     * バッファが溢れて破棄したイベントの総数を返す。
+     */
+    public long getDroppedCount() {
+        return channelEventPublisher.getTotalDroppedCount()
+                + chatEventPublisher.getTotalDroppedCount()
+                + chatMessagePublisher.getTotalDroppedCount();
+    }
+
+    /**
+     * パブリッシャーの名前とその配送を行うExecutorを返す。
+     * Executorから実行待ちのタスクの数と待ち時間を取得できる。
+     */
+    public Map<String, MonitoredExecutor> getExecutors() {
+        return Collections.unmodifiableMap(executors);
     }
 
     @Override
@@ -79,6 +185,12 @@ public class EventPublishers implements AutoCloseable {
         channelEventPublisher.close();
         chatEventPublisher.close();
         chatMessagePublisher.close();
+
+        // 受け付け済みの配送(完了通知を含む)を終えてから停止する
+        for (var executor : executors.values()) {
+            executor.close();
+            LOGGER.info("{}", executor);
+        }
     }
 
 }
@@ -25,6 +25,14 @@ import com.github.k7t3.tcv.reactive.FlowableSubscriber;
 import java.util.concurrent.Flow;
 import java.util.function.Consumer;
 
+/**
+ * ドメインのイベントを購読する。
+ * <p>
+ *     チャンネルとチャットルームのイベントはタイプごとに配送される。
+ *     {@link DownCastSubscriber}はダウンキャストするタイプのイベントだけを受け取り、
+ *     それ以外の購読者は全てのイベントを受け取る。
+ * </p>
+ */
 public class EventSubscribers {
 
     private final EventPublishers publishers;
@@ -37,10 +45,24 @@ public class EventSubscribers {
         publishers.getChannelEventPublisher().subscribe(subscriber);
     }
 
+    /**
+     * 指定したタイプのチャンネルに関するイベントを購読する。
+     */
+    public <E extends TwitchChannelEvent> void subscribeChannelEvent(Class<E> type, Flow.Subscriber<? super E> subscriber) {
+        publishers.getChannelEventPublisher().subscribe(type, subscriber);
+    }
+
     public void subscribeChatEvent(Flow.Subscriber<ChatRoomEvent> subscriber) {
         publishers.getChatEventPublisher().subscribe(subscriber);
     }
 
+    /**
+     * 指定したタイプのチャットルームに関するイベントを購読する。
+     */
+    public <E extends ChatRoomEvent> void subscribeChatEvent(Class<E> type, Flow.Subscriber<? super E> subscriber) {
+        publishers.getChatEventPublisher().subscribe(type, subscriber);
+    }
+
     public void subscribeMessageEvent(Flow.Subscriber<ChatMessageEvent> subscriber) {
         publishers.getChatMessagePublisher().subscribe(subscriber);
     }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.domain.event;
+
+import com.github.k7t3.tcv.reactive.InstrumentedExecutor;
+import com.github.k7t3.tcv.reactive.MonitoredExecutor;
+import com.github.k7t3.tcv.reactive.StripedExecutor;
+
+/**
+ * イベントを購読者に配送するスレッドのモデル。
+ * <p>
+ *     どのモデルでも一つの購読者への配送は逐次的に行われるため、
+ *     チャンネルごとのイベントの順序は保たれる。
+ * </p>
+ */
+public enum EventThreadingModel {
+
+    /**
+     * 単一のスレッドで全ての購読者に配送する
+     */
+    SINGLE,
+
+    /**
+     * 購読者ごとに固定した複数のスレッドで配送する
+     */
+    STRIPED,
+
+    /**
+     * 仮想スレッドで配送する
+     */
+    VIRTUAL;
+
+    /** STRIPEDのスレッドの数*/
+    private static final int STRIPE_COUNT = Math.clamp(Runtime.getRuntime().availableProcessors() / 2, 2, 4);
+
+    /**
+     * このモデルのExecutorを生成する。
+     * @param name スレッドの名前
+     * @return 生成したExecutor
+     */
+    public MonitoredExecutor createExecutor(String name) {
+        return switch (this) {
+            case SINGLE -> InstrumentedExecutor.singleThread(name);
+            case STRIPED -> new StripedExecutor(name, STRIPE_COUNT);
+            case VIRTUAL -> InstrumentedExecutor.virtualThreads(name);
+        };
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.domain.event;
+
+import com.github.k7t3.tcv.reactive.OverflowPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * イベントのパブリッシャーの設定
+ * @param bufferSize 購読者ごとのバッファの大きさ
+ * @param overflowPolicy バッファが溢れたときのポリシー
+ * @param blockTimeout {@link OverflowPolicy#BLOCK}のときに空きを待機する最大時間
+ * @param threadingModel 購読者に配送するスレッドのモデル
+ */
+public record PublisherSettings(
+        int bufferSize,
+        OverflowPolicy overflowPolicy,
+        Duration blockTimeout,
+        EventThreadingModel threadingModel
+) {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublisherSettings.class);
+
+    private static final String PROPERTY_PREFIX = "tcv.event.";
+
+    public PublisherSettings {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+    }
+
+    /**
+     * システムプロパティで指定された値で上書きした設定を返す。
+     * <p>
+     *     {@code tcv.event.<name>.buffer}、{@code tcv.event.<name>.overflow}、
+     *     {@code tcv.event.<name>.block.timeout}(ミリ秒)、{@code tcv.event.<name>.threading}を参照する。
+     *     不正な値が指定されているときはこの設定の値を使用する。
+     * </p>
+     * @param name パブリッシャーの名前
+     * @return 上書きした設定
+     */
+    public PublisherSettings withSystemProperties(String name) {
+        var prefix = PROPERTY_PREFIX + name + ".";
+        var bufferSize = this.bufferSize;
+        var overflowPolicy = this.overflowPolicy;
+        var blockTimeout = this.blockTimeout;
+        var threadingModel = this.threadingModel;
+
+        var bufferValue = System.getProperty(prefix + "buffer");
+        if (bufferValue != null) {
+            try {
+                bufferSize = Math.max(1, Integer.parseInt(bufferValue.trim()));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("invalid {}buffer: {}", prefix, bufferValue);
+            }
+        }
+
+        var overflowValue = System.getProperty(prefix + "overflow");
+        if (overflowValue != null) {
+            try {
+                overflowPolicy = OverflowPolicy.valueOf(overflowValue.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("invalid {}overflow: {}", prefix, overflowValue);
+            }
+        }
+
+        var timeoutValue = System.getProperty(prefix + "block.timeout");
+        if (timeoutValue != null) {
+            try {
+                blockTimeout = Duration.ofMillis(Math.max(0, Long.parseLong(timeoutValue.trim())));
+            } catch (NumberFormatException e) {
+                LOGGER.warn("invalid {}block.timeout: {}", prefix, timeoutValue);
+            }
+        }
+
+        var threadingValue = System.getProperty(prefix + "threading");
+        if (threadingValue != null) {
+            try {
+                threadingModel = EventThreadingModel.valueOf(threadingValue.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("invalid {}threading: {}", prefix, threadingValue);
+            }
+        }
+
+        return new PublisherSettings(bufferSize, overflowPolicy, blockTimeout, threadingModel);
+    }
+
+}
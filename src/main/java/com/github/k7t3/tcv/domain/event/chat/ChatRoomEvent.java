@@ -18,10 +18,16 @@ package com.github.k7t3.tcv.domain.event.chat;
 
 import com.github.k7t3.tcv.domain.chat.ChatRoom;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public abstract class ChatRoomEvent {
 
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
     private final ChatRoom chatRoom;
 
+    private final long sequence = SEQUENCE.incrementAndGet();
+
     public ChatRoomEvent(ChatRoom chatRoom) {
         this.chatRoom = chatRoom;
     }
@@ -30,4 +36,16 @@ public abstract class ChatRoomEvent {
         return chatRoom;
     }
 
+    /**
+     * イベントを生成した順序。
+     * <p>
+     *     同じチャンネルのイベントは受信した順に同じワーカーで生成される。
+     *     メッセージとそれ以外のイベントは別のパブリッシャーで配送され、
+     *     届く順序が入れ替わることがあるため、前後関係はこの値で判定する。
+     * </p>
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
 }
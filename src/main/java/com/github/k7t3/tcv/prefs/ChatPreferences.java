@@ -17,6 +17,7 @@
 package com.github.k7t3.tcv.prefs;
 
 import com.github.k7t3.tcv.view.chat.ChatFont;
+import com.github.k7t3.tcv.view.chat.ChatRenderMode;
 import javafx.beans.property.*;
 
 import java.util.Map;
@@ -27,6 +28,10 @@ public class ChatPreferences extends PreferencesBase {
 
     private static final int DEFAULT_CHAT_CACHE_SIZE = 256;
 
+    private static final int DEFAULT_CHAT_FRAME_BUDGET = 512;
+
+    private static final int DEFAULT_IMAGE_CACHE_SIZE = 64;
+
     /**
      * チャットビューで適用されるフォントファミリ
      */
@@ -53,6 +58,26 @@ public class ChatPreferences extends PreferencesBase {
      */
     private static final String CHAT_CACHE_SIZE = "chat.cache.size";
 
+    /**
+     * 1フレームでチャットビューに反映するチャットの最大数
+     */
+    private static final String CHAT_FRAME_BUDGET = "chat.frame.budget";
+
+    /**
+     * フィルタに一致したチャットを非表示にせず破棄するか
+     */
+    private static final String CHAT_DROP_FILTERED = "chat.filter.drop";
+
+    /**
+     * チャットビューの描画方法
+     */
+    private static final String CHAT_RENDER_MODE = "chat.render.mode";
+
+    /**
+     * エモートやバッジなどのイメージをメモリにキャッシュする上限(MB)
+     */
+    private static final String IMAGE_CACHE_SIZE = "image.cache.size";
+
     private ObjectProperty<ChatFont> font;
 
     private BooleanProperty showUserName;
@@ -65,6 +90,14 @@ public class ChatPreferences extends PreferencesBase {
 
     private IntegerProperty chatCacheSize;
 
+    private IntegerProperty chatFrameBudget;
+
+    private BooleanProperty dropFilteredChat;
+
+    private ObjectProperty<ChatRenderMode> renderMode;
+
+    private IntegerProperty imageCacheSize;
+
     ChatPreferences(Preferences preferences, Map<String, Object> defaults) {
         super(preferences, defaults);
 
@@ -74,6 +107,10 @@ public class ChatPreferences extends PreferencesBase {
         defaults.put(FLOATABLE_CHAT_OPACITY, 0.7d);
         defaults.put(FLOATABLE_CHAT_TOP, Boolean.TRUE);
         defaults.put(CHAT_CACHE_SIZE, DEFAULT_CHAT_CACHE_SIZE);
+        defaults.put(CHAT_FRAME_BUDGET, DEFAULT_CHAT_FRAME_BUDGET);
+        defaults.put(CHAT_DROP_FILTERED, Boolean.FALSE);
+        defaults.put(CHAT_RENDER_MODE, ChatRenderMode.NODE.name());
+        defaults.put(IMAGE_CACHE_SIZE, DEFAULT_IMAGE_CACHE_SIZE);
     }
 
     @Override
@@ -103,6 +140,28 @@ public class ChatPreferences extends PreferencesBase {
         if (chatCacheSize != getChatCacheSize()) {
             setChatCacheSize(chatCacheSize);
         }
+
+        var chatFrameBudget = getInt(CHAT_FRAME_BUDGET);
+        if (chatFrameBudget != getChatFrameBudget()) {
+            setChatFrameBudget(chatFrameBudget);
+        }
+
+        var imageCacheSize = getInt(IMAGE_CACHE_SIZE);
+        if (imageCacheSize != getImageCacheSize()) {
+            setImageCacheSize(imageCacheSize);
+        }
+
+        if (isDropFilteredChat() != getBoolean(CHAT_DROP_FILTERED)) {
+            setDropFilteredChat(getBoolean(CHAT_DROP_FILTERED));
+        }
+
+        try {
+            var renderMode = ChatRenderMode.valueOf(get(CHAT_RENDER_MODE));
+            if (getRenderMode() != renderMode) {
+                setRenderMode(renderMode);
+            }
+        } catch (IllegalArgumentException ignored) {
+        }
     }
 
     @Override
@@ -127,6 +186,14 @@ public class ChatPreferences extends PreferencesBase {
         if (floatingChatAlwaysTop != null) {
             preferences.putBoolean(FLOATABLE_CHAT_TOP, floatingChatAlwaysTop.get());
         }
+
+        if (dropFilteredChat != null) {
+            preferences.putBoolean(CHAT_DROP_FILTERED, dropFilteredChat.get());
+        }
+
+        if (renderMode != null) {
+            preferences.put(CHAT_RENDER_MODE, renderMode.get().name());
+        }
     }
 
     // ******************** PROPERTIES ********************
@@ -175,4 +242,32 @@ public class ChatPreferences extends PreferencesBase {
     public int getChatCacheSize() { return chatCacheSizeProperty().get(); }
     public void setChatCacheSize(int chatCacheSize) { chatCacheSizeProperty().set(chatCacheSize); }
 
+    public IntegerProperty chatFrameBudgetProperty() {
+        if (chatFrameBudget == null) chatFrameBudget = createIntegerProperty(CHAT_FRAME_BUDGET);
+        return chatFrameBudget;
+    }
+    public int getChatFrameBudget() { return chatFrameBudgetProperty().get(); }
+    public void setChatFrameBudget(int chatFrameBudget) { chatFrameBudgetProperty().set(chatFrameBudget); }
+
+    public IntegerProperty imageCacheSizeProperty() {
+        if (imageCacheSize == null) imageCacheSize = createIntegerProperty(IMAGE_CACHE_SIZE);
+        return imageCacheSize;
+    }
+    public int getImageCacheSize() { return imageCacheSizeProperty().get(); }
+    public void setImageCacheSize(int imageCacheSize) { imageCacheSizeProperty().set(imageCacheSize); }
+
+    public BooleanProperty dropFilteredChatProperty() {
+        if (dropFilteredChat == null) dropFilteredChat = createBooleanProperty(CHAT_DROP_FILTERED);
+        return dropFilteredChat;
+    }
+    public boolean isDropFilteredChat() { return dropFilteredChatProperty().get(); }
+    public void setDropFilteredChat(boolean dropFilteredChat) { dropFilteredChatProperty().set(dropFilteredChat); }
+
+    public ObjectProperty<ChatRenderMode> renderModeProperty() {
+        if (renderMode == null) renderMode = createObjectProperty(CHAT_RENDER_MODE, ChatRenderMode::valueOf, ChatRenderMode::name);
+        return renderMode;
+    }
+    public ChatRenderMode getRenderMode() { return renderModeProperty().get(); }
+    public void setRenderMode(ChatRenderMode renderMode) { renderModeProperty().set(renderMode); }
+
 }
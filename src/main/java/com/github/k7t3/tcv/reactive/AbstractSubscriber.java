@@ -44,6 +44,11 @@ public abstract class AbstractSubscriber<T> implements FlowableSubscriber<T> {
         backPressurePolicy.set(policy);
     }
 
+    @Override
+    public BackPressurePolicy getBackPressurePolicy() {
+        return backPressurePolicy.get();
+    }
+
     @Override
     public void onSubscribe(Flow.Subscription subscription) {
         this.subscription = subscription;
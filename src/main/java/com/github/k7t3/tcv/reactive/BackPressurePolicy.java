@@ -24,25 +24,51 @@ public enum BackPressurePolicy {
     /**
      * 制限しない
      */
-    FULL(Long.MAX_VALUE),
+    FULL(Long.MAX_VALUE, null),
 
     /**
      * 128アイテムでリクエストする
      */
-    BALANCE(128),
+    BALANCE(128, null),
 
     /**
      * アイテムを一つずつリクエストする
      */
-    MINIMUM(1);
+    MINIMUM(1, null),
+
+    /**
+     * 256アイテムでリクエストし、バッファが溢れたときは古いアイテムを破棄する
+     */
+    LATEST(256, OverflowPolicy.DROP_OLDEST),
+
+    /**
+     * 256アイテムでリクエストし、バッファが溢れたときは新しいアイテムを破棄する
+     */
+    EARLIEST(256, OverflowPolicy.DROP_NEWEST),
+
+    /**
+     * 256アイテムでリクエストし、バッファが溢れたときは空きができるまで発行元を待機させる
+     */
+    BLOCKING(256, OverflowPolicy.BLOCK);
 
     private final long segmentSize;
 
-    BackPressurePolicy(long segmentSize) {
+    private final OverflowPolicy overflowPolicy;
+
+    BackPressurePolicy(long segmentSize, OverflowPolicy overflowPolicy) {
         this.segmentSize = segmentSize;
+        this.overflowPolicy = overflowPolicy;
     }
 
     public long getSegmentSize() {
         return segmentSize;
     }
+
+    /**
+     * バッファが溢れたときのポリシー
+     * @return パブリッシャーのポリシーに従うときはnull
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
 }
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.reactive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 購読者ごとに有界のバッファを持つパブリッシャー。
+ * <p>
+ *     {@link java.util.concurrent.SubmissionPublisher#submit(Object)}はバッファが溢れると
+ *     空きができるまで発行するスレッドをブロックする。
+ *     このパブリッシャーはバッファが溢れたときの振る舞いを{@link OverflowPolicy}で指定できるため、
+ *     遅い購読者がいても発行するスレッドが無期限に待たされることはない。
+ * </p>
+ * <p>
+ *     購読者が{@link FlowableSubscriber}のときは、購読を開始した時点の
+ *     {@link BackPressurePolicy#getOverflowPolicy()}がパブリッシャーのポリシーより優先される。
+ *     破棄したアイテムの数は購読者ごとに数えられ、破棄が続く間は件数が2の累乗に達するたびにログに出力する。
+ * </p>
+ * <p>
+ *     購読者への配送は{@link Executor}で実行され、一つの購読者に対しては常に逐次的に行われる。
+ * </p>
+ * @param <T> 発行するタイプ
+ */
+public class BufferedPublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferedPublisher.class);
+
+    /** 一度の配送タスクで購読者に渡す最大件数(同じExecutorを使う他の購読者を待たせないため)*/
+    private static final int MAX_DRAIN_PER_TASK = 64;
+
+    private final String name;
+
+    private final Executor executor;
+
+    private final int bufferCapacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long blockTimeoutNanos;
+
+    private final List<BufferedSubscription<T>> subscriptions = new CopyOnWriteArrayList<>();
+
+    /** 購読を解除した購読者の分も含めた破棄の総数*/
+    private final LongAdder totalDropped = new LongAdder();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param name ログに出力するパブリッシャーの名前
+     * @param executor 購読者への配送を実行するExecutor
+     * @param bufferCapacity 購読者ごとのバッファの大きさ
+     * @param overflowPolicy バッファが溢れたときのポリシー
+     * @param blockTimeout {@link OverflowPolicy#BLOCK}のときに空きを待機する最大時間
+     */
+    public BufferedPublisher(
+            String name,
+            Executor executor,
+            int bufferCapacity,
+            OverflowPolicy overflowPolicy,
+            Duration blockTimeout
+    ) {
+        if (bufferCapacity < 1) {
+            throw new IllegalArgumentException("bufferCapacity must be positive: " + bufferCapacity);
+        }
+        this.name = Objects.requireNonNull(name);
+        this.executor = Objects.requireNonNull(executor);
+        this.bufferCapacity = bufferCapacity;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+
+        var policy = overflowPolicy;
+        if (subscriber instanceof FlowableSubscriber<?> flowable) {
+            var requested = flowable.getBackPressurePolicy().getOverflowPolicy();
+            if (requested != null) {
+                policy = requested;
+            }
+        }
+
+        var subscription = new BufferedSubscription<>(this, subscriber, policy);
+
+        for (var s : subscriptions) {
+            if (s.subscriber == subscriber) {
+                subscription.done = true;
+                subscriber.onSubscribe(subscription);
+                subscriber.onError(new IllegalStateException("duplicate subscribe"));
+                return;
+            }
+        }
+
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+
+        if (closed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * アイテムを全ての購読者のバッファに追加する。
+     * <p>
+     *     バッファが溢れているときは購読者ごとの{@link OverflowPolicy}に従う。
+     * </p>
+     * @param item 発行するアイテム
+     * @return アイテムを破棄した購読者の数
+     * @throws IllegalStateException パブリッシャーが閉じられているとき
+     */
+    public int offer(T item) {
+        Objects.requireNonNull(item);
+        if (closed) {
+            throw new IllegalStateException(name + " is closed");
+        }
+
+        var dropped = 0;
+        for (var subscription : subscriptions) {
+            if (!subscription.offer(item)) {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * 購読者ごとに破棄したアイテムの数を返す。
+     * @return 購読中の購読者と破棄したアイテムの数
+     */
+    public Map<Flow.Subscriber<? super T>, Long> getDroppedCounts() {
+        var counts = new LinkedHashMap<Flow.Subscriber<? super T>, Long>();
+        for (var subscription : subscriptions) {
+            counts.put(subscription.subscriber, subscription.dropped.get());
+        }
+        return counts;
+    }
+
+    /**
+     * 購読を解除した購読者の分も含めて破棄したアイテムの総数を返す。
+     */
+    public long getTotalDroppedCount() {
+        return totalDropped.sum();
+    }
+
+    /**
+     * 購読者のバッファに溜まっているアイテムの最大数を返す。
+     */
+    public int estimateMaximumLag() {
+        var max = 0;
+        for (var subscription : subscriptions) {
+            max = Math.max(max, subscription.size());
+        }
+        return max;
+    }
+
+    public int getNumberOfSubscribers() {
+        return subscriptions.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * パブリッシャーを閉じる。
+     * <p>
+     *     購読者にはバッファに残っているアイテムを配送した後に
+     *     {@link Flow.Subscriber#onComplete()}が通知される。
+     * </p>
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+
+        for (var subscription : subscriptions) {
+            subscription.complete();
+        }
+
+        var dropped = getTotalDroppedCount();
+        if (0 < dropped) {
+            LOGGER.warn("{} closed, dropped {} items in total", name, dropped);
+        }
+    }
+
+    private void remove(BufferedSubscription<T> subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    private static final class BufferedSubscription<T> implements Flow.Subscription, Runnable {
+
+        private final BufferedPublisher<T> publisher;
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private final OverflowPolicy overflowPolicy;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition notFull = lock.newCondition();
+
+        private final ArrayDeque<T> buffer;
+
+        /** 配送タスクがスケジュールされているか*/
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private final AtomicLong dropped = new AtomicLong();
+
+        // 以下はlockで保護する
+
+        private long demand = 0;
+
+        private boolean completing = false;
+
+        private Throwable error;
+
+        /** 購読が解除されたか、終了を通知したか*/
+        private volatile boolean done = false;
+
+        private BufferedSubscription(
+                BufferedPublisher<T> publisher,
+                Flow.Subscriber<? super T> subscriber,
+                OverflowPolicy overflowPolicy
+        ) {
+            this.publisher = publisher;
+            this.subscriber = subscriber;
+            this.overflowPolicy = overflowPolicy;
+            this.buffer = new ArrayDeque<>(Math.min(publisher.bufferCapacity, 64));
+        }
+
+        /**
+         * @return アイテムを破棄しなかったときはtrue
+         */
+        private boolean offer(T item) {
+            var accepted = true;
+
+            lock.lock();
+            try {
+                if (done) return true;
+
+                if (buffer.size() < publisher.bufferCapacity) {
+                    buffer.addLast(item);
+                } else {
+                    switch (overflowPolicy) {
+                        case DROP_NEWEST -> accepted = false;
+                        case DROP_OLDEST -> {
+                            buffer.pollFirst();
+                            buffer.addLast(item);
+                            accepted = false;
+                        }
+                        case BLOCK -> accepted = awaitAndAdd(item);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (!accepted) {
+                onDropped();
+            }
+            signal();
+            return accepted;
+        }
+
+        private boolean awaitAndAdd(T item) {
+            var nanos = publisher.blockTimeoutNanos;
+            try {
+                while (publisher.bufferCapacity <= buffer.size() && !done && 0 < nanos) {
+                    nanos = notFull.awaitNanos(nanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (done) return true;
+            if (publisher.bufferCapacity <= buffer.size()) return false;
+
+            buffer.addLast(item);
+            return true;
+        }
+
+        private void onDropped() {
+            publisher.totalDropped.increment();
+            var count = dropped.incrementAndGet();
+            if (Long.bitCount(count) == 1) {
+                LOGGER.warn("{} dropped {} items for {} ({})", publisher.name, count, subscriber, overflowPolicy);
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return buffer.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (done) return;
+                if (n <= 0) {
+                    error = new IllegalArgumentException("non-positive subscription request: " + n);
+                } else {
+                    demand = Long.MAX_VALUE - demand < n ? Long.MAX_VALUE : demand + n;
+                }
+            } finally {
+                lock.unlock();
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                done = true;
+                buffer.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            publisher.remove(this);
+
+            var count = dropped.get();
+            if (0 < count) {
+                LOGGER.info("{} dropped {} items for {} until cancelled", publisher.name, count, subscriber);
+            }
+        }
+
+        private void complete() {
+            lock.lock();
+            try {
+                completing = true;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            signal();
+        }
+
+        private boolean hasWork() {
+            lock.lock();
+            try {
+                if (done) return false;
+                return error != null
+                        || (0 < demand && !buffer.isEmpty())
+                        || (completing && buffer.isEmpty());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void signal() {
+            if (done || !scheduled.compareAndSet(false, true)) return;
+            try {
+                publisher.executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                LOGGER.error("{} failed to schedule delivery", publisher.name, e);
+            }
+        }
+
+        /**
+         * バッファからアイテムを取り出して購読者に配送する。
+         */
+        @Override
+        public void run() {
+            try {
+                for (var i = 0; i < MAX_DRAIN_PER_TASK; i++) {
+                    T item = null;
+                    Throwable failure = null;
+                    var finished = false;
+
+                    lock.lock();
+                    try {
+                        if (done) return;
+                        if (error != null) {
+                            failure = error;
+                            done = true;
+                            buffer.clear();
+                            notFull.signalAll();
+                        } else if (0 < demand && !buffer.isEmpty()) {
+                            item = buffer.pollFirst();
+                            if (demand != Long.MAX_VALUE) demand--;
+                            notFull.signal();
+                        } else if (completing && buffer.isEmpty()) {
+                            finished = true;
+                            done = true;
+                        } else {
+                            return;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+
+                    if (failure != null) {
+                        publisher.remove(this);
+                        subscriber.onError(failure);
+                        return;
+                    }
+
+                    if (finished) {
+                        publisher.remove(this);
+                        subscriber.onComplete();
+                        return;
+                    }
+
+                    try {
+                        subscriber.onNext(item);
+                    } catch (Throwable t) {
+                        LOGGER.error("{} subscriber threw an exception, cancelling", publisher.name, t);
+                        cancel();
+                        subscriber.onError(t);
+                        return;
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                if (hasWork()) {
+                    signal();
+                }
+            }
+        }
+    }
+}
@@ -35,6 +35,16 @@ public abstract class DownCastSubscriber<T, R extends T> extends AbstractSubscri
         this.type = type;
     }
 
+    /**
+     * ダウンキャストするタイプ。
+     * <p>
+     *     {@link TypedPublisher}はこのタイプのアイテムだけを配送する。
+     * </p>
+     */
+    public Class<R> getType() {
+        return type;
+    }
+
     protected abstract void handleCasted(R item);
 
     @Override
@@ -39,4 +39,14 @@ public interface FlowableSubscriber<T> extends Flow.Subscriber<T> {
      */
     void setBackPressurePolicy(BackPressurePolicy policy);
 
+    /**
+     * 現在の流量制限ポリシーを返す。
+     * <p>
+     *     {@link BufferedPublisher}は購読を開始した時点のポリシーから
+     *     バッファが溢れたときの振る舞いを決定する。
+     * </p>
+     * @return 現在の流量制限ポリシー
+     */
+    BackPressurePolicy getBackPressurePolicy();
+
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.reactive;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ExecutorService}を計測する{@link MonitoredExecutor}
+ */
+public class InstrumentedExecutor implements MonitoredExecutor {
+
+    /** 終了時に受け付け済みのタスクの完了を待機する時間*/
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    private final String name;
+
+    private final ExecutorService delegate;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder executed = new LongAdder();
+
+    private final LongAdder totalLatencyNanos = new LongAdder();
+
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    private InstrumentedExecutor(String name, ExecutorService delegate) {
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    /**
+     * 受け付けた順にタスクを実行する単一のデーモンスレッドのExecutorを生成する。
+     * @param name スレッドの名前
+     */
+    public static InstrumentedExecutor singleThread(String name) {
+        var factory = Thread.ofPlatform().name(name).daemon().factory();
+        var executor = new ThreadPoolExecutor(
+                1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory
+        );
+        return new InstrumentedExecutor(name, executor);
+    }
+
+    /**
+     * タスクごとに仮想スレッドを生成するExecutorを生成する。
+     * @param name スレッドの名前の接頭辞
+     */
+    public static InstrumentedExecutor virtualThreads(String name) {
+        var factory = Thread.ofVirtual().name(name + "-", 0).factory();
+        return new InstrumentedExecutor(name, Executors.newThreadPerTaskExecutor(factory));
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        var accepted = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                queued.decrementAndGet();
+                var latency = System.nanoTime() - accepted;
+                executed.increment();
+                totalLatencyNanos.add(latency);
+                maxLatencyNanos.accumulate(latency);
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    @Override
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    @Override
+    public Duration getAverageLatency() {
+        var count = executed.sum();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalLatencyNanos.sum() / count);
+    }
+
+    @Override
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(maxLatencyNanos.get());
+    }
+
+    @Override
+    public void close() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "%s[queued=%d, executed=%d, avgLatency=%s, maxLatency=%s]".formatted(
+                name, getQueueDepth(), getExecutedCount(), getAverageLatency(), getMaxLatency());
+    }
+}
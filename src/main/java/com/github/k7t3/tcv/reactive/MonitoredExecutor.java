@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.reactive;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * 実行待ちのタスクの数と、タスクが実行されるまでの待ち時間を計測するExecutor
+ */
+public interface MonitoredExecutor extends Executor, AutoCloseable {
+
+    /**
+     * 実行を待っているタスクの数
+     */
+    int getQueueDepth();
+
+    /**
+     * 実行を開始したタスクの数
+     */
+    long getExecutedCount();
+
+    /**
+     * タスクを受け付けてから実行を開始するまでの平均時間
+     */
+    Duration getAverageLatency();
+
+    /**
+     * タスクを受け付けてから実行を開始するまでの最大時間
+     */
+    Duration getMaxLatency();
+
+    /**
+     * 新しいタスクの受け付けを終了し、受け付け済みのタスクの完了を待機する。
+     */
+    @Override
+    void close();
+
+}
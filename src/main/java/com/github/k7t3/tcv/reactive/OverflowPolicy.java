@@ -13,25 +13,27 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+package com.github.k7t3.tcv.reactive;
 
-package com.github.k7t3.tcv.app.chat.filter;
-
-import com.github.k7t3.tcv.domain.chat.ChatData;
-import javafx.collections.ObservableList;
-
-import java.util.function.Predicate;
-
-class KeywordFilter implements Predicate<ChatData> {
-
-    private final ObservableList<KeywordFilterEntry> entries;
-
-    public KeywordFilter(ObservableList<KeywordFilterEntry> entries) {
-        this.entries = entries;
-    }
-
-    @Override
-    public boolean test(ChatData chatData) {
-        return entries.stream().anyMatch(e -> e.test(chatData));
-    }
+/**
+ * 購読者のバッファが溢れたときのポリシー
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 新しいアイテムを破棄する
+     */
+    DROP_NEWEST,
+
+    /**
+     * バッファの最も古いアイテムを破棄して新しいアイテムを追加する
+     */
+    DROP_OLDEST,
+
+    /**
+     * 空きができるまで発行するスレッドを待機させる。
+     * 指定した時間内に空きができないときは新しいアイテムを破棄する。
+     */
+    BLOCK
 
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.reactive;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * キーに応じて単一スレッドのExecutorに振り分けるExecutor。
+ * <p>
+ *     同じキーのタスクは常に同じスレッドで受け付けた順に実行されるため、
+ *     キーごとの順序を保ちつつ異なるキーのタスクを並行して実行できる。
+ * </p>
+ * <p>
+ *     キーを指定しない{@link #execute(Runnable)}はタスク自身をキーとする。
+ *     {@link BufferedPublisher}の配送タスクは購読者ごとに同じインスタンスであるため、
+ *     購読者ごとに一つのスレッドに固定される。
+ * </p>
+ */
+public class StripedExecutor implements MonitoredExecutor {
+
+    private final String name;
+
+    private final InstrumentedExecutor[] stripes;
+
+    /**
+     * @param name スレッドの名前の接頭辞
+     * @param stripeCount スレッドの数
+     */
+    public StripedExecutor(String name, int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("stripeCount must be positive: " + stripeCount);
+        }
+        this.name = Objects.requireNonNull(name);
+        this.stripes = new InstrumentedExecutor[stripeCount];
+        for (var i = 0; i < stripeCount; i++) {
+            stripes[i] = InstrumentedExecutor.singleThread(name + "-" + i);
+        }
+    }
+
+    /**
+     * キーに対応するスレッドでタスクを実行する。
+     * @param key 振り分けに使用するキー(チャンネルのIDなど)
+     * @param task 実行するタスク
+     */
+    public void execute(Object key, Runnable task) {
+        stripeFor(key).execute(task);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(task, task);
+    }
+
+    private InstrumentedExecutor stripeFor(Object key) {
+        var h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[Math.floorMod(h, stripes.length)];
+    }
+
+    /**
+     * キーに対応するスレッドで実行を待っているタスクの数
+     */
+    public int getQueueDepth(Object key) {
+        return stripeFor(key).getQueueDepth();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        var depth = 0;
+        for (var stripe : stripes) {
+            depth += stripe.getQueueDepth();
+        }
+        return depth;
+    }
+
+    @Override
+    public long getExecutedCount() {
+        var count = 0L;
+        for (var stripe : stripes) {
+            count += stripe.getExecutedCount();
+        }
+        return count;
+    }
+
+    @Override
+    public Duration getAverageLatency() {
+        var count = 0L;
+        var total = 0L;
+        for (var stripe : stripes) {
+            var executed = stripe.getExecutedCount();
+            count += executed;
+            total += stripe.getAverageLatency().toNanos() * executed;
+        }
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(total / count);
+    }
+
+    @Override
+    public Duration getMaxLatency() {
+        var max = Duration.ZERO;
+        for (var stripe : stripes) {
+            var latency = stripe.getMaxLatency();
+            if (max.compareTo(latency) < 0) max = latency;
+        }
+        return max;
+    }
+
+    @Override
+    public void close() {
+        for (var stripe : stripes) {
+            stripe.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "%s[stripes=%d, queued=%d, executed=%d, avgLatency=%s, maxLatency=%s]".formatted(
+                name, stripes.length, getQueueDepth(), getExecutedCount(), getAverageLatency(), getMaxLatency());
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.reactive;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * 購読者が登録したタイプごとに{@link BufferedPublisher}を持つパブリッシャー。
+ * <p>
+ *     アイテムは実際のクラスに代入できるタイプのパブリッシャーにだけ発行されるため、
+ *     購読者は登録したタイプのアイテムだけを受け取る。
+ *     具象クラスを登録した購読者だけがいるときは、具象クラスごとに一つのキューを持つことになる。
+ * </p>
+ * <p>
+ *     アイテムのクラスから発行先のパブリッシャーを解決した結果はキャッシュされ、
+ *     新しいタイプが登録されたときに破棄される。
+ * </p>
+ * @param <T> 発行するタイプ
+ */
+public class TypedPublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+
+    private final String name;
+
+    private final Class<T> rootType;
+
+    private final Executor executor;
+
+    private final int bufferCapacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final Duration blockTimeout;
+
+    /** 登録されたタイプごとのパブリッシャー(lockで保護する)*/
+    private final Map<Class<?>, BufferedPublisher<Object>> publishers = new LinkedHashMap<>();
+
+    /** アイテムのクラスごとの発行先(コピーオンライト)*/
+    private volatile Map<Class<?>, List<BufferedPublisher<Object>>> routes = Map.of();
+
+    private final Object lock = new Object();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param name ログに出力するパブリッシャーの名前
+     * @param rootType 発行するタイプ
+     * @param executor 購読者への配送を実行するExecutor
+     * @param bufferCapacity 購読者ごとのバッファの大きさ
+     * @param overflowPolicy バッファが溢れたときのポリシー
+     * @param blockTimeout {@link OverflowPolicy#BLOCK}のときに空きを待機する最大時間
+     */
+    public TypedPublisher(
+            String name,
+            Class<T> rootType,
+            Executor executor,
+            int bufferCapacity,
+            OverflowPolicy overflowPolicy,
+            Duration blockTimeout
+    ) {
+        this.name = Objects.requireNonNull(name);
+        this.rootType = Objects.requireNonNull(rootType);
+        this.executor = Objects.requireNonNull(executor);
+        this.bufferCapacity = bufferCapacity;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+        this.blockTimeout = Objects.requireNonNull(blockTimeout);
+    }
+
+    /**
+     * 購読を開始する。
+     * <p>
+     *     購読者が{@link DownCastSubscriber}のときはダウンキャストするタイプを、
+     *     それ以外のときは全てのアイテムを購読する。
+     * </p>
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (subscriber instanceof DownCastSubscriber<?, ?> downCast && rootType.isAssignableFrom(downCast.getType())) {
+            subscribe((Class<? extends T>) downCast.getType(), subscriber);
+        } else {
+            subscribe(rootType, subscriber);
+        }
+    }
+
+    /**
+     * 指定したタイプのアイテムだけを購読する。
+     * @param type 購読するタイプ
+     * @param subscriber 購読者
+     * @param <R> 購読するタイプ
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends T> void subscribe(Class<R> type, Flow.Subscriber<? super R> subscriber) {
+        Objects.requireNonNull(type);
+        Objects.requireNonNull(subscriber);
+
+        BufferedPublisher<Object> publisher;
+        synchronized (lock) {
+            publisher = publishers.get(type);
+            if (publisher == null) {
+                publisher = new BufferedPublisher<>(
+                        name + "[" + type.getSimpleName() + "]",
+                        executor,
+                        bufferCapacity,
+                        overflowPolicy,
+                        blockTimeout
+                );
+                if (closed) publisher.close();
+                publishers.put(type, publisher);
+
+                // 発行先が変わるので解決済みの経路を破棄する
+                routes = Map.of();
+            }
+        }
+
+        publisher.subscribe((Flow.Subscriber<Object>) subscriber);
+    }
+
+    /**
+     * アイテムをそのクラスを購読している購読者に発行する。
+     * @param item 発行するアイテム
+     * @return アイテムを破棄した購読者の数
+     * @throws IllegalStateException パブリッシャーが閉じられているとき
+     */
+    public int offer(T item) {
+        Objects.requireNonNull(item);
+        if (closed) {
+            throw new IllegalStateException(name + " is closed");
+        }
+
+        var targets = routes.get(item.getClass());
+        if (targets == null) {
+            targets = resolve(item.getClass());
+        }
+
+        var dropped = 0;
+        for (var publisher : targets) {
+            dropped += publisher.offer(item);
+        }
+        return dropped;
+    }
+
+    private List<BufferedPublisher<Object>> resolve(Class<?> itemClass) {
+        synchronized (lock) {
+            var targets = new ArrayList<BufferedPublisher<Object>>();
+            for (var entry : publishers.entrySet()) {
+                if (entry.getKey().isAssignableFrom(itemClass)) {
+                    targets.add(entry.getValue());
+                }
+            }
+
+            var resolved = List.copyOf(targets);
+            var copy = new HashMap<>(routes);
+            copy.put(itemClass, resolved);
+            routes = copy;
+            return resolved;
+        }
+    }
+
+    /**
+     * タイプごとの購読者の数を返す。
+     */
+    public Map<Class<?>, Integer> getNumberOfSubscribers() {
+        synchronized (lock) {
+            var counts = new LinkedHashMap<Class<?>, Integer>();
+            publishers.forEach((type, publisher) -> counts.put(type, publisher.getNumberOfSubscribers()));
+            return counts;
+        }
+    }
+
+    /**
+     * 購読を解除した購読者の分も含めて破棄したアイテムの総数を返す。
+     */
+    public long getTotalDroppedCount() {
+        synchronized (lock) {
+            var total = 0L;
+            for (var publisher : publishers.values()) {
+                total += publisher.getTotalDroppedCount();
+            }
+            return total;
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            publishers.values().forEach(BufferedPublisher::close);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.view.chat;
+
+import atlantafx.base.theme.Styles;
+import com.github.k7t3.tcv.app.chat.ChatDataViewModel;
+import com.github.k7t3.tcv.app.image.LazyImage;
+import com.github.k7t3.tcv.view.core.JavaFXHelper;
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Insets;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Paint;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
+import org.fxmisc.flowless.Cell;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * チャットメッセージを{@link Canvas}に描画するセル。
+ * <p>
+ *     {@link ChatDataCell}と同じ内容を表示するが、メッセージを構成するノードは生成しない。
+ *     改行位置は{@link ChatRowLayouter}で計算し、{@link ChatCellContext}にキャッシュされたものを使う。
+ *     シーングラフに含まれるのはセルごとに一つのキャンバスだけになるため、
+ *     チャットの数やイメージの数が増えてもCSSとレイアウトの処理は増えない。
+ * </p>
+ * <p>
+ *     背景や余白はセル自身に{@link ChatDataCell}と同じスタイルクラスを適用する。
+ *     文字列の描色はCSSで決まるため、描画しない参照用の{@link Text}から取得する。
+ *     ツールチップとコンテキストメニューはレイアウトの座標でイメージを判定して表示する。
+ * </p>
+ */
+public class ChatCanvasCell extends Region implements Cell<ChatDataViewModel, Region> {
+
+    private final boolean mergedChat;
+
+    private final ChatCellContext context;
+
+    private final InvalidationListener contextListener = ob -> invalidateLayout();
+
+    /** 読み込みが終わっていないイメージの読み込みを待つリスナ*/
+    private final InvalidationListener imageListener = ob -> draw();
+
+    private final Canvas canvas = new Canvas();
+
+    // CSSで決まる描色を参照するためのノード
+    private final Text messageFill = createFillReference(ChatDataCell.CHAT_STYLE_CLASS);
+    private final Text subsFill = createFillReference(ChatDataCell.CHAT_STYLE_SUBS_CLASS);
+    private final Text mutedFill = createFillReference(ChatDataCell.CHAT_STYLE_CLASS, Styles.TEXT_MUTED);
+
+    private final List<LazyImage> loadingImages = new ArrayList<>();
+
+    private ChatDataViewModel viewModel;
+
+    /** 最後に参照したレイアウトとその幅*/
+    private ChatRowLayout layout;
+    private double layoutWidth = -1;
+
+    private ContextMenu contextMenu;
+
+    private Tooltip tooltip;
+
+    private boolean tooltipInstalled;
+
+    public static ChatCanvasCell of(ChatCellContext context, ChatDataViewModel viewModel) {
+        var cell = new ChatCanvasCell(context, false);
+        cell.updateItem(viewModel);
+        return cell;
+    }
+
+    public static ChatCanvasCell merged(ChatCellContext context, ChatDataViewModel viewModel) {
+        var cell = new ChatCanvasCell(context, true);
+        cell.updateItem(viewModel);
+        return cell;
+    }
+
+    private ChatCanvasCell(ChatCellContext context, boolean mergedChat) {
+        this.context = context;
+        this.mergedChat = mergedChat;
+
+        getStyleClass().add(ChatDataCell.STYLE_CLASS);
+        setPadding(new Insets(4));
+
+        canvas.setManaged(false);
+        getChildren().addAll(canvas, messageFill, subsFill, mutedFill);
+
+        // テーマが変わったときは描き直す
+        InvalidationListener fillListener = ob -> draw();
+        messageFill.fillProperty().addListener(fillListener);
+        subsFill.fillProperty().addListener(fillListener);
+        mutedFill.fillProperty().addListener(fillListener);
+
+        // エモートのツールチップ
+        addEventHandler(MouseEvent.MOUSE_MOVED, e -> updateTooltip(e.getX(), e.getY()));
+
+        // コンテキストメニュー
+        setOnContextMenuRequested(e -> {
+            if (viewModel == null || !getLayout().interactive()) return;
+
+            if (contextMenu == null) {
+                contextMenu = new ChatDataContextMenu(viewModel);
+            }
+
+            if (contextMenu.isShowing())
+                contextMenu.hide();
+            else
+                contextMenu.show(this, e.getScreenX(), e.getScreenY());
+        });
+
+        context.addListener(contextListener);
+    }
+
+    private static Text createFillReference(String... styleClasses) {
+        var text = new Text();
+        text.getStyleClass().setAll(styleClasses);
+        text.setManaged(false);
+        text.setVisible(false);
+        return text;
+    }
+
+    @Override
+    public Region getNode() {
+        return this;
+    }
+
+    @Override
+    public boolean isReusable() {
+        return true;
+    }
+
+    @Override
+    public void updateItem(ChatDataViewModel item) {
+        release();
+        this.viewModel = item;
+
+        JavaFXHelper.updatePseudoClass(this, ChatDataCell.PSEUDO_SYSTEM, item.isSystem());
+        JavaFXHelper.updatePseudoClass(this, ChatDataCell.PSEUDO_SUBSCRIBE, item.isSubs());
+        JavaFXHelper.updatePseudoClass(this, ChatDataCell.PSEUDO_CHEER, item.isCheered());
+
+        invalidateLayout();
+    }
+
+    @Override
+    public void reset() {
+        release();
+        viewModel = null;
+        layout = null;
+        canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    @Override
+    public void dispose() {
+        reset();
+        context.removeListener(contextListener);
+    }
+
+    private void release() {
+        for (var image : loadingImages) {
+            image.valueProperty().removeListener(imageListener);
+            image.release();
+        }
+        loadingImages.clear();
+
+        if (tooltipInstalled) {
+            Tooltip.uninstall(this, tooltip);
+            tooltipInstalled = false;
+        }
+
+        if (contextMenu != null) {
+            contextMenu.hide();
+            contextMenu = null;
+        }
+    }
+
+    private void invalidateLayout() {
+        layout = null;
+        requestLayout();
+    }
+
+    /**
+     * 余白を除いた幅のレイアウトを返す
+     */
+    private ChatRowLayout getLayout(double contentWidth) {
+        if (layout == null || layoutWidth != contentWidth) {
+            layout = context.getLayout(viewModel, mergedChat, contentWidth);
+            layoutWidth = contentWidth;
+        }
+        return layout;
+    }
+
+    private ChatRowLayout getLayout() {
+        return getLayout(getWidth() - snappedLeftInset() - snappedRightInset());
+    }
+
+    private void draw() {
+        var width = canvas.getWidth();
+        var height = canvas.getHeight();
+
+        var gc = canvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+
+        if (viewModel == null || width <= 0 || height <= 0) return;
+
+        var left = snappedLeftInset();
+        var top = snappedTopInset();
+        var rowLayout = getLayout();
+
+        gc.setTextAlign(TextAlignment.LEFT);
+        gc.setTextBaseline(VPos.BASELINE);
+        for (var text : rowLayout.texts()) {
+            gc.setFont(text.font());
+            gc.setFill(getFill(text.style()));
+            gc.fillText(text.text(), left + text.x(), top + text.baseline());
+        }
+
+        for (var run : rowLayout.images()) {
+            var image = run.image().getValue();
+
+            // 読み込みを要求して、終わったときに描き直す
+            if (image == null) {
+                if (!loadingImages.contains(run.image())) {
+                    run.image().valueProperty().addListener(imageListener);
+                    run.image().request();
+                    loadingImages.add(run.image());
+                }
+                continue;
+            }
+
+            // 縦横比を保ってイメージの大きさに収める
+            var size = run.size();
+            var scale = Math.min(size / image.getWidth(), size / image.getHeight());
+            var imageWidth = image.getWidth() * scale;
+            var imageHeight = image.getHeight() * scale;
+            var x = left + run.x() + (size - imageWidth) / 2;
+            var y = top + run.y() + (size - imageHeight) / 2;
+            gc.drawImage(image, x, y, imageWidth, imageHeight);
+        }
+    }
+
+    private Paint getFill(ChatRowLayout.Style style) {
+        return switch (style) {
+            case NAME -> viewModel.getColor();
+            case MESSAGE -> messageFill.getFill();
+            case SUBS -> subsFill.getFill();
+            case MUTED -> mutedFill.getFill();
+        };
+    }
+
+    private void updateTooltip(double x, double y) {
+        if (viewModel == null) return;
+
+        var run = getLayout().findImage(x - snappedLeftInset(), y - snappedTopInset());
+        String name = run == null ? null : run.name();
+
+        if (name == null) {
+            if (tooltipInstalled) {
+                Tooltip.uninstall(this, tooltip);
+                tooltipInstalled = false;
+            }
+            return;
+        }
+
+        // ツールチップは最初にマウスが重なったときに生成する
+        if (tooltip == null) {
+            tooltip = new Tooltip();
+        }
+        tooltip.setText(name);
+        if (!tooltipInstalled) {
+            Tooltip.install(this, tooltip);
+            tooltipInstalled = true;
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        canvas.setWidth(getWidth());
+        canvas.setHeight(getHeight());
+        draw();
+    }
+
+    @Override
+    protected double computeMinWidth(double height) {
+        return Label.USE_COMPUTED_SIZE;
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return Label.USE_COMPUTED_SIZE;
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        if (viewModel == null) return 0;
+
+        var left = snappedLeftInset();
+        var right = snappedRightInset();
+        var availableWidth = width < 0 ? getWidth() : width;
+        var rowLayout = getLayout(availableWidth - left - right);
+        return snappedTopInset() + snapSizeY(rowLayout.height()) + snappedBottomInset();
+    }
+
+}
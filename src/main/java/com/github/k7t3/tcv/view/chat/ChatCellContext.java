@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.k7t3.tcv.view.chat;
+
+import com.github.k7t3.tcv.app.chat.ChatDataViewModel;
+import com.github.k7t3.tcv.app.chat.ChatRoomViewModel;
+import com.github.k7t3.tcv.domain.chat.ChatData;
+import javafx.beans.InvalidationListener;
+import javafx.beans.value.ObservableValue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * チャットルームのすべてのセルで共有する表示設定。
+ * <p>
+ *     フォントやユーザー名、バッジの表示をチャットルームから一度だけ監視し、
+ *     各セルはこのインスタンスに一つだけリスナを登録する。
+ *     セルを構成するノードごとにバインディングを生成しない。
+ * </p>
+ * <p>
+ *     チャットルームのプロパティは監視しているセルがあるあいだだけ参照される。
+ * </p>
+ * <p>
+ *     キャンバスに描画するセルのレイアウトと、ノードで構成するセルの高さは
+ *     チャット、幅、フォントごとにここでキャッシュする。
+ *     スクロールで表示されなくなったチャットが再び表示されたときに改行位置を計算し直さない。
+ * </p>
+ */
+public class ChatCellContext {
+
+    /** キャッシュするレイアウトの数*/
+    private static final int MAX_LAYOUTS = 1024;
+
+    private final ObservableValue<ChatFont> font;
+
+    private final ObservableValue<Boolean> showName;
+
+    private final ObservableValue<Boolean> showBadges;
+
+    private final Map<LayoutKey, ChatRowLayout> layouts = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LayoutKey, ChatRowLayout> eldest) {
+            return MAX_LAYOUTS < size();
+        }
+    };
+
+    private final ChatRowHeightCache heights;
+
+    /** キャッシュしているレイアウトと高さのフォント*/
+    private ChatFont layoutFont;
+
+    public ChatCellContext(ChatRoomViewModel chatRoom) {
+        this.font = chatRoom.fontProperty().orElse(ChatFont.getDefault());
+        this.showName = chatRoom.showNameProperty().orElse(true);
+        this.showBadges = chatRoom.showBadgesProperty().orElse(true);
+        this.heights = new ChatRowHeightCache(chatRoom::refreshChats);
+    }
+
+    void addListener(InvalidationListener listener) {
+        font.addListener(listener);
+        showName.addListener(listener);
+        showBadges.addListener(listener);
+    }
+
+    void removeListener(InvalidationListener listener) {
+        font.removeListener(listener);
+        showName.removeListener(listener);
+        showBadges.removeListener(listener);
+    }
+
+    public ChatFont getFont() {
+        return font.getValue();
+    }
+
+    public boolean isShowName() {
+        return showName.getValue();
+    }
+
+    public boolean isShowBadges() {
+        return showBadges.getValue();
+    }
+
+    /**
+     * キャンバスに描画するチャットのレイアウトを返す。
+     * キャッシュされていないときは計算してキャッシュする。
+     *
+     * @param item チャット
+     * @param mergedChat マージチャットのセルか
+     * @param width セルの余白を除いた幅
+     * @return レイアウト
+     */
+    ChatRowLayout getLayout(ChatDataViewModel item, boolean mergedChat, double width) {
+        var chatFont = validateFont();
+
+        var showName = isShowName();
+        var showBadges = isShowBadges();
+        var key = new LayoutKey(identity(item), width, state(item, showName, showBadges, mergedChat));
+
+        var layout = layouts.get(key);
+        if (layout == null) {
+            layout = ChatRowLayouter.layout(item, chatFont, showName, showBadges, mergedChat, width);
+            layouts.put(key, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * キャッシュされているセルの高さを返す。
+     * <p>
+     *     サイズ変更中は以前の幅で計測した高さを返し、
+     *     変更が落ち着いたあとにチャットルームでセルを作り直させて計測し直させる。
+     * </p>
+     *
+     * @param item チャット
+     * @param mergedChat マージチャットのセルか
+     * @param width セルの幅
+     * @return 高さ、計測が必要なときは{@link Double#NaN}
+     */
+    double getCachedHeight(ChatDataViewModel item, boolean mergedChat, double width) {
+        validateFont();
+        var state = state(item, isShowName(), isShowBadges(), mergedChat);
+        return heights.get(identity(item), state, width, item);
+    }
+
+    /**
+     * 計測したセルの高さをキャッシュする
+     */
+    void putHeight(ChatDataViewModel item, boolean mergedChat, double width, double height) {
+        var state = state(item, isShowName(), isShowBadges(), mergedChat);
+        heights.put(identity(item), state, width, height);
+    }
+
+    /**
+     * フォントが変わったときはすべてのレイアウトと高さを破棄する
+     */
+    private ChatFont validateFont() {
+        var chatFont = getFont();
+        if (!chatFont.equals(layoutFont)) {
+            layouts.clear();
+            heights.clear();
+            layoutFont = chatFont;
+        }
+        return chatFont;
+    }
+
+    private static Object identity(ChatDataViewModel item) {
+        var msgId = item.getChatData().msgId();
+        // システムメッセージはすべて同じIDのためチャットそのもので識別する
+        return msgId == null || ChatData.SYSTEM_MESSAGE_ID.equals(msgId) ? item : msgId;
+    }
+
+    /**
+     * レイアウトに影響する状態をビットフラグにまとめる
+     */
+    private static int state(ChatDataViewModel item, boolean showName, boolean showBadges, boolean mergedChat) {
+        var state = 0;
+        if (item.isDeleted()) state |= 1;
+        if (item.isHidden()) state |= 1 << 1;
+        if (item.isSystem()) state |= 1 << 2;
+        if (item.isSubs()) state |= 1 << 3;
+        if (item.isCheered()) state |= 1 << 4;
+        if (showName) state |= 1 << 5;
+        if (showBadges) state |= 1 << 6;
+        if (mergedChat) state |= 1 << 7;
+        return state;
+    }
+
+    private record LayoutKey(Object message, double width, int state) {
+    }
+
+}
@@ -38,11 +38,11 @@ import javafx.scene.input.DataFormat;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
-import javafx.scene.layout.Priority;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ResourceBundle;
@@ -70,26 +70,24 @@ public class ChatContainerView implements FxmlView<ChatRoomContainerViewModel>,
     @FXML
     private BorderPane container;
 
-    private GridPane chatContainer;
+    /** 表示領域に入っているチャットルームのビューだけを生成して並べるコンテナ*/
+    private ChatRoomColumnPane chatContainer;
 
     @InjectViewModel
     private ChatRoomContainerViewModel viewModel;
 
-    private Map<ChatRoomViewModel, Node> items;
-
     private Map<ChatRoomViewModel, FloatableStage> floatableStages;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        items = new HashMap<>();
+        chatContainer = new ChatRoomColumnPane(this::createView);
+        container.setCenter(chatContainer);
+
         viewModel.getChatRoomList().addListener(this::chatChanged);
 
         floatableStages = new HashMap<>();
         viewModel.getFloatingChatRoomList().addListener(this::floatableChatChanged);
 
-        chatContainer = new GridPane();
-        container.setCenter(chatContainer);
-
         selectingCountLabel.textProperty().bind(
                 viewModel.selectingCountProperty().asString(Resources.getString("container.selecting.count.format"))
         );
@@ -140,6 +138,7 @@ public class ChatContainerView implements FxmlView<ChatRoomContainerViewModel>,
 
             stage = behind.getFloatableStage();
             stage.setContent(view);
+            ChatRoomViewUtils.bindChatRoomVisibility(view, mergedChatRoom);
 
         }
 
@@ -156,6 +155,7 @@ public class ChatContainerView implements FxmlView<ChatRoomContainerViewModel>,
 
             stage = behind.getFloatableStage();
             stage.setContent(view);
+            ChatRoomViewUtils.bindChatRoomVisibility(view, chatRoom);
 
         }
 
@@ -191,13 +191,30 @@ public class ChatContainerView implements FxmlView<ChatRoomContainerViewModel>,
     }
 
     private void onRemoved(ChatRoomViewModel chat) {
-        var node = items.get(chat);
-        if (node == null) return;
-
-        chatContainer.getChildren().remove(node);
+        chatContainer.getChatRooms().remove(chat);
     }
 
     private void onAdded(ChatRoomViewModel chat) {
+        if (!(chat instanceof SingleChatRoomViewModel) && !(chat instanceof MergedChatRoomViewModel)) {
+            return;
+        }
+
+        // ビューが生成されるまでは表示されていないチャットルームとして扱う
+        chat.visibleProperty().unbind();
+        chat.setVisible(false);
+
+        if (chat instanceof SingleChatRoomViewModel single) {
+            single.joinChatAsync();
+        }
+
+        chatContainer.getChatRooms().add(chat);
+    }
+
+    /**
+     * チャットルームが最初に表示領域に入ったときにビューを生成する
+     */
+    private Node createView(ChatRoomViewModel chat) {
+        Node node;
 
         // 通常のチャットビュー
         if (chat instanceof SingleChatRoomViewModel c2) {
@@ -205,22 +222,7 @@ public class ChatContainerView implements FxmlView<ChatRoomContainerViewModel>,
                     .viewModel(c2)
                     .resourceBundle(Resources.getResourceBundle())
                     .load();
-
-            var node = tuple.getView();
-
-            var dragController = new DragController();
-            dragController.installDragEvents(node);
-
-            var columnCount = chatContainer.getColumnCount();
-            GridPane.setFillWidth(node, true);
-            GridPane.setFillHeight(node, true);
-            GridPane.setHgrow(node, Priority.ALWAYS);
-            GridPane.setVgrow(node, Priority.ALWAYS);
-            chatContainer.addColumn(columnCount, node);
-
-            tuple.getViewModel().joinChatAsync();
-
-            items.put(chat, node);
+            node = tuple.getView();
         }
 
         // マージされたチャットビュー
@@ -229,28 +231,35 @@ public class ChatContainerView implements FxmlView<ChatRoomContainerViewModel>,
                     .viewModel(merged)
                     .resourceBundle(Resources.getResourceBundle())
                     .load();
+            node = tuple.getView();
+        }
 
-            var node = tuple.getView();
+        else {
+            throw new IllegalArgumentException("Unexpected chat room: " + chat);
+        }
 
-            var dragController = new DragController();
-            dragController.installDragEvents(node);
+        ChatRoomViewUtils.bindChatRoomVisibility(node, chat);
 
-            var columnCount = chatContainer.getColumnCount();
-            GridPane.setFillWidth(node, true);
-            GridPane.setFillHeight(node, true);
-            GridPane.setHgrow(node, Priority.ALWAYS);
-            GridPane.setVgrow(node, Priority.ALWAYS);
-            chatContainer.addColumn(columnCount, node);
+        var dragController = new DragController(chatContainer, chat);
+        dragController.installDragEvents(node);
 
-            items.put(chat, node);
-        }
+        return node;
     }
 
     private static class DragController {
         private static final DataFormat MOVE_DATA = new DataFormat("application/chat-view");
 
+        private final ChatRoomColumnPane columnPane;
+
+        private final ChatRoomViewModel chatRoom;
+
         private Timeline dragOverAnimation;
 
+        private DragController(ChatRoomColumnPane columnPane, ChatRoomViewModel chatRoom) {
+            this.columnPane = columnPane;
+            this.chatRoom = chatRoom;
+        }
+
         public void installDragEvents(Node node) {
             // ドラッグの開始
             node.setOnDragDetected(e -> {
@@ -261,7 +270,7 @@ public class ChatContainerView implements FxmlView<ChatRoomContainerViewModel>,
                 var dragBoard = node.startDragAndDrop(TransferMode.MOVE);
 
                 // 現在のカラム位置を埋め込む
-                var column = GridPane.getColumnIndex(node);
+                var column = columnPane.getChatRooms().indexOf(chatRoom);
                 dragBoard.setContent(Map.of(MOVE_DATA, column));
 
                 var view = node.snapshot(null, null);
@@ -307,13 +316,16 @@ public class ChatContainerView implements FxmlView<ChatRoomContainerViewModel>,
                 var fromColumn = (int) dragBoard.getContent(MOVE_DATA);
 
                 // 現在のカラム位置
-                var column = GridPane.getColumnIndex(node);
-
-                // カラムを移動する
-                GridPane.setColumnIndex(node, fromColumn);
-
-                // ドラッグボードの値を更新
-                dragBoard.setContent(Map.of(MOVE_DATA, column));
+                var chatRooms = columnPane.getChatRooms();
+                var column = chatRooms.indexOf(chatRoom);
+
+                // カラムを入れ替える
+                // 入れ替えたリストで一度に置き換え、ビューが破棄されないようにする
+                if (0 <= fromColumn && fromColumn < chatRooms.size() && 0 <= column && fromColumn != column) {
+                    var swapped = new ArrayList<>(chatRooms);
+                    Collections.swap(swapped, fromColumn, column);
+                    chatRooms.setAll(swapped);
+                }
 
                 e.setDropCompleted(true);
 
@@ -321,20 +333,8 @@ public class ChatContainerView implements FxmlView<ChatRoomContainerViewModel>,
 
             });
 
-            // ドロップが正常に終了した
-            node.setOnDragDone(e -> {
-
-                var dragBoard = e.getDragboard();
-
-                // ドロップ先のカラムを取得(DragBoardを更新してくれているはず)
-                var toColumn = (int) dragBoard.getContent(MOVE_DATA);
-
-                // ドラッグボードをクリア
-                dragBoard.clear();
-
-                GridPane.setColumnIndex(node, toColumn);
-
-            });
+            // ドロップが終了した
+            node.setOnDragDone(e -> e.getDragboard().clear());
         }
     }
 
@@ -23,91 +23,140 @@ import com.github.k7t3.tcv.app.image.LazyImage;
 import com.github.k7t3.tcv.view.image.LazyImageView;
 import com.github.k7t3.tcv.domain.chat.ChatMessageFragment;
 import com.github.k7t3.tcv.view.core.JavaFXHelper;
-import javafx.beans.binding.Bindings;
-import javafx.beans.property.BooleanProperty;
-import javafx.beans.value.ObservableValue;
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.*;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
-import javafx.scene.control.ContentDisplay;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.Tooltip;
 import javafx.scene.layout.Pane;
+import javafx.scene.paint.Paint;
+import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
 import org.fxmisc.flowless.Cell;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * チャットメッセージを表示するセル。
+ * <p>
+ *     セルは再利用され、表示するチャットが変わるたびに{@link #updateItem(ChatDataViewModel)}が呼ばれる。
+ *     メッセージを構成する{@link Text}と{@link LazyImageView}はセルの中でプールして使いまわす。
+ * </p>
+ * <p>
+ *     フォントやイメージのサイズ、ユーザー名とバッジの表示はセル単位のプロパティで保持し、
+ *     {@link ChatCellContext}の変更を一つのリスナで受けて更新する。
+ *     ノードはセル単位のプロパティにバインドするため、フラグメントごとのバインディングは生成しない。
+ * </p>
+ * <p>
+ *     セルの高さは{@link ChatCellContext}でチャットと幅ごとにキャッシュする。
+ * </p>
+ */
 public class ChatDataCell extends TextFlow implements Cell<ChatDataViewModel, TextFlow> {
 
-    private static final double BADGE_IMAGE_WIDTH = 18;
-    private static final double BADGE_IMAGE_HEIGHT = 18;
+    static final double BADGE_IMAGE_SIZE = 18;
 
-    private static final double EMOTE_IMAGE_WIDTH = 24;
-    private static final double EMOTE_IMAGE_HEIGHT = 24;
+    static final double EMOTE_IMAGE_SIZE = 24;
 
-    private static final double EMOJI_IMAGE_WIDTH = 20;
-    private static final double EMOJI_IMAGE_HEIGHT = 20;
+    static final double EMOJI_IMAGE_SIZE = 20;
 
-    private static final String STYLE_CLASS = "chat-data-cell";
+    static final String STYLE_CLASS = "chat-data-cell";
     private static final String IMAGE_STYLE_VIEW = "chat-image-view";
     private static final String NAME_STYLE_CLASS = "chat-name-label";
-    private static final String CHAT_STYLE_CLASS = "chat-text";
-    private static final String CHAT_STYLE_SUBS_CLASS = "chat-subs-text";
+    static final String CHAT_STYLE_CLASS = "chat-text";
+    static final String CHAT_STYLE_SUBS_CLASS = "chat-subs-text";
+
+    static final String PSEUDO_SUBSCRIBE = "subscribe";
+    static final String PSEUDO_SYSTEM = "system";
+    static final String PSEUDO_CHEER = "cheer";
 
-    private static final String PSEUDO_SUBSCRIBE = "subscribe";
-    private static final String PSEUDO_SYSTEM = "system";
-    private static final String PSEUDO_CHEER = "cheer";
+    /** 遅延して生成したツールチップを保持するノードのプロパティキー*/
+    private static final String TOOLTIP_KEY = ChatDataCell.class.getName() + ".tooltip";
 
     private final boolean mergedChat;
 
-    private final BooleanProperty visibleBadges;
-    private final BooleanProperty visibleName;
-    private final ObservableValue<ChatFont> font;
-    private final BooleanProperty deleted;
-    private final BooleanProperty hidden;
+    private final ChatCellContext context;
 
-    private final ChatDataViewModel viewModel;
+    private final InvalidationListener contextListener = ob -> applyContext();
 
-    private ContextMenu contextMenu;
+    // セル単位で保持する表示設定
+    private final ObjectProperty<Font> font = new SimpleObjectProperty<>();
+    private final ObjectProperty<Font> boldFont = new SimpleObjectProperty<>();
+    private final DoubleProperty badgeSize = new SimpleDoubleProperty(BADGE_IMAGE_SIZE);
+    private final DoubleProperty emoteSize = new SimpleDoubleProperty(EMOTE_IMAGE_SIZE);
+    private final DoubleProperty emojiSize = new SimpleDoubleProperty(EMOJI_IMAGE_SIZE);
+    private final BooleanProperty visibleName = new SimpleBooleanProperty(true);
+    private final BooleanProperty visibleBadges = new SimpleBooleanProperty(true);
+    private final ObjectProperty<Paint> nameFill = new SimpleObjectProperty<>();
+
+    private final Text userNameText = new Text();
+
+    private final Text colonText = new Text(": ");
+
+    /** システムメッセージの先頭の余白*/
+    private Pane systemSpacer;
 
-    /** メッセージを構成する、非表示、削除した際に取り除くノード*/
-    private List<Node> deletableNodes;
+    // 使用中のノードと再利用を待つノード
+    private final List<Text> usedTexts = new ArrayList<>();
+    private final List<LazyImageView> usedImages = new ArrayList<>();
+    private final ArrayDeque<Text> textPool = new ArrayDeque<>();
+    private final ArrayDeque<LazyImageView> imagePool = new ArrayDeque<>();
 
-    public static ChatDataCell of(ChatDataViewModel viewModel) {
-        return new ChatDataCell(viewModel, false);
+    private ChatDataViewModel viewModel;
+
+    /** コンテキストメニューを表示できるチャットか*/
+    private boolean contextMenuEnabled;
+
+    private ContextMenu contextMenu;
+
+    public static ChatDataCell of(ChatCellContext context, ChatDataViewModel viewModel) {
+        var cell = new ChatDataCell(context, false);
+        cell.updateItem(viewModel);
+        return cell;
     }
 
-    public static ChatDataCell merged(ChatDataViewModel viewModel) {
-        return new ChatDataCell(viewModel, true);
+    public static ChatDataCell merged(ChatCellContext context, ChatDataViewModel viewModel) {
+        var cell = new ChatDataCell(context, true);
+        cell.updateItem(viewModel);
+        return cell;
     }
 
-    private ChatDataCell(ChatDataViewModel viewModel, boolean mergedChat) {
-        this.viewModel = viewModel;
-        this.visibleBadges = viewModel.visibleBadgeProperty();
-        this.visibleName = viewModel.visibleNameProperty();
-        this.deleted = viewModel.deletedProperty();
-        this.hidden = viewModel.hiddenProperty();
-        this.font = viewModel.fontProperty().when(viewModel.fontProperty().isNotNull());
+    private ChatDataCell(ChatCellContext context, boolean mergedChat) {
+        this.context = context;
         this.mergedChat = mergedChat;
 
         getStyleClass().add(STYLE_CLASS);
-        
-        if (viewModel.isSystem()) {
-            JavaFXHelper.updatePseudoClass(this, PSEUDO_SYSTEM, true);
-        }
-        
-        if (viewModel.isSubs()) {
-            JavaFXHelper.updatePseudoClass(this, PSEUDO_SUBSCRIBE, true);
-        }
+        setPadding(new Insets(4));
 
-        if (viewModel.isCheered()) {
-            JavaFXHelper.updatePseudoClass(this, PSEUDO_CHEER, true);
+        userNameText.getStyleClass().addAll(NAME_STYLE_CLASS, Styles.TEXT_BOLDER);
+        colonText.getStyleClass().add(NAME_STYLE_CLASS);
+        for (var text : List.of(userNameText, colonText)) {
+            text.visibleProperty().bind(visibleName);
+            text.managedProperty().bind(visibleName);
+            text.fillProperty().bind(nameFill);
+            text.fontProperty().bind(font);
         }
 
-        initialize();
+        // コンテキストメニュー
+        setOnContextMenuRequested(e -> {
+            if (!contextMenuEnabled) return;
+
+            if (contextMenu == null) {
+                contextMenu = new ChatDataContextMenu(viewModel);
+            }
+
+            if (contextMenu.isShowing())
+                contextMenu.hide();
+            else
+                contextMenu.show(this, e.getScreenX(), e.getScreenY());
+        });
+
+        applyContext();
+        context.addListener(contextListener);
     }
 
     @Override
@@ -115,21 +164,99 @@ public class ChatDataCell extends TextFlow implements Cell<ChatDataViewModel, Te
         return this;
     }
 
-    private void initialize() {
+    @Override
+    public boolean isReusable() {
+        return true;
+    }
 
-        setPadding(new Insets(4));
+    @Override
+    public void updateItem(ChatDataViewModel item) {
+        release();
+        this.viewModel = item;
+
+        JavaFXHelper.updatePseudoClass(this, PSEUDO_SYSTEM, item.isSystem());
+        JavaFXHelper.updatePseudoClass(this, PSEUDO_SUBSCRIBE, item.isSubs());
+        JavaFXHelper.updatePseudoClass(this, PSEUDO_CHEER, item.isCheered());
+
+        var nodes = new ArrayList<Node>();
+        build(nodes);
+        getChildren().setAll(nodes);
+    }
+
+    @Override
+    public void reset() {
+        getChildren().clear();
+        release();
+        viewModel = null;
+    }
+
+    @Override
+    public void dispose() {
+        reset();
+        context.removeListener(contextListener);
+    }
+
+    /**
+     * 表示設定をセル単位のプロパティに反映する
+     */
+    private void applyContext() {
+        var chatFont = context.getFont();
+        font.set(chatFont.getFont());
+        boldFont.set(chatFont.getBoldFont());
+
+        var scale = chatFont.getFontScale();
+        badgeSize.set(BADGE_IMAGE_SIZE * scale);
+        emoteSize.set(EMOTE_IMAGE_SIZE * scale);
+        emojiSize.set(EMOJI_IMAGE_SIZE * scale);
+
+        visibleName.set(context.isShowName());
+        visibleBadges.set(context.isShowBadges());
+    }
+
+    /**
+     * 表示中のノードをプールに戻す
+     */
+    private void release() {
+        for (var text : usedTexts) {
+            text.setText(null);
+            textPool.push(text);
+        }
+        usedTexts.clear();
+
+        for (var image : usedImages) {
+            // 共有されているイメージへのバインドを解除する
+            image.setLazyImage(null);
+            image.setOnMouseEntered(null);
+            if (image.getProperties().remove(TOOLTIP_KEY) instanceof Tooltip tooltip) {
+                Tooltip.uninstall(image, tooltip);
+            }
+            imagePool.push(image);
+        }
+        usedImages.clear();
+
+        if (contextMenu != null) {
+            contextMenu.hide();
+            contextMenu = null;
+        }
+        contextMenuEnabled = false;
+    }
+
+    private void build(List<Node> nodes) {
 
         // マージチャットのときはチャンネルのイメージを追加
         if (mergedChat) {
-            var channelIcon = createBadgeNode(viewModel.getChannel().getProfileImage());
-            channelIcon.managedProperty().unbind();
-            channelIcon.visibleProperty().unbind();
-            getChildren().add(channelIcon);
+            nodes.add(takeImage(viewModel.getChannel().getProfileImage(), badgeSize));
         }
 
         // システムメッセージ
         if (viewModel.isSystem()) {
-            initForSystemMessage();
+            if (systemSpacer == null) {
+                systemSpacer = new Pane();
+                systemSpacer.setPrefWidth(4);
+                systemSpacer.setPrefHeight(USE_COMPUTED_SIZE);
+            }
+            nodes.add(systemSpacer);
+            buildMessageNodes(nodes);
             return;
         }
 
@@ -144,10 +271,7 @@ public class ChatDataCell extends TextFlow implements Cell<ChatDataViewModel, Te
                 message += "\n";
             }
 
-            var subsText = new Text(message);
-            subsText.fontProperty().bind(font.map(ChatFont::getBoldFont));
-            subsText.getStyleClass().add(CHAT_STYLE_SUBS_CLASS);
-            getChildren().add(subsText);
+            nodes.add(takeText(message, boldFont, CHAT_STYLE_SUBS_CLASS));
 
             // サブスクライブメッセージが空のときは終わり
             if (isEmptyMessage) {
@@ -166,10 +290,7 @@ public class ChatDataCell extends TextFlow implements Cell<ChatDataViewModel, Te
                 message += "\n";
             }
 
-            var subsText = new Text(message);
-            subsText.fontProperty().bind(font.map(ChatFont::getBoldFont));
-            subsText.getStyleClass().add(CHAT_STYLE_SUBS_CLASS);
-            getChildren().add(subsText);
+            nodes.add(takeText(message, boldFont, CHAT_STYLE_SUBS_CLASS));
 
             // メッセージが空のときは終わり
             if (isEmptyMessage) {
@@ -177,175 +298,93 @@ public class ChatDataCell extends TextFlow implements Cell<ChatDataViewModel, Te
             }
         }
 
-
-        viewModel.getBadges().stream().map(this::createBadgeNode).forEach(getChildren()::add);
-
-        var userNameText = new Text();
-        userNameText.getStyleClass().addAll(NAME_STYLE_CLASS, Styles.TEXT_BOLDER);
-        userNameText.visibleProperty().bind(visibleName);
-        userNameText.managedProperty().bind(visibleName);
-        userNameText.fillProperty().bind(viewModel.colorProperty());
-        userNameText.fontProperty().bind(font.map(ChatFont::getFont));
-
-        var colon = new Text(": ");
-        colon.getStyleClass().add(NAME_STYLE_CLASS);
-        colon.visibleProperty().bind(visibleName);
-        colon.managedProperty().bind(visibleName);
-        colon.fillProperty().bind(viewModel.colorProperty());
-        colon.fontProperty().bind(font.map(ChatFont::getFont));
-
-        // ユーザー名と表示名が異なるとき
-        if (!viewModel.getDisplayName().equalsIgnoreCase(viewModel.getUserName())) {
-            userNameText.setText(" %s(%s)".formatted(viewModel.getDisplayName(), viewModel.getUserName()));
-        } else {
-            userNameText.setText(" %s".formatted(viewModel.getUserName()));
+        for (var badge : viewModel.getBadges()) {
+            var view = takeImage(badge, badgeSize);
+            view.visibleProperty().bind(visibleBadges);
+            view.managedProperty().bind(visibleBadges);
+            nodes.add(view);
         }
 
-        getChildren().addAll(userNameText, colon);
+        nameFill.set(viewModel.getColor());
+        userNameText.setText(" " + viewModel.getFormattedName());
+        nodes.add(userNameText);
+        nodes.add(colonText);
 
         // 削除済みのメッセージ
-        if (deleted.get()) {
-            disabledMessage(Resources.getString("chat.message.deleted"));
+        if (viewModel.isDeleted()) {
+            nodes.add(takeText(Resources.getString("chat.message.deleted"), font, CHAT_STYLE_CLASS, Styles.TEXT_MUTED));
             return;
         }
 
         // 非表示にしたメッセージ
-        if (hidden.get()) {
-            disabledMessage(Resources.getString("chat.message.hidden"));
+        if (viewModel.isHidden()) {
+            nodes.add(takeText(Resources.getString("chat.message.hidden"), font, CHAT_STYLE_CLASS, Styles.TEXT_MUTED));
             return;
         }
 
-        // コンテキストメニュー
-        setOnContextMenuRequested(e -> {
-            if (contextMenu == null) {
-                contextMenu = new ChatDataContextMenu(viewModel);
-            }
-
-            if (contextMenu.isShowing())
-                contextMenu.hide();
-            else
-                contextMenu.show(this, e.getScreenX(), e.getScreenY());
-        });
-
-
-        // 削除フラグが有効なときメッセージ要素を
-        // すべてクリアして代替メッセージを表示する
-        deleted.addListener((ob, o, n) -> {
-            if (n) {
-                disabledMessage(Resources.getString("chat.message.deleted"));
-                deletableNodes.clear();
-            }
-        });
-        hidden.addListener((ob, o, n) -> {
-            if (n) {
-                disabledMessage(Resources.getString("chat.message.hidden"));
-                deletableNodes.clear();
-            }
-        });
+        contextMenuEnabled = true;
 
-        buildMessageNodes();
+        buildMessageNodes(nodes);
     }
 
-    private void buildMessageNodes() {
-        deletableNodes = new ArrayList<>();
-
+    private void buildMessageNodes(List<Node> nodes) {
         for (var fragment : viewModel.getMessage()) {
-            switch (fragment.type()) {
-                case EMOTE -> {
-                    var view = createEmoteNode(fragment);
-                    deletableNodes.add(view);
-                    getChildren().add(view);
-                }
-                case EMOJI -> {
-                    var view = createEmojiNode(fragment);
-                    deletableNodes.add(view);
-                    getChildren().add(view);
-                }
-                case TEXT -> {
-                    var view = createTextNode(fragment);
-                    deletableNodes.add(view);
-                    getChildren().add(view);
-                }
-            }
+            var view = switch (fragment.type()) {
+                case EMOTE -> createEmoteNode(fragment);
+                case EMOJI -> createEmojiNode(fragment);
+                case TEXT -> createTextNode(fragment);
+            };
+            nodes.add(view);
         }
     }
 
-    private void initForSystemMessage() {
-        var spacer = new Pane();
-        spacer.setPrefWidth(4);
-        spacer.setPrefHeight(USE_COMPUTED_SIZE);
-
-        getChildren().addAll(spacer);
-
-        buildMessageNodes();
+    private Text takeText(String value, ObjectProperty<Font> font, String... styleClasses) {
+        var text = textPool.poll();
+        if (text == null) {
+            text = new Text();
+        }
+        text.setText(value);
+        text.getStyleClass().setAll(styleClasses);
+        text.fontProperty().bind(font);
+        usedTexts.add(text);
+        return text;
     }
 
-    private void disabledMessage(String message) {
-        if (deletableNodes != null && !deletableNodes.isEmpty()) {
-            // メッセージを構成するノードを除去
-            getChildren().removeAll(deletableNodes);
+    private LazyImageView takeImage(LazyImage image, DoubleProperty size) {
+        var view = imagePool.poll();
+        if (view == null) {
+            view = new LazyImageView();
+            view.getStyleClass().add(IMAGE_STYLE_VIEW);
+            view.setPreserveRatio(true);
         }
-
-        // 代替メッセージ
-        var text = new Text(message);
-        text.getStyleClass().addAll(CHAT_STYLE_CLASS, Styles.TEXT_MUTED);
-        text.fontProperty().bind(font.map(ChatFont::getFont));
-        getChildren().add(text);
+        view.setLazyImage(image);
+        view.fitWidthProperty().bind(size);
+        view.fitHeightProperty().bind(size);
+        view.visibleProperty().unbind();
+        view.managedProperty().unbind();
+        view.setVisible(true);
+        view.setManaged(true);
+        usedImages.add(view);
+        return view;
     }
 
     private Node createTextNode(ChatMessageFragment fragment) {
-        var text = new Text(fragment.text());
-        text.getStyleClass().add(CHAT_STYLE_CLASS);
-        text.fontProperty().bind(font.map(f ->
-                viewModel.isSystem() ? f.getBoldFont() : f.getFont())
-        );
-        return text;
-    }
-
-    private Node createBadgeNode(LazyImage image) {
-        var imageView = new LazyImageView(image);
-        imageView.getStyleClass().add(IMAGE_STYLE_VIEW);
-        imageView.setPreserveRatio(true);
-
-        var imageWidth = Bindings.multiply(
-                Bindings.selectDouble(font.map(ChatFont::getFontScale)),
-                BADGE_IMAGE_WIDTH
-        );
-        var imageHeight = Bindings.multiply(
-                Bindings.selectDouble(font.map(ChatFont::getFontScale)),
-                BADGE_IMAGE_HEIGHT
-        );
-        imageView.fitWidthProperty().bind(imageWidth);
-        imageView.fitHeightProperty().bind(imageHeight);
-
-        var node = new Label(null, imageView);
-        node.setPadding(new Insets(0, 1, 0, 1));
-        node.setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
-        node.visibleProperty().bind(visibleBadges);
-        node.managedProperty().bind(visibleBadges);
-        return node;
+        return takeText(fragment.text(), viewModel.isSystem() ? boldFont : font, CHAT_STYLE_CLASS);
     }
 
     private Node createEmoteNode(ChatMessageFragment fragment) {
-        var imageView = new LazyImageView(viewModel.getEmoteStore().get(fragment.text()));
-        imageView.getStyleClass().add(IMAGE_STYLE_VIEW);
-        imageView.setPreserveRatio(true);
-
-        var imageWidth = Bindings.multiply(
-                Bindings.selectDouble(font.map(ChatFont::getFontScale)),
-                EMOTE_IMAGE_WIDTH
-        );
-        var imageHeight = Bindings.multiply(
-                Bindings.selectDouble(font.map(ChatFont::getFontScale)),
-                EMOTE_IMAGE_HEIGHT
-        );
-        imageView.fitWidthProperty().bind(imageWidth);
-        imageView.fitHeightProperty().bind(imageHeight);
-
-        var node = new Label(null, imageView);
-        node.setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
-        node.setTooltip(new Tooltip(fragment.additional()));
-        return node;
+        var view = takeImage(viewModel.getEmoteImage(fragment), emoteSize);
+
+        // ツールチップは最初にマウスが重なったときに生成する
+        var name = fragment.additional();
+        view.setOnMouseEntered(e -> {
+            if (!view.getProperties().containsKey(TOOLTIP_KEY)) {
+                var tooltip = new Tooltip(name);
+                Tooltip.install(view, tooltip);
+                view.getProperties().put(TOOLTIP_KEY, tooltip);
+            }
+        });
+        return view;
     }
 
     private Node createEmojiNode(ChatMessageFragment fragment) {
@@ -354,25 +393,7 @@ public class ChatDataCell extends TextFlow implements Cell<ChatDataViewModel, Te
         if (image == null) {
             return createTextNode(fragment);
         }
-
-        var imageView = new LazyImageView(image);
-        imageView.getStyleClass().add(IMAGE_STYLE_VIEW);
-        imageView.setPreserveRatio(true);
-
-        var imageWidth = Bindings.multiply(
-                Bindings.selectDouble(font.map(ChatFont::getFontScale)),
-                EMOJI_IMAGE_WIDTH
-        );
-        var imageHeight = Bindings.multiply(
-                Bindings.selectDouble(font.map(ChatFont::getFontScale)),
-                EMOJI_IMAGE_HEIGHT
-        );
-        imageView.fitWidthProperty().bind(imageWidth);
-        imageView.fitHeightProperty().bind(imageHeight);
-
-        var node = new Label(null, imageView);
-        node.setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
-        return node;
+        return takeImage(image, emojiSize);
     }
 
     @Override
@@ -385,9 +406,35 @@ public class ChatDataCell extends TextFlow implements Cell<ChatDataViewModel, Te
         return Label.USE_COMPUTED_SIZE;
     }
 
+    /**
+     * 計測した高さはチャットルームで共有してキャッシュし、
+     * スクロールで再び表示されたときやサイズ変更中は計測し直さない。
+     */
     @Override
     protected double computePrefHeight(double width) {
-        return super.computePrefHeight(width);
+        if (viewModel == null || width < 0) {
+            return super.computePrefHeight(width);
+        }
+
+        var height = context.getCachedHeight(viewModel, mergedChat, width);
+        if (!Double.isNaN(height)) {
+            return height;
+        }
+
+        height = super.computePrefHeight(width);
+
+        // 読み込み中のイメージがあるときは高さが変わるためキャッシュしない
+        if (isImagesLoaded()) {
+            context.putHeight(viewModel, mergedChat, width, height);
+        }
+        return height;
+    }
+
+    private boolean isImagesLoaded() {
+        for (var image : usedImages) {
+            if (image.getImage() == null) return false;
+        }
+        return true;
     }
 
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.view.chat;
+
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * フォントごとの文字列の幅と行の高さを保持するキャッシュ。
+ * <p>
+ *     キャンバスに描画するチャットのレイアウトで使用する。
+ *     改行できる位置で区切った文字列(単語や全角文字)ごとに幅を計測して保持するため、
+ *     同じ単語やエモートの名前を繰り返し計測しない。
+ * </p>
+ * <p>
+ *     JavaFXアプリケーションスレッドからのみ使用する。
+ * </p>
+ */
+class ChatGlyphMetrics {
+
+    /** フォントごとに保持する文字列の数*/
+    private static final int MAX_RUNS = 4096;
+
+    /** 保持するフォントの数(フォントを変更したときは以前のフォントから破棄する)*/
+    private static final int MAX_FONTS = 8;
+
+    private static final Map<Font, ChatGlyphMetrics> METRICS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Font, ChatGlyphMetrics> eldest) {
+            return MAX_FONTS < size();
+        }
+    };
+
+    private final Text measure = new Text();
+
+    private final Map<String, Double> widths = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+            return MAX_RUNS < size();
+        }
+    };
+
+    private final double lineHeight;
+
+    private final double ascent;
+
+    private ChatGlyphMetrics(Font font) {
+        measure.setFont(font);
+        measure.setText("Ag");
+        lineHeight = measure.getLayoutBounds().getHeight();
+        ascent = measure.getBaselineOffset();
+    }
+
+    static ChatGlyphMetrics of(Font font) {
+        return METRICS.computeIfAbsent(font, ChatGlyphMetrics::new);
+    }
+
+    double width(String run) {
+        if (run.isEmpty()) return 0;
+        var width = widths.get(run);
+        if (width == null) {
+            measure.setText(run);
+            width = measure.getLayoutBounds().getWidth();
+            widths.put(run, width);
+        }
+        return width;
+    }
+
+    double getLineHeight() {
+        return lineHeight;
+    }
+
+    double getAscent() {
+        return ascent;
+    }
+
+}
@@ -14,23 +14,22 @@
  * limitations under the License.
  */
 
-package com.github.k7t3.tcv.app.chat.filter;
 
-import com.github.k7t3.tcv.domain.chat.ChatData;
-import javafx.collections.ObservableList;
+package com.github.k7t3.tcv.view.chat;
 
-import java.util.function.Predicate;
-
-class UserFilter implements Predicate<ChatData> {
+/**
+ * チャットビューの描画方法
+ */
+public enum ChatRenderMode {
 
-    private final ObservableList<UserFilterEntry> entries;
+    /**
+     * チャットごとに{@link javafx.scene.text.TextFlow}のノードを構成する
+     */
+    NODE,
 
-    public UserFilter(ObservableList<UserFilterEntry> entries) {
-        this.entries = entries;
-    }
+    /**
+     * 表示中のチャットを{@link javafx.scene.canvas.Canvas}に描画する
+     */
+    CANVAS
 
-    @Override
-    public boolean test(ChatData chatData) {
-        return entries.stream().anyMatch(e -> e.test(chatData));
-    }
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.view.chat;
+
+import com.github.k7t3.tcv.app.chat.ChatRoomViewModel;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.shape.Rectangle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * チャットルームのビューを横に並べるコンテナ。
+ * <p>
+ *     チャットルームは最小の幅を下回らないように並べ、収まらないときは横にスクロールする。
+ *     表示領域に入っているチャットルームのビューだけをシーングラフに追加してレイアウトする。
+ *     表示領域から外れたビューはシーングラフから取り除くが、再び表示するときのために保持しておく。
+ *     ビューはチャットルームが最初に表示領域に入ったときに生成する。
+ * </p>
+ * <p>
+ *     ビューがシーングラフから取り除かれているあいだ、
+ *     チャットルームは{@link ChatRoomViewUtils#bindChatRoomVisibility}によって非表示として扱われる。
+ * </p>
+ * <p>
+ *     PageUp/PageDownで一画面分、Ctrl+左右キーで一列分、Ctrl+Home/Endで先頭と末尾に移動する。
+ *     Shiftを押しながらのホイールや横方向のスクロールでも移動できる。
+ * </p>
+ */
+class ChatRoomColumnPane extends Region {
+
+    private static final double DEFAULT_MIN_COLUMN_WIDTH = 280;
+
+    private static final String STYLE_CLASS = "chat-room-column-pane";
+
+    /** 表示する順序で並べたチャットルーム*/
+    private final ObservableList<ChatRoomViewModel> chatRooms = FXCollections.observableArrayList();
+
+    /** 生成済みのビュー(表示領域の外にあるものを含む)*/
+    private final Map<ChatRoomViewModel, Node> views = new HashMap<>();
+
+    private final Function<ChatRoomViewModel, Node> viewFactory;
+
+    private final DoubleProperty minColumnWidth = new SimpleDoubleProperty(DEFAULT_MIN_COLUMN_WIDTH);
+
+    /** ビューはこのコンテナが配置するため、既定のサイズに戻さないようにレイアウトしない*/
+    private final Pane viewport = new Pane() {
+        @Override
+        protected void layoutChildren() {
+        }
+    };
+
+    private final Rectangle clip = new Rectangle();
+
+    private final ScrollBar scrollBar = new ScrollBar();
+
+    /** 最後のレイアウトで計算した列の幅と一画面に収まる列の数*/
+    private double columnWidth;
+    private int columnsPerPage = 1;
+
+    ChatRoomColumnPane(Function<ChatRoomViewModel, Node> viewFactory) {
+        this.viewFactory = viewFactory;
+
+        getStyleClass().add(STYLE_CLASS);
+
+        viewport.setManaged(false);
+        viewport.setClip(clip);
+
+        scrollBar.setOrientation(Orientation.HORIZONTAL);
+        scrollBar.setManaged(false);
+        scrollBar.valueProperty().addListener((ob, o, n) -> requestLayout());
+
+        getChildren().addAll(viewport, scrollBar);
+
+        chatRooms.addListener((ListChangeListener<ChatRoomViewModel>) c -> {
+            while (c.next()) {
+                if (c.wasRemoved()) {
+                    for (var chatRoom : c.getRemoved()) {
+                        // 一度の変更で並べ替えられたときはビューを残す
+                        if (!chatRooms.contains(chatRoom)) {
+                            var view = views.remove(chatRoom);
+                            if (view != null) viewport.getChildren().remove(view);
+                        }
+                    }
+                }
+            }
+            requestLayout();
+        });
+        minColumnWidth.addListener((ob, o, n) -> requestLayout());
+
+        initKeyBindings();
+    }
+
+    private void initKeyBindings() {
+        setFocusTraversable(false);
+
+        // 子のノードが処理しなかったクリックでフォーカスを受け取り、キー操作を受け付ける
+        addEventHandler(MouseEvent.MOUSE_PRESSED, e -> {
+            if (!isFocusWithin()) requestFocus();
+        });
+
+        addEventHandler(KeyEvent.KEY_PRESSED, e -> {
+            var handled = true;
+            switch (e.getCode()) {
+                case PAGE_DOWN -> scrollColumns(columnsPerPage);
+                case PAGE_UP -> scrollColumns(-columnsPerPage);
+                case RIGHT -> handled = e.isShortcutDown() && scrollColumns(1);
+                case LEFT -> handled = e.isShortcutDown() && scrollColumns(-1);
+                case HOME -> handled = e.isShortcutDown() && showColumn(0);
+                case END -> handled = e.isShortcutDown() && showColumn(chatRooms.size() - 1);
+                default -> handled = false;
+            }
+            if (handled) e.consume();
+        });
+
+        // チャットの縦方向のスクロールより先に横方向のスクロールを処理する
+        addEventFilter(ScrollEvent.SCROLL, e -> {
+            var delta = e.getDeltaX() != 0 ? e.getDeltaX() : e.isShiftDown() ? e.getDeltaY() : 0;
+            if (delta == 0 || !scrollBar.isVisible()) return;
+            setScrollValue(scrollBar.getValue() - delta);
+            e.consume();
+        });
+    }
+
+    ObservableList<ChatRoomViewModel> getChatRooms() {
+        return chatRooms;
+    }
+
+    /**
+     * 現在の位置から指定した列の数だけ移動する
+     *
+     * @param columns 移動する列の数(負数のときは左)
+     * @return 常にtrue
+     */
+    boolean scrollColumns(int columns) {
+        if (columnWidth <= 0) return true;
+        var current = (int) Math.round(scrollBar.getValue() / columnWidth);
+        setScrollValue((current + columns) * columnWidth);
+        return true;
+    }
+
+    /**
+     * 指定した列が表示されるように移動する
+     *
+     * @param index 列のインデックス
+     * @return 常にtrue
+     */
+    boolean showColumn(int index) {
+        if (columnWidth <= 0 || index < 0) return true;
+
+        var value = scrollBar.getValue();
+        var left = index * columnWidth;
+        var right = left + columnWidth;
+        var viewportWidth = columnWidth * columnsPerPage;
+
+        if (left < value) {
+            setScrollValue(left);
+        } else if (value + viewportWidth < right) {
+            setScrollValue(right - viewportWidth);
+        }
+        return true;
+    }
+
+    private void setScrollValue(double value) {
+        scrollBar.setValue(Math.clamp(value, scrollBar.getMin(), scrollBar.getMax()));
+    }
+
+    @Override
+    protected void layoutChildren() {
+        var x = snappedLeftInset();
+        var y = snappedTopInset();
+        var width = getWidth() - x - snappedRightInset();
+        var height = getHeight() - y - snappedBottomInset();
+
+        var count = chatRooms.size();
+        columnsPerPage = (int) Math.clamp(Math.floor(width / getMinColumnWidth()), 1, Math.max(1, count));
+        columnWidth = count == 0 ? 0 : width / columnsPerPage;
+        var contentWidth = columnWidth * count;
+
+        // 収まらないときだけスクロールバーを表示する
+        var scrollable = width < contentWidth - 0.5;
+        scrollBar.setVisible(scrollable);
+        var scrollBarHeight = scrollable ? snapSizeY(scrollBar.prefHeight(width)) : 0;
+        var viewportHeight = Math.max(0, height - scrollBarHeight);
+
+        var max = Math.max(0, contentWidth - width);
+        scrollBar.setMin(0);
+        scrollBar.setMax(max);
+        scrollBar.setVisibleAmount(contentWidth <= 0 ? 0 : max * width / contentWidth);
+        scrollBar.setUnitIncrement(columnWidth);
+        scrollBar.setBlockIncrement(width);
+        if (max < scrollBar.getValue()) {
+            scrollBar.setValue(max);
+        }
+        var offset = scrollBar.getValue();
+
+        viewport.resizeRelocate(x, y, width, viewportHeight);
+        clip.setWidth(width);
+        clip.setHeight(viewportHeight);
+        scrollBar.resizeRelocate(x, y + viewportHeight, width, scrollBarHeight);
+
+        if (count == 0) {
+            viewport.getChildren().clear();
+            return;
+        }
+
+        // 表示領域に入っている列
+        var first = (int) Math.floor(offset / columnWidth);
+        var last = Math.min(count - 1, (int) Math.ceil((offset + width) / columnWidth) - 1);
+
+        var visible = new ArrayList<Node>(last - first + 1);
+        for (var i = first; i <= last; i++) {
+            visible.add(views.computeIfAbsent(chatRooms.get(i), viewFactory));
+        }
+
+        // 表示する列が変わったときだけシーングラフを更新する
+        if (!visible.equals(viewport.getChildren())) {
+            viewport.getChildren().setAll(visible);
+        }
+
+        for (var i = first; i <= last; i++) {
+            var view = visible.get(i - first);
+            view.resizeRelocate(snapPositionX(i * columnWidth - offset), 0, snapSizeX(columnWidth), viewportHeight);
+        }
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return snappedLeftInset() + getMinColumnWidth() + snappedRightInset();
+    }
+
+    @Override
+    protected double computeMinWidth(double height) {
+        return computePrefWidth(height);
+    }
+
+    // ******************** PROPERTIES ********************
+
+    public DoubleProperty minColumnWidthProperty() { return minColumnWidth; }
+    public double getMinColumnWidth() { return minColumnWidth.get(); }
+    public void setMinColumnWidth(double minColumnWidth) { this.minColumnWidth.set(minColumnWidth); }
+
+}
@@ -17,18 +17,25 @@
 package com.github.k7t3.tcv.view.chat;
 
 import com.github.k7t3.tcv.app.channel.TwitchChannelViewModel;
+import com.github.k7t3.tcv.app.chat.ChatDataViewModel;
 import com.github.k7t3.tcv.app.chat.ChatRoomViewModel;
 import com.github.k7t3.tcv.app.core.AppHelper;
+import com.github.k7t3.tcv.prefs.AppPreferences;
 import com.github.k7t3.tcv.view.channel.LiveInfoPopup;
 import com.github.k7t3.tcv.view.core.FloatableStage;
 import com.github.k7t3.tcv.view.core.JavaFXHelper;
 import com.github.k7t3.tcv.view.core.WindowBoundsListener;
+import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
+import javafx.scene.Scene;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.ScrollEvent;
+import javafx.stage.Stage;
+import javafx.stage.Window;
 import org.fxmisc.flowless.VirtualFlow;
 
 import java.nio.charset.StandardCharsets;
@@ -40,6 +47,67 @@ public class ChatRoomViewUtils {
     private ChatRoomViewUtils() {
     }
 
+    /**
+     * チャットルームのチャットを表示する{@link VirtualFlow}を生成する。
+     * <p>
+     *     設定されている描画方法に応じて{@link ChatDataCell}か{@link ChatCanvasCell}を使用する。
+     *     描画方法の変更は以降に開いたチャットルームに適用される。
+     * </p>
+     *
+     * @param chatRoom チャットルーム
+     * @param mergedChat マージチャットか
+     * @return チャットを表示するVirtualFlow
+     */
+    public static VirtualFlow<ChatDataViewModel, ?> createChatFlow(ChatRoomViewModel chatRoom, boolean mergedChat) {
+        // フォントなどの表示設定はチャットルームのすべてのセルで共有する
+        var context = new ChatCellContext(chatRoom);
+        var items = chatRoom.getChatDataList();
+
+        var mode = AppPreferences.getInstance().getChatPreferences().getRenderMode();
+        if (mode == ChatRenderMode.CANVAS) {
+            return mergedChat
+                    ? VirtualFlow.createVertical(items, c -> ChatCanvasCell.merged(context, c))
+                    : VirtualFlow.createVertical(items, c -> ChatCanvasCell.of(context, c));
+        }
+
+        return mergedChat
+                ? VirtualFlow.createVertical(items, c -> ChatDataCell.merged(context, c))
+                : VirtualFlow.createVertical(items, c -> ChatDataCell.of(context, c));
+    }
+
+    /**
+     * チャットルームのビューが画面に表示されているかをチャットルームに反映する。
+     * <p>
+     *     ビューがシーンから取り除かれたとき、ウインドウが閉じられたとき、
+     *     ウインドウが最小化されたときは非表示とみなす。
+     *     非表示のあいだチャットルームは受信したチャットをリストに反映しない。
+     * </p>
+     * <p>
+     *     同じチャットルームを別のビューで表示し直したときは、後から呼び出したビューに追従する。
+     * </p>
+     *
+     * @param view チャットルームのビュー
+     * @param chatRoom チャットルーム
+     */
+    public static void bindChatRoomVisibility(Node view, ChatRoomViewModel chatRoom) {
+        var shown = view.sceneProperty()
+                .flatMap(Scene::windowProperty)
+                .flatMap(ChatRoomViewUtils::windowShown)
+                .orElse(false);
+        chatRoom.visibleProperty().bind(shown);
+    }
+
+    private static ObservableValue<Boolean> windowShown(Window window) {
+        if (window instanceof Stage stage) {
+            return Bindings.createBooleanBinding(
+                    () -> stage.isShowing() && !stage.isIconified(),
+                    stage.showingProperty(),
+                    stage.iconifiedProperty()
+            );
+        }
+        return window.showingProperty();
+    }
+
     public static void initializeVirtualFlowScrollActions(
             VirtualFlow<?, ?> virtualFlow,
             ObservableList<?> items,
@@ -59,8 +127,19 @@ public class ChatRoomViewUtils {
         });
 
         // 自動スクロールの設定
+        // 削除と追加がまとめて通知されることがあるため、すべての変更を確認して
+        // 追加があったときに一度だけスクロールする
         items.addListener((ListChangeListener<? super Object>) c -> {
-            if (autoScroll.get() && c.next() && c.wasAdded()) {
+            if (!autoScroll.get()) return;
+
+            var added = false;
+            while (c.next()) {
+                if (c.wasAdded()) {
+                    added = true;
+                }
+            }
+
+            if (added) {
                 virtualFlow.showAsLast(c.getList().size() - 1);
             }
         });
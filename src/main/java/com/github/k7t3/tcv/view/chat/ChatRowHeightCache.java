@@ -0,0 +1,146 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.view.chat;
+
+import com.github.k7t3.tcv.app.chat.ChatDataViewModel;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * チャットルームのセルの高さのキャッシュ。
+ * <p>
+ *     チャットごとに最後に計測した幅と高さを保持する。
+ *     スクロールで再び表示されたチャットは同じ幅であれば計測し直さない。
+ * </p>
+ * <p>
+ *     幅が変わったとき(ウインドウのサイズ変更中)は、
+ *     以前の幅で計測した高さを見積もりとして返して計測を後回しにする。
+ *     幅の変更が落ち着いたあとに、見積もりを返したチャットのセルをまとめて作り直させて計測し直す。
+ *     セルの高さは仮想フローが幅ごとに保持しているため、セルのレイアウトを要求するだけでは計測し直されない。
+ * </p>
+ * <p>
+ *     JavaFXアプリケーションスレッドからのみ使用する。
+ * </p>
+ */
+class ChatRowHeightCache {
+
+    /** キャッシュする高さの数*/
+    private static final int MAX_ENTRIES = 8192;
+
+    /** 幅の変更が落ち着いたと判断するまでの時間*/
+    private static final Duration SETTLE_DELAY = Duration.millis(150);
+
+    private final Map<Object, Measured> heights = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Measured> eldest) {
+            return MAX_ENTRIES < size();
+        }
+    };
+
+    /** 見積もりを返して計測し直すのを待っているチャット(チャットの識別子がキー)*/
+    private final Map<Object, ChatDataViewModel> pending = new LinkedHashMap<>();
+
+    /** チャットのセルを作り直させて計測し直させる*/
+    private final Consumer<Collection<ChatDataViewModel>> remeasurer;
+
+    private final PauseTransition settle = new PauseTransition(SETTLE_DELAY);
+
+    /** 最後に要求された幅*/
+    private double width = -1;
+
+    private boolean resizing = false;
+
+    /**
+     * @param remeasurer チャットのセルを作り直させて計測し直させる関数
+     */
+    ChatRowHeightCache(Consumer<Collection<ChatDataViewModel>> remeasurer) {
+        this.remeasurer = remeasurer;
+        settle.setOnFinished(e -> remeasure());
+    }
+
+    /**
+     * キャッシュされている高さを返す
+     *
+     * @param message チャットの識別子
+     * @param state レイアウトに影響する状態
+     * @param width セルの幅
+     * @param item 見積もりを返したときに計測し直すチャット
+     * @return 高さ、計測が必要なときは{@link Double#NaN}
+     */
+    double get(Object message, int state, double width, ChatDataViewModel item) {
+        if (this.width != width) {
+            // 最初の計測でなければサイズ変更中とみなす
+            if (0 <= this.width) {
+                resizing = true;
+                settle.playFromStart();
+            }
+            this.width = width;
+        }
+
+        var measured = heights.get(message);
+        if (measured == null || measured.state() != state) {
+            return Double.NaN;
+        }
+
+        if (measured.width() == width) {
+            return measured.height();
+        }
+
+        // サイズ変更中は以前の幅の高さを見積もりとして使う
+        if (resizing) {
+            pending.put(message, item);
+            return measured.height();
+        }
+
+        return Double.NaN;
+    }
+
+    void put(Object message, int state, double width, double height) {
+        heights.put(message, new Measured(width, state, height));
+    }
+
+    /**
+     * フォントが変わったときにすべての高さを破棄する
+     */
+    void clear() {
+        heights.clear();
+        pending.clear();
+    }
+
+    /**
+     * 見積もりを返したチャットのセルをまとめて作り直させる
+     */
+    private void remeasure() {
+        resizing = false;
+        if (pending.isEmpty()) return;
+
+        var items = new ArrayList<>(pending.values());
+        pending.clear();
+        remeasurer.accept(items);
+    }
+
+    private record Measured(double width, int state, double height) {
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.view.chat;
+
+import com.github.k7t3.tcv.app.image.LazyImage;
+import javafx.scene.text.Font;
+
+import java.util.List;
+
+/**
+ * キャンバスに描画するチャットのレイアウト。
+ * <p>
+ *     {@link ChatRowLayouter}が改行位置を決めた文字列とイメージの座標を保持する。
+ *     座標はセルの余白を除いた領域の左上を原点とする。
+ *     チャットとセルの幅、フォントが同じあいだは{@link ChatCellContext}にキャッシュして再利用する。
+ * </p>
+ *
+ * @param texts 描画する文字列
+ * @param images 描画するイメージ
+ * @param width もっとも長い行の幅
+ * @param height すべての行の高さ
+ * @param interactive コンテキストメニューを表示できるチャットか
+ */
+record ChatRowLayout(
+        List<TextRun> texts,
+        List<ImageRun> images,
+        double width,
+        double height,
+        boolean interactive
+) {
+
+    /**
+     * 文字列の描色の種類
+     */
+    enum Style {
+
+        /** ユーザーの色で描画するユーザー名*/
+        NAME,
+
+        /** チャットのメッセージ*/
+        MESSAGE,
+
+        /** サブスクライブやチアーのメッセージ*/
+        SUBS,
+
+        /** 削除済み、非表示のメッセージ*/
+        MUTED
+
+    }
+
+    /**
+     * 一行の中で同じフォント、同じ描色で続く文字列
+     *
+     * @param text 文字列
+     * @param x 左端の座標
+     * @param baseline ベースラインの座標
+     * @param font フォント
+     * @param style 描色の種類
+     */
+    record TextRun(String text, double x, double baseline, Font font, Style style) {
+    }
+
+    /**
+     * バッジやエモートなどのイメージ
+     *
+     * @param image イメージ
+     * @param x 左端の座標
+     * @param y 上端の座標
+     * @param size 幅と高さ(この大きさに収まるように縦横比を保って描画する)
+     * @param name ツールチップに表示する名前(表示しないときはnull)
+     */
+    record ImageRun(LazyImage image, double x, double y, double size, String name) {
+
+        boolean contains(double px, double py) {
+            return x <= px && px < x + size && y <= py && py < y + size;
+        }
+
+    }
+
+    /**
+     * 指定した座標にあるイメージを返す
+     *
+     * @param x 余白を除いた領域でのX座標
+     * @param y 余白を除いた領域でのY座標
+     * @return 座標にあるイメージ、ないときはnull
+     */
+    ImageRun findImage(double x, double y) {
+        for (var image : images) {
+            if (image.contains(x, y)) return image;
+        }
+        return null;
+    }
+
+}
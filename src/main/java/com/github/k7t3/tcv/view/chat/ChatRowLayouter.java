@@ -0,0 +1,322 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.view.chat;
+
+import com.github.k7t3.tcv.app.chat.ChatDataViewModel;
+import com.github.k7t3.tcv.app.core.Resources;
+import com.github.k7t3.tcv.app.image.LazyImage;
+import com.github.k7t3.tcv.view.chat.ChatRowLayout.ImageRun;
+import com.github.k7t3.tcv.view.chat.ChatRowLayout.Style;
+import com.github.k7t3.tcv.view.chat.ChatRowLayout.TextRun;
+import javafx.scene.text.Font;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * キャンバスに描画するチャットの改行位置を決める。
+ * <p>
+ *     {@link ChatDataCell}と同じ順序で文字列とイメージを並べ、
+ *     {@link BreakIterator}が返す改行できる位置で行を折り返す。
+ *     一行に収まらない単語は文字単位で折り返す。
+ *     文字列の幅は{@link ChatGlyphMetrics}でフォントごとにキャッシュしたものを使う。
+ * </p>
+ * <p>
+ *     行の高さはその行の文字列とイメージのうちもっとも高いものに合わせ、
+ *     文字列とイメージは行の中で上下中央にそろえる。
+ * </p>
+ */
+class ChatRowLayouter {
+
+    /** システムメッセージの先頭の余白*/
+    private static final double SYSTEM_SPACE = 4;
+
+    private final BreakIterator breakIterator = BreakIterator.getLineInstance();
+
+    private final double maxWidth;
+
+    private final List<TextRun> texts = new ArrayList<>();
+    private final List<ImageRun> images = new ArrayList<>();
+
+    /** 現在の行に並べた要素*/
+    private final List<Pending> line = new ArrayList<>();
+
+    private double x;
+    private double y;
+    private double width;
+
+    private double lineTextHeight;
+    private double lineAscent;
+    private double lineImageHeight;
+
+    private ChatRowLayouter(double maxWidth) {
+        this.maxWidth = Math.max(1, maxWidth);
+    }
+
+    /**
+     * チャットのレイアウトを計算する
+     *
+     * @param viewModel チャット
+     * @param chatFont フォント
+     * @param showName ユーザー名を表示するか
+     * @param showBadges バッジを表示するか
+     * @param mergedChat マージチャットのセルか
+     * @param maxWidth セルの余白を除いた幅
+     * @return レイアウト
+     */
+    static ChatRowLayout layout(
+            ChatDataViewModel viewModel,
+            ChatFont chatFont,
+            boolean showName,
+            boolean showBadges,
+            boolean mergedChat,
+            double maxWidth
+    ) {
+        var layouter = new ChatRowLayouter(maxWidth);
+
+        var font = chatFont.getFont();
+        var boldFont = chatFont.getBoldFont();
+        var scale = chatFont.getFontScale();
+        var badgeSize = ChatDataCell.BADGE_IMAGE_SIZE * scale;
+        var emoteSize = ChatDataCell.EMOTE_IMAGE_SIZE * scale;
+        var emojiSize = ChatDataCell.EMOJI_IMAGE_SIZE * scale;
+
+        // マージチャットのときはチャンネルのイメージを追加
+        if (mergedChat) {
+            layouter.appendImage(viewModel.getChannel().getProfileImage(), badgeSize, null);
+        }
+
+        // システムメッセージ
+        if (viewModel.isSystem()) {
+            layouter.appendSpace(SYSTEM_SPACE);
+            layouter.appendMessage(viewModel, boldFont, emoteSize, emojiSize);
+            return layouter.build(false);
+        }
+
+        var isEmptyMessage = viewModel.getChatData().message().getPlain().isEmpty();
+
+        // サブスクライブメッセージ
+        if (viewModel.isSubs()) {
+            var format = Resources.getResourceBundle().getString("chat.subs.format");
+            layouter.appendText(format.formatted(viewModel.getDisplayName()), boldFont, Style.SUBS);
+            if (isEmptyMessage) {
+                return layouter.build(false);
+            }
+            layouter.newLine(boldFont);
+        }
+
+        // チアーメッセージ
+        if (viewModel.isCheered()) {
+            var format = Resources.getResourceBundle().getString("chat.cheer.format");
+            layouter.appendText(format.formatted(viewModel.getDisplayName(), viewModel.getBits()), boldFont, Style.SUBS);
+            if (isEmptyMessage) {
+                return layouter.build(false);
+            }
+            layouter.newLine(boldFont);
+        }
+
+        if (showBadges) {
+            for (var badge : viewModel.getBadges()) {
+                layouter.appendImage(badge, badgeSize, null);
+            }
+        }
+
+        if (showName) {
+            layouter.appendText(" " + viewModel.getFormattedName(), boldFont, Style.NAME);
+            layouter.appendText(": ", font, Style.NAME);
+        }
+
+        // 削除済みのメッセージ
+        if (viewModel.isDeleted()) {
+            layouter.appendText(Resources.getString("chat.message.deleted"), font, Style.MUTED);
+            return layouter.build(false);
+        }
+
+        // 非表示にしたメッセージ
+        if (viewModel.isHidden()) {
+            layouter.appendText(Resources.getString("chat.message.hidden"), font, Style.MUTED);
+            return layouter.build(false);
+        }
+
+        layouter.appendMessage(viewModel, font, emoteSize, emojiSize);
+        return layouter.build(true);
+    }
+
+    private void appendMessage(ChatDataViewModel viewModel, Font font, double emoteSize, double emojiSize) {
+        for (var fragment : viewModel.getMessage()) {
+            switch (fragment.type()) {
+                case EMOTE -> appendImage(viewModel.getEmoteImage(fragment), emoteSize, fragment.additional());
+                case EMOJI -> {
+                    var image = viewModel.getEmojiImage(fragment);
+                    // 非対応の絵文字のときはテキストとしてそのまま使う
+                    if (image == null) {
+                        appendText(fragment.text(), font, Style.MESSAGE);
+                    } else {
+                        appendImage(image, emojiSize, null);
+                    }
+                }
+                case TEXT -> appendText(fragment.text(), font, Style.MESSAGE);
+            }
+        }
+    }
+
+    private void appendText(String text, Font font, Style style) {
+        var metrics = ChatGlyphMetrics.of(font);
+
+        breakIterator.setText(text);
+        var start = breakIterator.first();
+        for (var end = breakIterator.next(); end != BreakIterator.DONE; start = end, end = breakIterator.next()) {
+            var segment = text.substring(start, end);
+
+            // 明示的な改行
+            var lineBreak = segment.endsWith("\n");
+            if (lineBreak) {
+                segment = segment.substring(0, segment.length() - 1);
+            }
+
+            // 行末の空白は幅に含めずに折り返すかを判定する
+            var visibleWidth = metrics.width(segment.stripTrailing());
+            if (0 < x && maxWidth < x + visibleWidth) {
+                newLine(font);
+            }
+
+            if (maxWidth < visibleWidth) {
+                appendCharacters(segment, font, metrics, style);
+            } else if (!segment.isEmpty()) {
+                place(segment, metrics.width(segment), font, metrics, style);
+            }
+
+            if (lineBreak) {
+                newLine(font);
+            }
+        }
+    }
+
+    /**
+     * 一行に収まらない単語を文字単位で折り返す
+     */
+    private void appendCharacters(String segment, Font font, ChatGlyphMetrics metrics, Style style) {
+        var offset = 0;
+        while (offset < segment.length()) {
+            var next = segment.offsetByCodePoints(offset, 1);
+            var character = segment.substring(offset, next);
+            var characterWidth = metrics.width(character);
+            if (0 < x && maxWidth < x + characterWidth && !character.isBlank()) {
+                newLine(font);
+            }
+            place(character, characterWidth, font, metrics, style);
+            offset = next;
+        }
+    }
+
+    private void place(String text, double textWidth, Font font, ChatGlyphMetrics metrics, Style style) {
+        // 直前と同じフォント、同じ描色の文字列は一つにまとめて描画する
+        var last = line.isEmpty() ? null : line.getLast();
+        if (last != null && last.text != null && last.font == font && last.style == style) {
+            last.text.append(text);
+        } else {
+            var pending = new Pending();
+            pending.text = new StringBuilder(text);
+            pending.font = font;
+            pending.style = style;
+            pending.x = x;
+            line.add(pending);
+        }
+        x += textWidth;
+        lineTextHeight = Math.max(lineTextHeight, metrics.getLineHeight());
+        lineAscent = Math.max(lineAscent, metrics.getAscent());
+    }
+
+    private void appendImage(LazyImage image, double size, String name) {
+        if (image == null) return;
+
+        if (0 < x && maxWidth < x + size) {
+            newLine(null);
+        }
+
+        var pending = new Pending();
+        pending.image = image;
+        pending.size = size;
+        pending.name = name;
+        pending.x = x;
+        line.add(pending);
+
+        x += size;
+        lineImageHeight = Math.max(lineImageHeight, size);
+    }
+
+    private void appendSpace(double space) {
+        x += space;
+    }
+
+    /**
+     * 現在の行を確定して次の行に移る
+     *
+     * @param font 空の行のときに高さを決めるフォント
+     */
+    private void newLine(Font font) {
+        if (line.isEmpty() && font != null) {
+            var metrics = ChatGlyphMetrics.of(font);
+            lineTextHeight = Math.max(lineTextHeight, metrics.getLineHeight());
+        }
+        finishLine();
+        x = 0;
+    }
+
+    private void finishLine() {
+        var lineHeight = Math.max(lineTextHeight, lineImageHeight);
+        var baseline = y + (lineHeight - lineTextHeight) / 2 + lineAscent;
+
+        for (var pending : line) {
+            if (pending.text != null) {
+                texts.add(new TextRun(pending.text.toString(), pending.x, baseline, pending.font, pending.style));
+            } else {
+                var top = y + (lineHeight - pending.size) / 2;
+                images.add(new ImageRun(pending.image, pending.x, top, pending.size, pending.name));
+            }
+        }
+
+        width = Math.max(width, x);
+        y += lineHeight;
+
+        line.clear();
+        lineTextHeight = 0;
+        lineAscent = 0;
+        lineImageHeight = 0;
+    }
+
+    private ChatRowLayout build(boolean interactive) {
+        finishLine();
+        return new ChatRowLayout(List.copyOf(texts), List.copyOf(images), width, y, interactive);
+    }
+
+    /**
+     * 行の高さが決まるまで座標を確定できない要素
+     */
+    private static class Pending {
+        private double x;
+        private StringBuilder text;
+        private Font font;
+        private Style style;
+        private LazyImage image;
+        private double size;
+        private String name;
+    }
+
+}
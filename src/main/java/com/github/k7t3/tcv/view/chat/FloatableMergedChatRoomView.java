@@ -82,7 +82,7 @@ public class FloatableMergedChatRoomView implements FxmlView<MergedChatRoomViewM
     @InjectViewModel
     private MergedChatRoomViewModel viewModel;
 
-    private VirtualFlow<ChatDataViewModel, ChatDataCell> virtualFlow;
+    private VirtualFlow<ChatDataViewModel, ?> virtualFlow;
 
     private FloatableStage floatableStage;
 
@@ -118,7 +118,7 @@ public class FloatableMergedChatRoomView implements FxmlView<MergedChatRoomViewM
         });
 
         // チャット
-        virtualFlow = VirtualFlow.createVertical(viewModel.getChatDataList(), ChatDataCell::merged);
+        virtualFlow = ChatRoomViewUtils.createChatFlow(viewModel, true);
         chatDataContainer.getChildren().add(new VirtualizedScrollPane<>(virtualFlow));
 
         // 自動スクロールと仮想フローにおける動作を初期化
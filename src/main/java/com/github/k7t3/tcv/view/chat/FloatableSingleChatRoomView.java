@@ -80,7 +80,7 @@ public class FloatableSingleChatRoomView implements FxmlView<SingleChatRoomViewM
 
     private TwitchChannelViewModel channel;
 
-    private VirtualFlow<ChatDataViewModel, ChatDataCell> virtualFlow;
+    private VirtualFlow<ChatDataViewModel, ?> virtualFlow;
 
     private FloatableStage floatableStage;
 
@@ -133,7 +133,7 @@ public class FloatableSingleChatRoomView implements FxmlView<SingleChatRoomViewM
         });
 
         // チャット
-        virtualFlow = VirtualFlow.createVertical(viewModel.getChatDataList(), ChatDataCell::of);
+        virtualFlow = ChatRoomViewUtils.createChatFlow(viewModel, false);
         chatDataContainer.getChildren().add(new VirtualizedScrollPane<>(virtualFlow));
 
         // 自動スクロールと仮想フローにおける動作を初期化
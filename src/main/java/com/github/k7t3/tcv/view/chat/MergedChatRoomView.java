@@ -91,7 +91,7 @@ public class MergedChatRoomView implements FxmlView<MergedChatRoomViewModel>, In
     @FXML
     private Pane backgroundImageLayer;
 
-    private VirtualFlow<ChatDataViewModel, ChatDataCell> virtualFlow;
+    private VirtualFlow<ChatDataViewModel, ?> virtualFlow;
 
     @InjectViewModel
     private MergedChatRoomViewModel viewModel;
@@ -120,7 +120,7 @@ public class MergedChatRoomView implements FxmlView<MergedChatRoomViewModel>, In
 
         popoutMenuItem.setOnAction(e -> viewModel.popOutAsFloatableStage());
 
-        virtualFlow = VirtualFlow.createVertical(viewModel.getChatDataList(), ChatDataCell::merged);
+        virtualFlow = ChatRoomViewUtils.createChatFlow(viewModel, true);
         chatDataContainer.getChildren().add(new VirtualizedScrollPane<>(virtualFlow));
 
         // 自動スクロールと仮想フローにおける動作を初期化
@@ -88,7 +88,7 @@ public class SingleChatRoomView implements FxmlView<SingleChatRoomViewModel>, In
     @FXML
     private Pane backgroundImageLayer;
 
-    private VirtualFlow<ChatDataViewModel, ChatDataCell> virtualFlow;
+    private VirtualFlow<ChatDataViewModel, ?> virtualFlow;
 
     @InjectViewModel
     private SingleChatRoomViewModel viewModel;
@@ -122,7 +122,7 @@ public class SingleChatRoomView implements FxmlView<SingleChatRoomViewModel>, In
 
         popoutMenuItem.setOnAction(e -> viewModel.popOutAsFloatableStage());
 
-        virtualFlow = VirtualFlow.createVertical(viewModel.getChatDataList(), ChatDataCell::of);
+        virtualFlow = ChatRoomViewUtils.createChatFlow(viewModel, false);
         chatDataContainer.getChildren().add(new VirtualizedScrollPane<>(virtualFlow));
 
         // 配信していないときののイメージを更新する
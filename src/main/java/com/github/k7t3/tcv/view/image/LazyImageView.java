@@ -21,12 +21,24 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ObjectPropertyBase;
 import javafx.scene.image.ImageView;
 
+/**
+ * {@link LazyImage}を表示するイメージビュー
+ * <p>
+ *     シーンに追加されているあいだだけイメージの読み込みを要求する。
+ *     読み込まれる前に取り除かれたときは要求を取り消す。
+ * </p>
+ */
 public class LazyImageView extends ImageView {
 
+    /** 読み込みを要求しているイメージ*/
+    private LazyImage requested = null;
+
     public LazyImageView() {
+        sceneProperty().addListener((ob, o, n) -> updateRequest());
     }
 
     public LazyImageView(LazyImage image) {
+        this();
         setLazyImage(image);
     }
 
@@ -45,6 +57,7 @@ public class LazyImageView extends ImageView {
                         imageProperty().unbind();
                         setImage(null);
                     }
+                    updateRequest();
                 }
 
                 @Override
@@ -61,6 +74,15 @@ public class LazyImageView extends ImageView {
         return lazyImage;
     }
 
+    private void updateRequest() {
+        var image = getScene() == null ? null : getLazyImage();
+        if (requested == image) return;
+
+        if (requested != null) requested.release();
+        requested = image;
+        if (image != null) image.request();
+    }
+
     public LazyImage getLazyImage() { return lazyImage == null ? null : lazyImage.get(); }
 
     public void setLazyImage(LazyImage lazyImage) { lazyImageProperty().set(lazyImage); }
@@ -58,6 +58,12 @@ public class ChatPreferencesView implements PreferencesPage<ChatPreferencesViewM
     @FXML
     private ComboBox<Integer> chatCacheSizeComboBox;
 
+    @FXML
+    private ToggleSwitch dropFilteredSwitch;
+
+    @FXML
+    private ToggleSwitch canvasRenderingSwitch;
+
     @InjectViewModel
     private ChatPreferencesViewModel viewModel;
 
@@ -76,6 +82,8 @@ public class ChatPreferencesView implements PreferencesPage<ChatPreferencesViewM
 
         showNameSwitch.selectedProperty().bindBidirectional(viewModel.showUserNameProperty());
         showBadgeSwitch.selectedProperty().bindBidirectional(viewModel.showBadgesProperty());
+        dropFilteredSwitch.selectedProperty().bindBidirectional(viewModel.dropFilteredChatProperty());
+        canvasRenderingSwitch.selectedProperty().bindBidirectional(viewModel.canvasRenderingProperty());
 
         // プレビューのフォント設定
         fontComboBox.valueProperty().addListener((ob, o, n) -> loadPreviewFont());
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.app.chat.filter;
+
+import com.github.k7t3.tcv.domain.chat.ChatData;
+import com.github.k7t3.tcv.domain.chat.ChatMessage;
+import com.github.k7t3.tcv.domain.chat.ChatMessageFragment;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledChatFilterTest {
+
+    private static ChatData chat(String userId, String message) {
+        var chatMessage = new ChatMessage(message, List.of(ChatMessageFragment.text(message)));
+        return new ChatData("1", "channel", "msg", userId, null, "user", null, List.of(), chatMessage, Instant.now());
+    }
+
+    @Test
+    void testEmpty() {
+        var filter = CompiledChatFilter.compile(List.of(), List.of());
+        assertFalse(filter.test(chat("100", "hello")));
+        assertFalse(CompiledChatFilter.EMPTY.test(chat("100", "")));
+    }
+
+    @Test
+    void testKeywordTypes() {
+        var filter = CompiledChatFilter.compile(List.of(
+                KeywordFilterEntry.exactMatch("hello"),
+                KeywordFilterEntry.prefixMatch("!cmd"),
+                KeywordFilterEntry.containsMatch("spam"),
+                KeywordFilterEntry.regexMatch(Pattern.compile("^w+$"))
+        ), List.of());
+
+        assertTrue(filter.test(chat("1", "hello")));
+        assertFalse(filter.test(chat("1", "hello world")));
+
+        assertTrue(filter.test(chat("1", "!cmd args")));
+        assertFalse(filter.test(chat("1", "run !cmd")));
+
+        assertTrue(filter.test(chat("1", "this is spam!")));
+        assertFalse(filter.test(chat("1", "spa m")));
+
+        assertTrue(filter.test(chat("1", "wwww")));
+        assertFalse(filter.test(chat("1", "www a")));
+    }
+
+    @Test
+    void testUser() {
+        var filter = CompiledChatFilter.compile(List.of(), List.of(
+                new UserFilterEntry("100", "user", "")
+        ));
+
+        assertTrue(filter.test(chat("100", "hi")));
+        assertFalse(filter.test(chat("101", "hi")));
+    }
+
+    @Test
+    void testRegexNotCombinable() {
+        // 後方参照やフラグを持つものは連結せずに個別に評価される
+        var filter = CompiledChatFilter.compile(List.of(
+                KeywordFilterEntry.regexMatch(Pattern.compile("(a)\\1")),
+                KeywordFilterEntry.regexMatch(Pattern.compile("(b)\\1")),
+                KeywordFilterEntry.regexMatch(Pattern.compile("kappa", Pattern.CASE_INSENSITIVE))
+        ), List.of());
+
+        assertTrue(filter.test(chat("1", "xaa")));
+        assertTrue(filter.test(chat("1", "xbb")));
+        assertTrue(filter.test(chat("1", "KAPPA")));
+        assertFalse(filter.test(chat("1", "ab")));
+    }
+
+    @Test
+    void testRegexNotWrappable() {
+        // 終端のない\Qはグループで囲めないため個別に評価される
+        var filter = CompiledChatFilter.compile(List.of(
+                KeywordFilterEntry.regexMatch(Pattern.compile("\\Qfoo")),
+                KeywordFilterEntry.regexMatch(Pattern.compile("bar"))
+        ), List.of());
+
+        assertTrue(filter.test(chat("1", "xfoox")));
+        assertTrue(filter.test(chat("1", "xbarx")));
+        assertFalse(filter.test(chat("1", "baz")));
+    }
+
+    /**
+     * 各エントリを個別に評価した結果と一致すること
+     */
+    @Test
+    void testSameAsEntries() {
+        var random = new Random(0);
+
+        for (var round = 0; round < 500; round++) {
+            var entries = new ArrayList<KeywordFilterEntry>();
+            for (var i = 0; i < random.nextInt(8); i++) {
+                var keyword = randomText(random, 1 + random.nextInt(3));
+                entries.add(switch (random.nextInt(4)) {
+                    case 0 -> KeywordFilterEntry.exactMatch(keyword);
+                    case 1 -> KeywordFilterEntry.prefixMatch(keyword);
+                    case 2 -> KeywordFilterEntry.containsMatch(keyword);
+                    default -> KeywordFilterEntry.regexMatch(Pattern.compile(keyword + "+"));
+                });
+            }
+
+            var filter = CompiledChatFilter.compile(entries, List.of());
+
+            for (var i = 0; i < 50; i++) {
+                var chat = chat("1", randomText(random, random.nextInt(8)));
+                var expected = entries.stream().anyMatch(e -> e.test(chat));
+                assertEquals(expected, filter.test(chat), () -> entries + " " + chat.message().getPlain());
+            }
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        var sb = new StringBuilder();
+        for (var i = 0; i < length; i++) {
+            sb.append("abあ".charAt(random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.app.collections;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergedObservableListTest {
+
+    private record Item(int time, String source) {
+    }
+
+    private MergedObservableList<Item> list;
+
+    /** 変更通知を適用して再現したリスト*/
+    private List<Item> mirror;
+
+    private int changeCount;
+
+    @BeforeEach
+    void setUp() {
+        list = new MergedObservableList<>(Comparator.comparingInt(Item::time));
+        mirror = new ArrayList<>();
+        changeCount = 0;
+
+        list.addListener((ListChangeListener<Item>) c -> {
+            changeCount++;
+            while (c.next()) {
+                if (c.wasRemoved()) {
+                    mirror.subList(c.getFrom(), c.getFrom() + c.getRemovedSize()).clear();
+                }
+                if (c.wasAdded()) {
+                    mirror.addAll(c.getFrom(), c.getAddedSubList());
+                }
+            }
+        });
+    }
+
+    private static List<Item> items(String source, int... times) {
+        var items = new ArrayList<Item>(times.length);
+        for (var time : times) items.add(new Item(time, source));
+        return items;
+    }
+
+    private static List<Item> sorted(List<? extends List<Item>> sources) {
+        var expected = new ArrayList<Item>();
+        sources.forEach(expected::addAll);
+        expected.sort(Comparator.comparingInt(Item::time));
+        return expected;
+    }
+
+    @Test
+    void testAddSources() {
+        var a = FXCollections.observableArrayList(items("a", 1, 4, 7));
+        var b = FXCollections.observableArrayList(items("b", 2, 5, 8));
+        var c = FXCollections.observableArrayList(items("c", 3, 6, 9));
+
+        list.addSources(List.of(a, b));
+        list.addSource(c);
+
+        assertEquals(sorted(List.of(a, b, c)), list);
+        assertEquals(list, mirror);
+        assertEquals(2, changeCount);
+
+        // 要素は複製されない
+        assertSame(a.getFirst(), list.getFirst());
+    }
+
+    @Test
+    void testSourceChanges() {
+        var a = FXCollections.observableArrayList(items("a", 1, 3));
+        var b = FXCollections.observableArrayList(items("b", 2, 4));
+        list.addSources(List.of(a, b));
+
+        a.addAll(items("a", 5, 6));
+        b.add(new Item(4, "b"));
+        a.removeFirst();
+
+        assertEquals(sorted(List.of(a, b)), list);
+        assertEquals(list, mirror);
+    }
+
+    @Test
+    void testBulkRemove() {
+        var a = FXCollections.observableArrayList(items("a", 1, 3, 5, 7));
+        var b = FXCollections.observableArrayList(items("b", 2, 4, 6, 8));
+        list.addSources(List.of(a, b));
+        changeCount = 0;
+
+        // 先頭側の古い要素がまとめて取り除かれても1回の通知になる
+        a.remove(0, 3);
+
+        assertEquals(sorted(List.of(a, b)), list);
+        assertEquals(list, mirror);
+        assertEquals(1, changeCount);
+    }
+
+    @Test
+    void testRefresh() {
+        var a = FXCollections.observableArrayList(items("a", 1, 3));
+        var b = FXCollections.observableArrayList(items("b", 2, 4));
+        list.addSources(List.of(a, b));
+
+        var updates = new ArrayList<Integer>();
+        list.addListener((ListChangeListener<Item>) c -> {
+            while (c.next()) {
+                if (c.wasReplaced()) updates.add(c.getFrom());
+            }
+        });
+
+        // 同じインスタンスでの置き換えは同じ位置の置き換えになる
+        b.set(0, b.getFirst());
+
+        assertEquals(List.of(1), updates);
+        assertEquals(list, mirror);
+    }
+
+    @Test
+    void testRemoveSource() {
+        var a = FXCollections.observableArrayList(items("a", 1, 3, 5));
+        var b = FXCollections.observableArrayList(items("b", 2, 4, 6));
+        list.addSources(List.of(a, b));
+
+        list.removeSource(a);
+        assertEquals(b, list);
+        assertEquals(list, mirror);
+
+        // 取り除いたソースの変更は反映されない
+        a.add(new Item(7, "a"));
+        assertEquals(b, list);
+        assertEquals(List.of(b), list.getSources());
+    }
+
+    @Test
+    void testAbsorb() {
+        var a = FXCollections.observableArrayList(items("a", 1, 4));
+        var b = FXCollections.observableArrayList(items("b", 2, 5));
+        var c = FXCollections.observableArrayList(items("c", 3, 6));
+        list.addSource(a);
+
+        var other = new MergedObservableList<Item>(Comparator.comparingInt(Item::time));
+        other.addSources(List.of(b, c));
+
+        list.absorb(other);
+        assertEquals(sorted(List.of(a, b, c)), list);
+        assertEquals(list, mirror);
+        assertTrue(other.isEmpty());
+        assertTrue(other.getSources().isEmpty());
+
+        // 引き取ったソースの変更はこのリストだけに反映される
+        c.add(new Item(7, "c"));
+        assertEquals(sorted(List.of(a, b, c)), list);
+        assertTrue(other.isEmpty());
+    }
+
+    @Test
+    void testRandomOperations() {
+        var random = new Random(0);
+        var sources = new ArrayList<ObservableList<Item>>();
+        for (var i = 0; i < 3; i++) {
+            var source = FXCollections.<Item>observableArrayList();
+            sources.add(source);
+        }
+        list.addSources(sources);
+
+        var time = 0;
+        for (var i = 0; i < 5000; i++) {
+            var source = sources.get(random.nextInt(sources.size()));
+            switch (random.nextInt(5)) {
+                case 0, 1 -> source.add(new Item(time++, "s"));
+                case 2 -> source.addAll(items("s", time++, time++));
+                case 3 -> {
+                    if (!source.isEmpty()) source.remove(random.nextInt(source.size()));
+                }
+                case 4 -> {
+                    if (!source.isEmpty()) {
+                        var index = random.nextInt(source.size());
+                        source.set(index, source.get(index));
+                    }
+                }
+            }
+
+            assertEquals(sorted(sources), list);
+            assertEquals(list, mirror);
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.k7t3.tcv.app.collections;
+
+import javafx.collections.ListChangeListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferObservableListTest {
+
+    private RingBufferObservableList<Integer> list;
+
+    /** 変更通知を適用して再現したリスト*/
+    private List<Integer> mirror;
+
+    private int changeCount;
+
+    @BeforeEach
+    void setUp() {
+        list = new RingBufferObservableList<>(4);
+        mirror = new ArrayList<>();
+        changeCount = 0;
+
+        list.addListener((ListChangeListener<Integer>) c -> {
+            changeCount++;
+            while (c.next()) {
+                if (c.wasRemoved()) {
+                    mirror.subList(c.getFrom(), c.getFrom() + c.getRemovedSize()).clear();
+                }
+                if (c.wasAdded()) {
+                    mirror.addAll(c.getFrom(), c.getAddedSubList());
+                }
+            }
+        });
+    }
+
+    @Test
+    void testAppendAndEvict() {
+        list.addAll(List.of(1, 2, 3));
+        list.add(4);
+        list.add(5);
+
+        assertEquals(List.of(2, 3, 4, 5), list);
+        assertEquals(list, mirror);
+        assertEquals(3, changeCount);
+    }
+
+    @Test
+    void testAddAllOverCapacity() {
+        list.addAll(List.of(1, 2));
+        list.addAll(List.of(3, 4, 5, 6, 7, 8));
+
+        assertEquals(List.of(5, 6, 7, 8), list);
+        assertEquals(list, mirror);
+
+        // 破棄と追加は一つの変更として通知される
+        assertEquals(2, changeCount);
+    }
+
+    @Test
+    void testSetCapacity() {
+        list.addAll(List.of(1, 2, 3, 4));
+
+        list.setCapacity(2);
+        assertEquals(List.of(3, 4), list);
+        assertEquals(list, mirror);
+
+        list.setCapacity(6);
+        list.addAll(List.of(5, 6, 7, 8, 9));
+        assertEquals(List.of(4, 5, 6, 7, 8, 9), list);
+        assertEquals(list, mirror);
+    }
+
+    @Test
+    void testRemoveIf() {
+        list.addAll(List.of(1, 2, 3, 4));
+        list.add(5);
+
+        list.removeIf(i -> i % 2 == 1);
+        assertEquals(List.of(2, 4), list);
+        assertEquals(list, mirror);
+        assertEquals(3, changeCount);
+    }
+
+    @Test
+    void testSetAll() {
+        list.addAll(List.of(1, 2, 3));
+        list.setAll(List.of(10, 11, 12, 13, 14));
+
+        assertEquals(List.of(11, 12, 13, 14), list);
+        assertEquals(list, mirror);
+    }
+
+    @Test
+    void testInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferObservableList<>(0));
+        assertThrows(IllegalArgumentException.class, () -> list.setCapacity(0));
+    }
+
+    @Test
+    void testRandomOperations() {
+        var random = new Random(0);
+        var expected = new ArrayList<Integer>();
+        var next = 0;
+
+        for (var i = 0; i < 5000; i++) {
+            switch (random.nextInt(6)) {
+                case 0, 1 -> {
+                    list.add(next);
+                    expected.add(next++);
+                }
+                case 2 -> {
+                    var index = random.nextInt(expected.size() + 1);
+                    list.add(index, next);
+                    expected.add(index, next++);
+                }
+                case 3 -> {
+                    if (!expected.isEmpty()) {
+                        var index = random.nextInt(expected.size());
+                        list.remove(index);
+                        expected.remove(index);
+                    }
+                }
+                case 4 -> {
+                    var capacity = 1 + random.nextInt(8);
+                    list.setCapacity(capacity);
+                    while (capacity < expected.size()) expected.removeFirst();
+                }
+                case 5 -> {
+                    list.removeIf(v -> v % 5 == 0);
+                    expected.removeIf(v -> v % 5 == 0);
+                }
+            }
+
+            while (list.getCapacity() < expected.size()) expected.removeFirst();
+
+            assertEquals(expected, list);
+            assertEquals(expected, mirror);
+        }
+    }
+
+}
@@ -27,7 +27,11 @@ import org.slf4j.Logger;
 import org.testfx.framework.junit5.ApplicationTest;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -55,6 +59,9 @@ class EmojiTest {
         log.debug("delete {}", emoji.getArchivePath());
         Files.deleteIfExists(emoji.getArchivePath());
 
+        log.debug("delete {}", emoji.getStampPath());
+        Files.deleteIfExists(emoji.getStampPath());
+
         log.debug("delete {}", emoji.getArchivePath().getParent());
         Files.delete(emoji.getArchivePath().getParent());
     }
@@ -102,4 +109,46 @@ class EmojiTest {
         var properties = emoji.getProperties();
         assertNotNull(properties);
     }
-}
\ No newline at end of file
+
+    @Test
+    void writeStamp() throws IOException {
+        emoji.extractArchive();
+        assertTrue(Files.exists(emoji.getStampPath()));
+
+        assertTrue(emoji.validateArchive());
+        assertTrue(emoji.verifyArchive());
+    }
+
+    @Test
+    void validateArchiveWithStaleStamp() throws IOException {
+        emoji.extractArchive();
+
+        // 更新日時が変わったときはハッシュ値を求め直してスタンプを書き直す
+        var path = emoji.getArchivePath();
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() - 60_000));
+        var stamp = Files.readString(emoji.getStampPath());
+
+        assertTrue(emoji.validateArchive());
+        assertNotEquals(stamp, Files.readString(emoji.getStampPath()));
+    }
+
+    @Test
+    void verifyCorruptedArchive() throws IOException {
+        emoji.extractArchive();
+
+        // サイズと更新日時を変えずに内容だけを書き換える
+        var path = emoji.getArchivePath();
+        var lastModified = Files.getLastModifiedTime(path);
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var position = channel.size() / 2;
+            var buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, position);
+            buffer.put(0, (byte) ~buffer.get(0));
+            channel.write(buffer.rewind(), position);
+        }
+        Files.setLastModifiedTime(path, lastModified);
+
+        assertFalse(emoji.verifyArchive());
+        assertFalse(Files.exists(emoji.getStampPath()));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.app.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageDiskCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+
+    private Path directory;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("tcv");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try (exchange) {
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+                var body = body(exchange.getRequestURI().getPath());
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.stop(0);
+        try (var paths = Files.walk(directory)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /** パスごとに内容の異なる60バイトのイメージ*/
+    private static byte[] body(String path) {
+        var body = new byte[60];
+        Arrays.fill(body, (byte) path.hashCode());
+        return body;
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:%d%s".formatted(server.getAddress().getPort(), path);
+    }
+
+    @Test
+    void testFetchFromDisk() throws IOException {
+        var cache = new ImageDiskCache(directory, 1024 * 1024);
+        var first = cache.fetch(url("/a.png"));
+        assertArrayEquals(body("/a.png"), first);
+        assertEquals(1, requests.get());
+
+        // 別のインスタンス(再起動後)もディスクから読み込む
+        var restarted = new ImageDiskCache(directory, 1024 * 1024);
+        assertArrayEquals(first, restarted.fetch(url("/a.png")));
+        assertEquals(1, requests.get());
+        assertEquals(1, restarted.getHitCount());
+    }
+
+    @Test
+    void testRevalidate() throws IOException {
+        var cache = new ImageDiskCache(directory, 1024 * 1024, Duration.ZERO);
+        var first = cache.fetch(url("/a.png"));
+
+        // 期限切れのものは条件付きリクエストで再検証する
+        assertArrayEquals(first, cache.fetch(url("/a.png")));
+        assertEquals(2, requests.get());
+        assertEquals(1, notModified.get());
+        assertEquals(1, cache.getRevalidatedCount());
+    }
+
+    @Test
+    void testServeStaleWhenUnreachable() throws IOException {
+        var cache = new ImageDiskCache(directory, 1024 * 1024, Duration.ZERO);
+        var first = cache.fetch(url("/a.png"));
+        var url = url("/a.png");
+
+        server.stop(0);
+        assertArrayEquals(first, cache.fetch(url));
+    }
+
+    @Test
+    void testSharedContent() throws IOException {
+        var cache = new ImageDiskCache(directory, 1024 * 1024);
+        cache.fetch(url("/a.png"));
+        cache.fetch(url("/a.png?size=1"));
+
+        // 同じ内容のイメージは一つのファイルを共有する
+        try (var blobs = Files.list(directory.resolve("blobs"))) {
+            assertEquals(1, blobs.count());
+        }
+    }
+
+    @Test
+    void testTrim() throws Exception {
+        var cache = new ImageDiskCache(directory, 100);
+        for (var path : new String[] {"/a.png", "/b.png", "/c.png"}) {
+            cache.fetch(url(path));
+            Thread.sleep(20);
+        }
+        cache.trim();
+
+        assertTrue(blobBytes() <= 100);
+
+        // 最後に参照したものは残る
+        var count = requests.get();
+        cache.fetch(url("/c.png"));
+        assertEquals(count, requests.get());
+
+        cache.fetch(url("/a.png"));
+        assertEquals(count + 1, requests.get());
+    }
+
+    private long blobBytes() throws IOException {
+        try (Stream<Path> blobs = Files.list(directory.resolve("blobs"))) {
+            return blobs.mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.k7t3.tcv.app.image;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageHttpClientTest {
+
+    private static final byte[] BODY = {1, 2, 3, 4};
+
+    private static final String ETAG = "\"v1\"";
+
+    private static final String LAST_MODIFIED = "Mon, 01 Jan 2024 00:00:00 GMT";
+
+    private HttpServer server;
+
+    /** リクエストを受けた接続の送信元ポート*/
+    private final Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+
+    private ImageHttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/image.png", exchange -> {
+            remotePorts.add(exchange.getRemoteAddress().getPort());
+            try (exchange) {
+                var headers = exchange.getRequestHeaders();
+                if (ETAG.equals(headers.getFirst("If-None-Match"))
+                        || LAST_MODIFIED.equals(headers.getFirst("If-Modified-Since"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+                exchange.sendResponseHeaders(200, BODY.length);
+                exchange.getResponseBody().write(BODY);
+            }
+        });
+        server.start();
+
+        client = new ImageHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:%d%s".formatted(server.getAddress().getPort(), path);
+    }
+
+    @Test
+    void testGet() throws IOException {
+        var response = client.get(url("/image.png"), null, null);
+
+        assertFalse(response.notModified());
+        assertArrayEquals(BODY, response.body());
+        assertEquals(ETAG, response.etag());
+        assertEquals(LAST_MODIFIED, response.lastModified());
+    }
+
+    @Test
+    void testConditionalGet() throws IOException {
+        assertTrue(client.get(url("/image.png"), ETAG, null).notModified());
+        assertTrue(client.get(url("/image.png"), null, LAST_MODIFIED).notModified());
+        assertFalse(client.get(url("/image.png"), "\"v0\"", null).notModified());
+    }
+
+    @Test
+    void testReuseConnection() throws IOException {
+        for (var i = 0; i < 8; i++) {
+            client.get(url("/image.png"), null, null);
+        }
+
+        // 接続は使いまわされる
+        assertEquals(1, remotePorts.size());
+    }
+
+    @Test
+    void testNotFound() {
+        assertThrows(IOException.class, () -> client.get(url("/missing.png"), null, null));
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.chat;
+
+import com.github.k7t3.tcv.domain.chat.ChatMessageParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link ChatMessageParser}の結果が以前の実装({@link LegacyChatMessageParser})と
+ * 一致することを検証する。
+ */
+class ChatMessageParserDifferentialTest {
+
+    private static final long SEED = 0x7c7a_2024L;
+
+    private static final int FUZZ_COUNT = 20_000;
+
+    /** ランダムなメッセージを構成する部品*/
+    private static final String[] PARTS = {
+            "a", "Z", " ", "  ", "Kappa", "akariOtaku", "!", "#", "*", "0", "7", "123",
+            "\t", "\r", "\n", "\r\n", "\u00A9", "\u00AE", "\u00E9", "e\u0301", "\u00AD",
+            "がんばれー", "カ", "カ\u3099", "漢字", "。", "\u3030", "\u303D", "ｶﾞ", "ｱ", "ﾞ", "Ａ",
+            "\uD83D\uDE42",                                   // 絵文字
+            "\uD83D\uDC4D\uD83C\uDFFD",                     // 肌の色の修飾子
+            "\u2764", "\u2764\uFE0F", "\u263A\uFE0E",       // 異体字セレクタ
+            "1\uFE0F\u20E3",                                 // キーキャップ
+            "\uD83D\uDC68\u200D\uD83D\uDC69\u200D\uD83D\uDC67", // ZWJシーケンス
+            "\u200D", "\uFE0F", "\u0301",
+            "\uD83C\uDDEF\uD83C\uDDF5",                     // 国旗
+            "\uD83C\uDDEF",                                   // 対になっていない地域指示子
+            "\uD83C\uDFF4\uDB40\uDC67\uDB40\uDC62\uDB40\uDC65\uDB40\uDC6E\uDB40\uDC67\uDB40\uDC7F", // タグシーケンス
+            "\uD842\uDFB7",                                   // サロゲートペアの漢字
+            "\u1100\u1161\u11A8", "\uAC00", "\u0915\u094D\u0937",
+            "\uD83D",                                         // 孤立したサロゲート
+    };
+
+    private final ChatMessageParser parser = new ChatMessageParser();
+
+    private final LegacyChatMessageParser legacy = new LegacyChatMessageParser();
+
+    static Stream<Arguments> knownMessages() {
+        return Stream.of(
+                Arguments.of("akariOtaku akariOtaku がんばれー akariOtaku akariOtaku",
+                        "emotesv2_951897be762b4abbac1912e021f2bb73:0-9,11-20,28-37,39-48"),
+                Arguments.of("\uD83D\uDE42 Kappa Hello guys", "kappa_emote:2-6"),
+                Arguments.of("\uD83D\uDE42 Hello \uD83D\uDE42 guys \uD83D\uDE42", null),
+                Arguments.of("\uD83C\uDFF4\uDB40\uDC67\uDB40\uDC62\uDB40\uDC65\uDB40\uDC6E\uDB40\uDC67\uDB40\uDC7F", ""),
+                Arguments.of("", null),
+                Arguments.of(null, null),
+                Arguments.of("Hello world", null),
+                Arguments.of("Kappa Keepo", "25:0-4/1902:6-10"),
+                Arguments.of("Keepo Kappa", "25:6-10/1902:0-4/"),
+                Arguments.of("1 2 3", null)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("knownMessages")
+    void knownMessages(String message, String emotes) {
+        assertSameResult(message, emotes);
+    }
+
+    @Test
+    void fuzz() {
+        var random = new Random(SEED);
+        for (var i = 0; i < FUZZ_COUNT; i++) {
+            var message = randomMessage(random);
+            var emotes = randomEmotes(random, message);
+            assertSameResult(message, emotes);
+        }
+    }
+
+    private void assertSameResult(String message, String emotes) {
+        var expected = legacy.parse(message, emotes);
+        var actual = parser.parse(message, emotes);
+        var description = "message=[%s] emotes=[%s]".formatted(message, emotes);
+        assertEquals(expected.getPlain(), actual.getPlain(), description);
+        assertEquals(List.copyOf(expected), List.copyOf(actual), description);
+    }
+
+    private static String randomMessage(Random random) {
+        var builder = new StringBuilder();
+        var count = random.nextInt(12);
+        for (var i = 0; i < count; i++) {
+            builder.append(PARTS[random.nextInt(PARTS.length)]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * コードポイント準拠の範囲でランダムなエモートタグを生成する。
+     * 書記素クラスタの途中を指す範囲や重複する範囲も含む。
+     */
+    private static String randomEmotes(Random random, String message) {
+        var length = message.codePointCount(0, message.length());
+        if (length == 0 || random.nextInt(3) == 0) {
+            return random.nextBoolean() ? null : "";
+        }
+
+        var emotes = new ArrayList<String>();
+        var count = 1 + random.nextInt(3);
+        for (var i = 0; i < count; i++) {
+            var ranges = new ArrayList<String>();
+            var rangeCount = 1 + random.nextInt(3);
+            for (var j = 0; j < rangeCount; j++) {
+                var begin = random.nextInt(length);
+                var end = Math.min(length - 1, begin + random.nextInt(6));
+                ranges.add(begin + "-" + end);
+            }
+            emotes.add("emote" + i + ":" + String.join(",", ranges));
+        }
+        return String.join("/", emotes);
+    }
+}
@@ -23,6 +23,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ChatMessageParserTest {
 
@@ -109,4 +111,38 @@ class ChatMessageParserTest {
         assertEquals(ChatMessageFragment.Type.TEXT, third.type());
         assertEquals("←これイングランドの国旗です", third.text());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParseLazily() {
+        var plain = "\uD83D\uDE42 Kappa Hello guys";
+        var emotes = "kappa_emote:2-6";
+
+        var deferred = ChatMessage.getDeferredCount();
+        var materialized = ChatMessage.getMaterializedCount();
+
+        var message = parser.parseLazily(plain, emotes);
+        assertFalse(message.isMaterialized());
+        assertEquals(plain, message.getPlain());
+        assertEquals(emotes, message.getEmotes());
+        assertEquals(deferred + 1, ChatMessage.getDeferredCount());
+
+        // 部品にアクセスしたときに一度だけパースされる
+        assertEquals(parser.parse(plain, emotes), message);
+        assertTrue(message.isMaterialized());
+        assertEquals(4, message.size());
+        assertEquals(materialized + 1, ChatMessage.getMaterializedCount());
+    }
+
+    @Test
+    void testParseLazilyInvalidEmotes() {
+        var plain = "Kappa Hello guys";
+        var emotes = "kappa_emote:a-b";
+
+        // パースできないときはメッセージをそのままテキストとする
+        var message = parser.parseLazily(plain, emotes);
+        assertEquals(1, message.size());
+        assertEquals(ChatMessageFragment.Type.TEXT, message.getFirst().type());
+        assertEquals(plain, message.getFirst().text());
+        assertTrue(message.isMaterialized());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.domain.chat;
+
+import com.github.k7t3.tcv.domain.Twitch;
+import com.github.k7t3.tcv.domain.TwitchAPI;
+import com.github.twitch4j.helix.domain.Clip;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClipResolverTest {
+
+    private TwitchAPI api;
+
+    private ClipResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        api = Mockito.mock(TwitchAPI.class);
+        var twitch = Mockito.mock(Twitch.class);
+        Mockito.when(twitch.getTwitchAPI()).thenReturn(api);
+
+        // 偶数番目のIDのクリップだけが存在する
+        Mockito.when(api.getClips(ArgumentMatchers.anyList())).thenAnswer(invocation -> {
+            List<String> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .filter(id -> Integer.parseInt(id.substring(4)) % 2 == 0)
+                    .map(ClipResolverTest::clip)
+                    .toList();
+        });
+
+        resolver = new ClipResolver(twitch, Duration.ofMillis(100));
+    }
+
+    @AfterEach
+    void tearDown() {
+        resolver.close();
+    }
+
+    private static Clip clip(String id) {
+        var clip = Mockito.mock(Clip.class);
+        Mockito.when(clip.getId()).thenReturn(id);
+        Mockito.when(clip.getCreatedAtInstant()).thenReturn(Instant.now());
+        return clip;
+    }
+
+    @Test
+    void testBatchAndCoalesce() throws Exception {
+        var futures = new ArrayList<CompletableFuture<?>>();
+        for (var i = 0; i < 150; i++) {
+            futures.add(resolver.resolve("clip" + i));
+            // 同じIDの要求はまとめられる
+            futures.add(resolver.resolve("clip" + i));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // 100件と50件の2回に分けて取得される
+        Mockito.verify(api, Mockito.times(2)).getClips(ArgumentMatchers.anyList());
+
+        assertTrue(resolver.resolve("clip10").get(5, TimeUnit.SECONDS).isPresent());
+        assertTrue(resolver.resolve("clip11").get(5, TimeUnit.SECONDS).isEmpty());
+
+        // 見つからなかったものも含めてキャッシュされる
+        Mockito.verify(api, Mockito.times(2)).getClips(ArgumentMatchers.anyList());
+    }
+
+    @Test
+    void testFailure() throws Exception {
+        Mockito.when(api.getClips(ArgumentMatchers.anyList())).thenThrow(new IllegalStateException("test"));
+        var future = resolver.resolve("clip0");
+        assertThrows(Exception.class, () -> future.get(5, TimeUnit.SECONDS));
+
+        // 失敗したものはキャッシュされない
+        Mockito.reset(api);
+        Mockito.when(api.getClips(ArgumentMatchers.anyList())).thenReturn(List.of(clip("clip0")));
+
+        // キャッシュから取り除かれるのは失敗が通知された後になるため、少し待って再度要求する
+        for (var i = 0; i < 20; i++) {
+            var retry = resolver.resolve("clip0");
+            try {
+                assertTrue(retry.get(5, TimeUnit.SECONDS).isPresent());
+                return;
+            } catch (ExecutionException ignored) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+        }
+        fail();
+    }
+
+}
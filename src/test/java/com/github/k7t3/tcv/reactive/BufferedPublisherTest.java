@@ -0,0 +1,235 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.reactive;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferedPublisherTest {
+
+    /** 手動で実行するExecutor*/
+    private Queue<Runnable> tasks;
+
+    private Executor executor;
+
+    @BeforeEach
+    void setUp() {
+        tasks = new ArrayDeque<>();
+        executor = tasks::add;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private BufferedPublisher<Integer> publisher(OverflowPolicy policy) {
+        return new BufferedPublisher<>("test", executor, 4, policy, Duration.ofMillis(50));
+    }
+
+    @Test
+    void deliverInOrder() {
+        var publisher = publisher(OverflowPolicy.DROP_NEWEST);
+        var subscriber = new RecordingSubscriber(BackPressurePolicy.FULL);
+        publisher.subscribe(subscriber);
+
+        for (var i = 0; i < 3; i++) {
+            assertEquals(0, publisher.offer(i));
+        }
+        runTasks();
+
+        assertEquals(List.of(0, 1, 2), subscriber.items);
+    }
+
+    @Test
+    void dropNewest() {
+        var publisher = publisher(OverflowPolicy.DROP_NEWEST);
+        var subscriber = new RecordingSubscriber(BackPressurePolicy.FULL);
+        publisher.subscribe(subscriber);
+
+        var dropped = 0;
+        for (var i = 0; i < 10; i++) {
+            dropped += publisher.offer(i);
+        }
+        runTasks();
+
+        assertEquals(6, dropped);
+        assertEquals(List.of(0, 1, 2, 3), subscriber.items);
+        assertEquals(6L, publisher.getDroppedCounts().get(subscriber));
+        assertEquals(6L, publisher.getTotalDroppedCount());
+    }
+
+    @Test
+    void dropOldest() {
+        var publisher = publisher(OverflowPolicy.DROP_OLDEST);
+        var subscriber = new RecordingSubscriber(BackPressurePolicy.FULL);
+        publisher.subscribe(subscriber);
+
+        for (var i = 0; i < 10; i++) {
+            publisher.offer(i);
+        }
+        runTasks();
+
+        assertEquals(List.of(6, 7, 8, 9), subscriber.items);
+        assertEquals(6L, publisher.getDroppedCounts().get(subscriber));
+    }
+
+    @Test
+    void subscriberPolicyOverridesPublisher() {
+        var publisher = publisher(OverflowPolicy.DROP_NEWEST);
+        var latest = new RecordingSubscriber(BackPressurePolicy.LATEST);
+        var full = new RecordingSubscriber(BackPressurePolicy.FULL);
+        publisher.subscribe(latest);
+        publisher.subscribe(full);
+
+        for (var i = 0; i < 6; i++) {
+            publisher.offer(i);
+        }
+        runTasks();
+
+        assertEquals(List.of(2, 3, 4, 5), latest.items);
+        assertEquals(List.of(0, 1, 2, 3), full.items);
+    }
+
+    @Test
+    void demandLimitsDelivery() {
+        var publisher = publisher(OverflowPolicy.DROP_NEWEST);
+        var subscriber = new RecordingSubscriber(BackPressurePolicy.MINIMUM);
+        publisher.subscribe(subscriber);
+
+        for (var i = 0; i < 3; i++) {
+            publisher.offer(i);
+        }
+        runTasks();
+
+        // MINIMUMは受信するたびに1件ずつリクエストする
+        assertEquals(List.of(0, 1, 2), subscriber.items);
+        assertEquals(0, publisher.estimateMaximumLag());
+    }
+
+    @Test
+    void blockUntilTimeout() {
+        var publisher = publisher(OverflowPolicy.BLOCK);
+        var subscriber = new RecordingSubscriber(BackPressurePolicy.FULL);
+        publisher.subscribe(subscriber);
+
+        for (var i = 0; i < 4; i++) {
+            publisher.offer(i);
+        }
+
+        // 配送されないので待機した後に破棄される
+        var start = System.nanoTime();
+        assertEquals(1, publisher.offer(4));
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertTrue(Duration.ofMillis(40).compareTo(elapsed) <= 0, elapsed::toString);
+
+        runTasks();
+        assertEquals(List.of(0, 1, 2, 3), subscriber.items);
+    }
+
+    @Test
+    void blockUntilSpaceAvailable() throws Exception {
+        var pool = Executors.newSingleThreadExecutor();
+        try {
+            var publisher = new BufferedPublisher<Integer>("test", pool, 1, OverflowPolicy.BLOCK, Duration.ofSeconds(10));
+            var subscriber = new RecordingSubscriber(BackPressurePolicy.FULL);
+            publisher.subscribe(subscriber);
+
+            for (var i = 0; i < 100; i++) {
+                assertEquals(0, publisher.offer(i));
+            }
+            publisher.close();
+            assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+
+            var expected = new ArrayList<Integer>();
+            for (var i = 0; i < 100; i++) expected.add(i);
+            assertEquals(expected, subscriber.items);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancelStopsDelivery() {
+        var publisher = publisher(OverflowPolicy.DROP_NEWEST);
+        var subscriber = new RecordingSubscriber(BackPressurePolicy.FULL);
+        publisher.subscribe(subscriber);
+
+        publisher.offer(0);
+        subscriber.cancel();
+        publisher.offer(1);
+        runTasks();
+
+        assertTrue(subscriber.items.isEmpty());
+        assertEquals(0, publisher.getNumberOfSubscribers());
+    }
+
+    @Test
+    void closeCompletesAfterBufferedItems() {
+        var publisher = publisher(OverflowPolicy.DROP_NEWEST);
+        var subscriber = new RecordingSubscriber(BackPressurePolicy.FULL);
+        publisher.subscribe(subscriber);
+
+        publisher.offer(0);
+        publisher.offer(1);
+        publisher.close();
+        runTasks();
+
+        assertEquals(List.of(0, 1), subscriber.items);
+        assertEquals(0, subscriber.completed.getCount());
+        assertThrows(IllegalStateException.class, () -> publisher.offer(2));
+    }
+
+    private static class RecordingSubscriber extends AbstractSubscriber<Integer> {
+
+        private final List<Integer> items = new ArrayList<>();
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        RecordingSubscriber(BackPressurePolicy policy) {
+            setBackPressurePolicy(policy);
+        }
+
+        @Override
+        protected void handle(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
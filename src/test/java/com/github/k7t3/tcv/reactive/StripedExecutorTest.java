@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.reactive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedExecutorTest {
+
+    private StripedExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new StripedExecutor("test", 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void preserveOrderPerKey() throws Exception {
+        var keys = List.of("channel-a", "channel-b", "channel-c", "channel-d", "channel-e");
+        var results = new ConcurrentHashMap<String, List<Integer>>();
+        keys.forEach(key -> results.put(key, new ArrayList<>()));
+
+        var count = 1000;
+        var latch = new CountDownLatch(keys.size() * count);
+        for (var i = 0; i < count; i++) {
+            for (var key : keys) {
+                var value = i;
+                executor.execute(key, () -> {
+                    // 同じキーのタスクは同じスレッドで実行されるので同期は不要
+                    results.get(key).add(value);
+                    latch.countDown();
+                });
+            }
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (var key : keys) {
+            var values = results.get(key);
+            assertEquals(count, values.size());
+            for (var i = 0; i < count; i++) {
+                assertEquals(i, values.get(i));
+            }
+        }
+        assertEquals((long) keys.size() * count, executor.getExecutedCount());
+    }
+
+    @Test
+    void measureQueueDepthAndLatency() throws Exception {
+        var key = "channel";
+        var blocker = new CountDownLatch(1);
+        var done = new CountDownLatch(3);
+
+        executor.execute(key, () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        executor.execute(key, done::countDown);
+        executor.execute(key, done::countDown);
+
+        // 先頭のタスクが実行中なので残りの2件が待機している
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getQueueDepth(key) != 2 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(2, executor.getQueueDepth(key));
+        assertEquals(2, executor.getQueueDepth());
+
+        Thread.sleep(50);
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(0, executor.getQueueDepth());
+        assertTrue(50 <= executor.getMaxLatency().toMillis(), () -> executor.getMaxLatency().toString());
+        assertTrue(0 < executor.getAverageLatency().toNanos());
+    }
+}
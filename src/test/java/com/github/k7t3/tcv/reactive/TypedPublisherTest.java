@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024 k7t3
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.k7t3.tcv.reactive;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypedPublisherTest {
+
+    private sealed interface Event permits Joined, Left, Message {}
+
+    private record Joined(String name) implements Event {}
+
+    private record Left(String name) implements Event {}
+
+    private record Message(String text) implements Event {}
+
+    /** 手動で実行するExecutor*/
+    private Queue<Runnable> tasks;
+
+    private TypedPublisher<Event> publisher;
+
+    @BeforeEach
+    void setUp() {
+        tasks = new ArrayDeque<>();
+        publisher = new TypedPublisher<>("test", Event.class, tasks::add, 16, OverflowPolicy.DROP_NEWEST, Duration.ZERO);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    void deliverOnlyRegisteredType() {
+        var joined = new Recorder<>(Joined.class);
+        var left = new Recorder<>(Left.class);
+        publisher.subscribe(joined);
+        publisher.subscribe(left);
+
+        publisher.offer(new Joined("a"));
+        publisher.offer(new Message("hello"));
+        publisher.offer(new Left("a"));
+        runTasks();
+
+        assertEquals(List.of(new Joined("a")), joined.items);
+        assertEquals(List.of(new Left("a")), left.items);
+
+        // 購読者のいないタイプはどのキューにも積まれない
+        assertFalse(publisher.getNumberOfSubscribers().containsKey(Message.class));
+    }
+
+    @Test
+    void plainSubscriberReceivesAll() {
+        var all = new ArrayList<Event>();
+        publisher.subscribe(new AbstractSubscriber<>() {
+            @Override
+            protected void handle(Event item) {
+                all.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        publisher.offer(new Joined("a"));
+        publisher.offer(new Message("hello"));
+        runTasks();
+
+        assertEquals(List.of(new Joined("a"), new Message("hello")), all);
+    }
+
+    @Test
+    void routesUpdatedOnNewRegistration() {
+        var joined = new Recorder<>(Joined.class);
+        publisher.subscribe(joined);
+
+        // 購読者がいない状態で経路を解決させる
+        publisher.offer(new Message("before"));
+
+        var message = new Recorder<>(Message.class);
+        publisher.subscribe(message);
+        publisher.offer(new Message("after"));
+        runTasks();
+
+        assertEquals(List.of(new Message("after")), message.items);
+        assertTrue(joined.items.isEmpty());
+    }
+
+    private static class Recorder<R extends Event> extends DownCastSubscriber<Event, R> {
+
+        private final List<R> items = new ArrayList<>();
+
+        Recorder(Class<R> type) {
+            super(type);
+        }
+
+        @Override
+        protected void handleCasted(R item) {
+            items.add(item);
+        }
+    }
+}